@@ -0,0 +1,84 @@
+package com.tapestry.dataintegration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares a JMH JSON result file with the recorded baseline and exits non-zero when any
+ * benchmark is worse by more than the tolerance and its error interval, the score plus or
+ * minus its 99.9% confidence error, does not overlap the baseline's. A change within the
+ * error of either run is reported as noise rather than a regression. For time-per-operation
+ * modes a higher score is worse; for throughput a lower one.
+ */
+public final class BenchmarkBaselineCheck {
+
+    private BenchmarkBaselineCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File baselineFile = new File(args[1]);
+        double tolerance = Double.parseDouble(args[2]);
+        if (!baselineFile.exists()) {
+            System.out.println("No baseline at " + baselineFile + "; run jmhBaseline to record one.");
+            return;
+        }
+        Map<String, JsonNode> baseline = index(new ObjectMapper().readTree(baselineFile));
+        Map<String, JsonNode> current = index(new ObjectMapper().readTree(new File(args[0])));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("NEW        %s%n", entry.getKey());
+                continue;
+            }
+            JsonNode oldMetric = before.path("primaryMetric");
+            JsonNode newMetric = entry.getValue().path("primaryMetric");
+            double oldScore = oldMetric.path("score").asDouble();
+            double newScore = newMetric.path("score").asDouble();
+            double oldError = error(oldMetric);
+            double newError = error(newMetric);
+            boolean higherIsBetter = "thrpt".equals(entry.getValue().path("mode").asText());
+            double change = oldScore == 0 ? 0 : (newScore - oldScore) / oldScore;
+            double worse = higherIsBetter ? -change : change;
+            boolean separated = higherIsBetter
+                    ? newScore + newError < oldScore - oldError
+                    : newScore - newError > oldScore + oldError;
+            boolean regressed = worse > tolerance && separated;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-10s %s %.3f +- %.3f -> %.3f +- %.3f %s (%+.1f%%)%n",
+                    regressed ? "REGRESSED" : worse > tolerance ? "noise" : "ok", entry.getKey(),
+                    oldScore, oldError, newScore, newError, newMetric.path("scoreUnit").asText(), change * 100);
+        }
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.0f%%%n", regressions, tolerance * 100);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the score error, or 0 when JMH had too few iterations to report one
+     */
+    private static double error(JsonNode metric) {
+        double error = metric.path("scoreError").asDouble(0);
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static Map<String, JsonNode> index(JsonNode results) {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            result.path("params").fields().forEachRemaining(param ->
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+}
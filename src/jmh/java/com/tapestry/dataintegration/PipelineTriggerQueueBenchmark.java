@@ -0,0 +1,106 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cron due-time evaluation at large pipeline counts: scheduling every pipeline, which parses
+ * its cron expression, and one trigger-loop pass per simulated minute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(3)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PipelineTriggerQueueBenchmark {
+
+    private static final String[] SCHEDULES = {"* * * * *", "*/5 * * * *", "0 * * * *", "30 2 * * *"};
+
+    @Param({"100", "10000"})
+    public int pipelines;
+
+    private final List<PipelineConfig.Pipeline> configs = new ArrayList<>();
+    private SteppingClock clock;
+    private PipelineTriggerQueue queue;
+    private long fired;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < pipelines; i++) {
+            PipelineConfig.Pipeline pipeline = new PipelineConfig.Pipeline();
+            pipeline.setPlName("pipeline-" + i);
+            pipeline.setSchedule(SCHEDULES[i % SCHEDULES.length]);
+            configs.add(pipeline);
+        }
+        clock = new SteppingClock(Instant.parse("2024-03-01T00:00:30Z"));
+        queue = newQueue();
+        configs.forEach(queue::schedule);
+    }
+
+    @Benchmark
+    public PipelineTriggerQueue scheduleAll() {
+        PipelineTriggerQueue fresh = newQueue();
+        configs.forEach(fresh::schedule);
+        return fresh;
+    }
+
+    @Benchmark
+    public long fireDueEveryMinute() {
+        clock.advance(Duration.ofMinutes(1));
+        queue.fireDue();
+        return fired;
+    }
+
+    private PipelineTriggerQueue newQueue() {
+        return new PipelineTriggerQueue(clock, Duration.ofMinutes(5), PipelineTriggerQueue.FIRE_ONCE,
+                (pipeline, slot) -> fired++);
+    }
+
+    private static class SteppingClock extends Clock {
+        private Instant instant;
+
+        SteppingClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
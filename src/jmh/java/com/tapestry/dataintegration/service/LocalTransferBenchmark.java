@@ -0,0 +1,110 @@
+package com.tapestry.dataintegration.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Copies and moves a local tree of {@code files} files. A {@code flat} tree keeps every file in
+ * one directory; a {@code deep} tree spreads them over two levels of ten directories each.
+ * Moves alternate direction between invocations so every one starts from a full tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LocalTransferBenchmark {
+
+    private static final ManifestSink NO_MANIFEST = (source, target) -> { };
+
+    @Param({"flat", "deep"})
+    public String shape;
+
+    @Param({"1000"})
+    public int files;
+
+    @Param({"4096"})
+    public int fileSize;
+
+    @Param({"8"})
+    public int concurrency;
+
+    private Path root;
+    private Path copySource;
+    private Path copyTarget;
+    private Path moveFrom;
+    private Path moveTo;
+    private ExecutorService executor;
+    private LocalTransferEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("local-transfer-bench");
+        copySource = root.resolve("copy-source");
+        copyTarget = root.resolve("copy-target");
+        moveFrom = root.resolve("move-a");
+        moveTo = root.resolve("move-b");
+        byte[] content = new byte[fileSize];
+        for (int i = 0; i < files; i++) {
+            String relative = "flat".equals(shape)
+                    ? "file-" + i + ".csv"
+                    : String.format("%02d/%02d/file-%d.csv", i % 10, (i / 10) % 10, i);
+            for (Path tree : List.of(copySource, moveFrom)) {
+                Path file = tree.resolve(relative);
+                Files.createDirectories(file.getParent());
+                Files.write(file, content);
+            }
+        }
+        Files.createDirectories(moveTo);
+        executor = Executors.newFixedThreadPool(32);
+        engine = new LocalTransferEngine(executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public int copy() {
+        return engine.copy(List.of(new LocalTransferEngine.TreeMapping(copySource, copyTarget, false)),
+                concurrency, new JobProgress("bench"), NO_MANIFEST).filesTransferred;
+    }
+
+    @Benchmark
+    public int move() {
+        int moved = engine.move(List.of(new LocalTransferEngine.TreeMapping(moveFrom, moveTo, false)),
+                concurrency, new JobProgress("bench"), NO_MANIFEST).filesTransferred;
+        Path swap = moveFrom;
+        moveFrom = moveTo;
+        moveTo = swap;
+        return moved;
+    }
+}
@@ -0,0 +1,141 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.tapestry.dataintegration.config.TransferProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies, lists and deletes {@code objects} objects against {@link InMemoryS3}, with
+ * {@code latencyMillis} added to every request to approximate a real round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class S3TransferBenchmark {
+
+    private static final String PREFIX = "in/";
+
+    @Param({"0", "2"})
+    public int latencyMillis;
+
+    @Param({"2000"})
+    public int objects;
+
+    @Param({"16"})
+    public int concurrency;
+
+    InMemoryS3 s3;
+    private ExecutorService transferExecutor;
+    private ExecutorService partCopyExecutor;
+    private S3CopyEngine copyEngine;
+    private S3KeyLister keyLister;
+    S3BatchDeleter batchDeleter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        s3 = new InMemoryS3();
+        for (int i = 0; i < objects; i++) {
+            s3.put("source", key(i), new byte[1024]);
+        }
+        // deleteKey fires once per key inside a DeleteObjects request, not per round trip.
+        s3.setInterceptor((operation, key) -> {
+            if (!"deleteKey".equals(operation)) {
+                pause(latencyMillis);
+            }
+        });
+        transferExecutor = Executors.newFixedThreadPool(64);
+        partCopyExecutor = Executors.newFixedThreadPool(16);
+        // The stand-in never throttles; start the adaptive limit high so it measures the engines, not the ramp-up.
+        TransferProperties transferProperties = new TransferProperties();
+        transferProperties.setS3InitialConcurrency(transferProperties.getS3MaxConcurrency());
+        S3RateController rateController = new S3RateController(transferProperties);
+        MultipartCopier multipartCopier = new MultipartCopier(s3, partCopyExecutor, transferProperties,
+                rateController);
+        copyEngine = new S3CopyEngine(s3, transferExecutor, multipartCopier, rateController);
+        keyLister = new S3KeyLister(s3, rateController);
+        batchDeleter = new S3BatchDeleter(s3, transferExecutor, rateController);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transferExecutor.shutdownNow();
+        partCopyExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int copy() {
+        Iterator<S3CopyEngine.CopyTask> tasks = keyLister.list("source", PREFIX)
+                .map(summary -> new S3CopyEngine.CopyTask(summary.getKey(),
+                        "out/" + summary.getKey().substring(PREFIX.length()), summary.getSize()))
+                .iterator();
+        return copyEngine.copy("source", "target", tasks, concurrency, new JobProgress("bench"),
+                (source, target) -> { }).filesCopied;
+    }
+
+    @Benchmark
+    public void list(Blackhole blackhole) {
+        keyLister.list("source", PREFIX).map(S3ObjectSummary::getKey).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public int delete(DeleteState state) {
+        return batchDeleter.delete("scratch", state.keys, concurrency).deleted;
+    }
+
+    /**
+     * Refills the scratch bucket before each delete so every invocation deletes a full set.
+     */
+    @State(Scope.Benchmark)
+    public static class DeleteState {
+        List<String> keys;
+
+        @Setup(Level.Invocation)
+        public void refill(S3TransferBenchmark benchmark) {
+            keys = new ArrayList<>(benchmark.objects);
+            for (int i = 0; i < benchmark.objects; i++) {
+                String key = key(i);
+                benchmark.s3.put("scratch", key, new byte[0]);
+                keys.add(key);
+            }
+        }
+    }
+
+    private static String key(int i) {
+        return String.format(PREFIX + "file-%06d.csv", i);
+    }
+
+    private static void pause(int millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
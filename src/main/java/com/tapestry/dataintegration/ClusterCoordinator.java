@@ -0,0 +1,182 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.ClusterProperties;
+import com.tapestry.dataintegration.service.ClusterLeaseRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * Coordinates scheduler instances that share one database. Each node renews a lease on its
+ * own name every heartbeat, so a node whose lease has expired is dead; one node also holds the
+ * leader lease and, while it does, is told so on every heartbeat. Lease times come from the
+ * nodes' clocks, which are assumed to agree to well within the lease duration.
+ *
+ * <p>With clustering disabled the node is alone: it leads, every slot is its own and every
+ * other node is dead.
+ */
+@Component
+@Slf4j
+public class ClusterCoordinator {
+
+    static final String LEADER = "leader";
+    private static final String NODE_PREFIX = "node:";
+    private static final String SLOT_PREFIX = "slot:";
+    /**
+     * How long a fired slot is remembered; trigger queues never look further back than this.
+     */
+    private static final Duration SLOT_RETENTION = Duration.ofDays(1);
+
+    public interface LeaderListener {
+        /**
+         * Called on every heartbeat while this node leads.
+         *
+         * @param elected whether this node has just become the leader
+         */
+        void leading(boolean elected);
+    }
+
+    private final ClusterProperties clusterProperties;
+    private final ClusterLeaseRepository leaseRepository;
+    private final Clock clock;
+    private final String nodeId;
+    private volatile boolean leader;
+    private volatile LeaderListener listener;
+    private Thread thread;
+
+    @Autowired
+    public ClusterCoordinator(ClusterProperties clusterProperties, ClusterLeaseRepository leaseRepository) {
+        this(clusterProperties, leaseRepository, Clock.systemDefaultZone());
+    }
+
+    ClusterCoordinator(ClusterProperties clusterProperties, ClusterLeaseRepository leaseRepository, Clock clock) {
+        this.clusterProperties = clusterProperties;
+        this.leaseRepository = leaseRepository;
+        this.clock = clock;
+        this.nodeId = clusterProperties.getNodeId() != null ? clusterProperties.getNodeId() : generateNodeId();
+    }
+
+    private static String generateNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public boolean isEnabled() {
+        return clusterProperties.isEnabled();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isLeader() {
+        return !isEnabled() || leader;
+    }
+
+    public synchronized void start(LeaderListener listener) {
+        this.listener = listener;
+        if (!isEnabled() || thread != null) {
+            return;
+        }
+        log.info("Joining cluster as node {}", nodeId);
+        heartbeat();
+        thread = new Thread(this::run, "cluster-heartbeat");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(clusterProperties.getHeartbeatInterval().toMillis());
+                heartbeat();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Cluster heartbeat failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Renews this node's lease and tries for the leader lease.
+     */
+    void heartbeat() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        acquire(NODE_PREFIX + nodeId, now.plus(clusterProperties.getLeaseDuration()), now);
+        boolean wasLeader = leader;
+        leader = acquire(LEADER, now.plus(clusterProperties.getLeaseDuration()), now);
+        if (leader != wasLeader) {
+            log.info(leader ? "Node {} is now the cluster leader" : "Node {} is no longer the cluster leader",
+                    nodeId);
+        }
+        if (leader) {
+            leaseRepository.deleteExpired(now);
+            LeaderListener listener = this.listener;
+            if (listener != null) {
+                listener.leading(!wasLeader);
+            }
+        }
+    }
+
+    private boolean acquire(String name, LocalDateTime expiresAt, LocalDateTime now) {
+        if (leaseRepository.renew(name, nodeId, expiresAt, now) == 1) {
+            return true;
+        }
+        try {
+            leaseRepository.insert(name, nodeId, expiresAt);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return whether this node won the slot and should run it; exactly one node does
+     */
+    public boolean claimSlot(String pipelineName, ZonedDateTime slot) {
+        if (!isEnabled()) {
+            return true;
+        }
+        try {
+            leaseRepository.insert(SLOT_PREFIX + pipelineName + "@" + slot.toInstant(), nodeId,
+                    LocalDateTime.now(clock).plus(SLOT_RETENTION));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Slot {} of pipeline {} was fired by another node", slot, pipelineName);
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the node still renews its lease; executions of dead nodes are recovered
+     */
+    public boolean isAlive(String otherNodeId) {
+        if (nodeId.equals(otherNodeId)) {
+            return true;
+        }
+        return isEnabled() && otherNodeId != null
+                && leaseRepository.existsByNameAndExpiresAtAfter(NODE_PREFIX + otherNodeId, LocalDateTime.now(clock));
+    }
+}
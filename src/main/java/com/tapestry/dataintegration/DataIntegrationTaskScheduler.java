@@ -1,323 +1,947 @@
 package com.tapestry.dataintegration;
 
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.ListObjectsV2Request;
-import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
-import com.tapestry.dataintegration.config.AwsProperties;
+import com.tapestry.dataintegration.config.ClusterProperties;
 import com.tapestry.dataintegration.config.JobExecution;
 import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.config.PipelineTriggerState;
+import com.tapestry.dataintegration.config.SchedulerProperties;
+import com.tapestry.dataintegration.config.TransferProperties;
+import com.tapestry.dataintegration.service.FileOperationService;
+import com.tapestry.dataintegration.service.IncrementalCopyFilter;
 import com.tapestry.dataintegration.service.JobExecutionRepository;
+import com.tapestry.dataintegration.service.JobProgress;
+import com.tapestry.dataintegration.service.JobRunRegistry;
+import com.tapestry.dataintegration.service.LocalStorageBackend;
+import com.tapestry.dataintegration.service.LocalTransferEngine;
+import com.tapestry.dataintegration.service.ManifestStore;
+import com.tapestry.dataintegration.service.PipelineTriggerStateRepository;
+import com.tapestry.dataintegration.service.S3BatchDeleter;
+import com.tapestry.dataintegration.service.S3CopyEngine;
+import com.tapestry.dataintegration.service.S3KeyLister;
+import com.tapestry.dataintegration.service.S3Keys;
+import com.tapestry.dataintegration.service.S3Location;
+import com.tapestry.dataintegration.service.StorageBackend;
+import com.tapestry.dataintegration.service.StorageTransferEngine;
+import com.tapestry.dataintegration.service.TransferMetrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.scheduling.support.CronExpression;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 @Component
 @Slf4j
 public class DataIntegrationTaskScheduler {
 
-    private final PipelineConfig pipelineConfig;
-    private final AwsProperties awsProperties;
-    private AmazonS3 s3Client;
+    private static final Set<String> RESUMABLE = Set.of(JobProgress.INTERRUPTED, "FAILED", JobProgress.CANCELLED);
 
-    private final JobExecutionRepository jobExecutionRepository;
+    private final PipelinePlans pipelinePlans;
+    private final SchedulerProperties schedulerProperties;
+    private final TransferProperties transferProperties;
+    private final S3CopyEngine s3CopyEngine;
+    private final S3KeyLister s3KeyLister;
+    private final S3BatchDeleter s3BatchDeleter;
+    private final IncrementalCopyFilter incrementalCopyFilter;
+    private final LocalTransferEngine localTransferEngine;
 
-    public DataIntegrationTaskScheduler(PipelineConfig pipelineConfig,
-                                        AwsProperties awsProperties,
-                                        JobExecutionRepository jobExecutionRepository) {
-        this.pipelineConfig = pipelineConfig;
-        this.awsProperties = awsProperties;
+    private final JobExecutionRepository jobExecutionRepository;
+    private final PipelineTriggerStateRepository triggerStateRepository;
+    private final JobRunRegistry jobRunRegistry;
+    private final ManifestStore manifestStore;
+    private final FileOperationService fileOperationService;
+    private final StorageTransferEngine storageTransferEngine;
+    private final TransferMetrics transferMetrics;
+
+    private final List<PipelineEventSource> eventSources;
+    private final Map<String, PipelineEventSource.Sink> watchSinks = new ConcurrentHashMap<>();
+
+    private final ClusterProperties clusterProperties;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ShardPlanner shardPlanner;
+    private ShardWorker shardWorker;
+
+    private final PipelineDispatcher dispatcher;
+    /** Job execution to resume, by the run id the resumed run was dispatched under. */
+    private final Map<String, Long> resumes = new ConcurrentHashMap<>();
+    private final Set<Long> resuming = ConcurrentHashMap.newKeySet();
+    private final PipelineDependencies dependencies;
+    private PipelineTriggerQueue triggerQueue;
+    private PipelineEventTrigger eventTrigger;
+
+    public DataIntegrationTaskScheduler(PipelinePlans pipelinePlans,
+                                        SchedulerProperties schedulerProperties,
+                                        TransferProperties transferProperties,
+                                        S3CopyEngine s3CopyEngine,
+                                        S3KeyLister s3KeyLister,
+                                        S3BatchDeleter s3BatchDeleter,
+                                        IncrementalCopyFilter incrementalCopyFilter,
+                                        LocalTransferEngine localTransferEngine,
+                                        JobExecutionRepository jobExecutionRepository,
+                                        PipelineTriggerStateRepository triggerStateRepository,
+                                        JobRunRegistry jobRunRegistry,
+                                        ManifestStore manifestStore,
+                                        FileOperationService fileOperationService,
+                                        StorageTransferEngine storageTransferEngine,
+                                        TransferMetrics transferMetrics,
+                                        List<PipelineEventSource> eventSources,
+                                        ClusterProperties clusterProperties,
+                                        ClusterCoordinator clusterCoordinator,
+                                        ShardPlanner shardPlanner,
+                                        @Qualifier("pipelineExecutor") Executor pipelineExecutor) {
+        this.pipelinePlans = pipelinePlans;
+        this.schedulerProperties = schedulerProperties;
+        this.transferProperties = transferProperties;
+        this.s3CopyEngine = s3CopyEngine;
+        this.s3KeyLister = s3KeyLister;
+        this.s3BatchDeleter = s3BatchDeleter;
+        this.incrementalCopyFilter = incrementalCopyFilter;
+        this.localTransferEngine = localTransferEngine;
         this.jobExecutionRepository = jobExecutionRepository;
+        this.triggerStateRepository = triggerStateRepository;
+        this.jobRunRegistry = jobRunRegistry;
+        this.manifestStore = manifestStore;
+        this.fileOperationService = fileOperationService;
+        this.storageTransferEngine = storageTransferEngine;
+        this.transferMetrics = transferMetrics;
+        this.eventSources = eventSources;
+        this.clusterProperties = clusterProperties;
+        this.clusterCoordinator = clusterCoordinator;
+        this.shardPlanner = shardPlanner;
+        this.dispatcher = new PipelineDispatcher(pipelineExecutor, Clock.systemDefaultZone(),
+                schedulerProperties.getDefaultOverlapPolicy(),
+                (pipeline, slot, progress) -> {
+                    Long resumed = resumes.remove(progress.getRunId());
+                    if (resumed != null) {
+                        resumeOperation(pipeline, resumed, progress);
+                    } else {
+                        runPipeline(pipeline, slot.toLocalDateTime(), progress);
+                    }
+                    // A sharded run finishes later, once its last shard is done.
+                    progress.whenFinished(() -> {
+                        if ("SUCCESS".equals(progress.snapshot().getStatus())) {
+                            releaseDownstream(pipeline.getPlName());
+                        }
+                    });
+                });
+        this.dependencies = new PipelineDependencies(jobExecutionRepository, triggerStateRepository,
+                Clock.systemDefaultZone(), this::producedKeys, this::runDownstream);
     }
 
-    private synchronized AmazonS3 getS3Client() {
-        if (s3Client == null) {
-            s3Client = AmazonS3ClientBuilder.standard()
-                    .withRegion(awsProperties.getRegion())
-                    .build();
+    @EventListener(ApplicationReadyEvent.class)
+    public void startTriggers() {
+        recoverInterrupted(true);
+        // Every node runs the trigger queue; the first node to claim a slot runs it.
+        triggerQueue = new PipelineTriggerQueue(Clock.systemDefaultZone(),
+                schedulerProperties.getMisfireThreshold(), schedulerProperties.getDefaultMisfirePolicy(),
+                (pipeline, slot) -> {
+                    if (clusterCoordinator.claimSlot(pipeline.getPlName(), slot)) {
+                        triggerStateRepository.recordSlot(pipeline.getPlName(), slot.toLocalDateTime());
+                        transferMetrics.recordTrigger(pipeline.getPlName(),
+                                dispatcher.dispatch(pipeline, slot, jobRunRegistry.register(pipeline.getPlName())));
+                    }
+                });
+        eventTrigger = new PipelineEventTrigger(Clock.systemDefaultZone(), schedulerProperties.getWatchDebounce(),
+                schedulerProperties.getWatchMaxDelay(), this::fireBatch);
+        pipelinePlans.all().forEach(plan -> activate(plan, true));
+        // Upstream runs that succeeded just before a restart still release what depends on them.
+        pipelinePlans.all().stream().filter(plan -> !plan.getDependsOn().isEmpty()).forEach(this::release);
+        triggerQueue.start();
+        eventTrigger.start();
+        pipelinePlans.start(this::reloaded);
+        clusterCoordinator.start(this::leading);
+        if (clusterCoordinator.isEnabled()) {
+            shardWorker = new ShardWorker(jobExecutionRepository, clusterCoordinator.getNodeId(),
+                    clusterProperties.getShardWorkers(), clusterProperties.getShardPollInterval(), this::runShard);
+            shardWorker.start();
+            shardPlanner.start();
         }
-        return s3Client;
     }
 
-    @Scheduled(fixedRate = 60000)
-    public void executeScheduledTasks() {
-        LocalDateTime now = LocalDateTime.now();
-        String dateFolder = now.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+    /**
+     * @param startup whether to catch up on the slots missed since the pipeline last fired; a
+     *                pipeline changed while running starts over from now with its new schedule
+     */
+    private void activate(PipelinePlan plan, boolean startup) {
+        registerGauges(plan.getName());
+        if (!plan.getDependsOn().isEmpty()) {
+            dependencies.watch(plan);
+            if (plan.getCron() != null) {
+                log.info("Pipeline {} runs after {}; its schedule is not used", plan.getName(), plan.getDependsOn());
+            }
+        } else if (plan.getCron() != null) {
+            ZonedDateTime lastSlot = startup ? triggerStateRepository.findById(plan.getName())
+                    .map(PipelineTriggerState::getLastSlot)
+                    .map(slot -> slot.atZone(ZoneId.systemDefault()))
+                    .orElse(null) : null;
+            triggerQueue.schedule(plan.getPipeline(), plan.getCron(), lastSlot);
+        }
+        if (plan.isWatched()) {
+            watch(plan.getPipeline());
+        }
+    }
 
-        pipelineConfig.getPipelines().forEach(pipeline -> {
-            String springCron = "0 " + pipeline.getSchedule();
-            CronExpression cronExpression = CronExpression.parse(springCron);
-            LocalDateTime nextExecutionTime = cronExpression.next(now);
+    /**
+     * Swaps the triggers of pipelines that were added, changed or removed. Runs already
+     * dispatched carry their own pipeline and finish unaffected.
+     */
+    private void reloaded(Map<String, PipelinePlan> previous, Map<String, PipelinePlan> current) {
+        previous.forEach((name, plan) -> {
+            PipelinePlan next = current.get(name);
+            if (next == null || !next.getPipeline().equals(plan.getPipeline())) {
+                triggerQueue.unschedule(name);
+                eventTrigger.unregister(name);
+                watchSinks.remove(name);
+                dependencies.forget(name);
+                log.info(next == null ? "Pipeline {} was removed" : "Pipeline {} was changed", name);
+            }
+        });
+        current.forEach((name, plan) -> {
+            PipelinePlan before = previous.get(name);
+            if (before == null || !before.getPipeline().equals(plan.getPipeline())) {
+                try {
+                    activate(plan, false);
+                } catch (RuntimeException e) {
+                    log.error("Pipeline {} cannot be scheduled: {}", name, e.getMessage());
+                }
+            }
+        });
+    }
 
-            if (isWithinExecutionWindow(now, nextExecutionTime)) {
-                String sourcePath = pipeline.getSource().getPath().replace("{date_folder}", dateFolder);
-                String targetPath = pipeline.getTarget().getPath().replace("{date_folder}", dateFolder);
+    /**
+     * A new leader rescans the watched sources, since events seen only by the previous leader
+     * are lost, and on every heartbeat recovers the executions of nodes that died.
+     */
+    private void leading(boolean elected) {
+        if (elected) {
+            watchSinks.values().forEach(PipelineEventSource.Sink::rescan);
+        }
+        recoverInterrupted(false);
+    }
 
-                log.info("Executing pipeline: {}", pipeline.getPlName());
-                log.info("From: {}", sourcePath);
-                log.info("To: {}", targetPath);
+    private void watch(PipelineConfig.Pipeline pipeline) {
+        PipelineEventSource source = eventSources.stream()
+                .filter(candidate -> candidate.supports(pipeline))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No event source for pipeline "
+                        + pipeline.getPlName() + " at " + pipeline.getSource().getPath()));
+        PipelineEventSource.Sink sink = eventTrigger.register(pipeline);
+        watchSinks.put(pipeline.getPlName(), sink);
+        source.watch(pipeline, sink);
+    }
 
-                executeOperation(pipeline.getOperation(), sourcePath, targetPath,
-                        pipeline.getPlName(), pipeline.getSourceKeys());
+    /**
+     * Runs a watched pipeline over just the files of one event batch, or over its whole source
+     * when events were lost. Files gone by now, such as renamed temporary files, are dropped.
+     * While a run of the pipeline is in progress the batch is held back, so everything that
+     * arrives meanwhile goes into one follow-up run.
+     */
+    private boolean fireBatch(PipelineConfig.Pipeline pipeline, List<String> files) {
+        if (!clusterCoordinator.isLeader()) {
+            // Every node sees the events of a shared directory; only the leader acts on them.
+            return true;
+        }
+        PipelineDispatcher.PipelineStatus status = dispatcher.status(pipeline.getPlName());
+        if (status.getRunning() + status.getWaiting() > 0) {
+            return false;
+        }
+        PipelineConfig.Pipeline run = pipeline;
+        if (files != null) {
+            String sourcePath = asDirectory(pipeline.getSource().getPath());
+            boolean local = isLocal(fileOperationService.backendFor(sourcePath));
+            List<String> batch = files.stream()
+                    .filter(file -> isUnderSourceKeys(pipeline, file))
+                    .filter(file -> !local || Files.isRegularFile(LocalStorageBackend.path(sourcePath + file)))
+                    .toList();
+            if (batch.isEmpty()) {
+                return true;
             }
-        });
+            run = batchOf(pipeline, batch);
+        }
+        boolean dispatched = dispatcher.dispatch(run, ZonedDateTime.now(),
+                jobRunRegistry.register(pipeline.getPlName()));
+        transferMetrics.recordTrigger(pipeline.getPlName(), dispatched);
+        return dispatched;
     }
 
-    public Optional<PipelineConfig.Pipeline> findPipelineByName(String pipelineName) {
-        return pipelineConfig.getPipelines().stream()
-                .filter(p -> p.getPlName().equals(pipelineName))
-                .findFirst();
+    /**
+     * Releases the pipelines that depend on one that has just succeeded, those whose other
+     * upstream pipelines have succeeded too.
+     */
+    private void releaseDownstream(String pipelineName) {
+        pipelinePlans.downstreamOf(pipelineName).forEach(this::release);
+    }
+
+    private void release(PipelinePlan downstream) {
+        try {
+            dependencies.check(downstream);
+        } catch (RuntimeException e) {
+            log.error("Pipeline {} could not be started after {}: {}", downstream.getName(),
+                    downstream.getDependsOn(), e.getMessage());
+        }
+    }
+
+    private void runDownstream(PipelineConfig.Pipeline pipeline, ZonedDateTime slot, List<String> keys) {
+        if (keys != null && keys.isEmpty()) {
+            log.info("Pipeline {} has nothing to do, its upstream pipelines produced no files", pipeline.getPlName());
+            return;
+        }
+        PipelineConfig.Pipeline run = keys == null ? pipeline : batchOf(pipeline, keys);
+        transferMetrics.recordTrigger(pipeline.getPlName(),
+                dispatcher.dispatch(run, slot, jobRunRegistry.register(pipeline.getPlName())));
+    }
+
+    /**
+     * The files the run wrote below the downstream pipeline's source, relative to it, read from
+     * the run's manifest. Returns {@code null}, so the downstream pipeline runs over its whole
+     * source, when the run wrote somewhere else, which makes the dependency one of order only,
+     * or wrote too many files to list them one by one.
+     */
+    private List<String> producedKeys(JobExecution jobExecution, PipelinePlan downstream, ZonedDateTime slot) {
+        String sourcePath = asDirectory(downstream.getSource().render(slot.toLocalDateTime(), downstream.getName()))
+                .replace('\\', '/');
+        String targetPath = asDirectory(jobExecution.getTargetPath()).replace('\\', '/');
+        if (!sourcePath.startsWith(targetPath) && !targetPath.startsWith(sourcePath)) {
+            return null;
+        }
+        List<Long> ids = jobExecution.getShards() != null
+                ? jobExecutionRepository.findByParentId(jobExecution.getId()).stream().map(JobExecution::getId).toList()
+                : Stream.of(jobExecution.getId()).filter(Objects::nonNull).toList();
+        if (ids.stream().mapToInt(manifestStore::count).sum() > PipelineEventTrigger.MAX_BATCH_FILES) {
+            return null;
+        }
+        S3Location s3Target = S3Location.parse(jobExecution.getTargetPath());
+        Path localSource = isLocal(fileOperationService.backendFor(sourcePath))
+                ? LocalStorageBackend.path(sourcePath).toAbsolutePath().normalize() : null;
+        List<String> keys = new ArrayList<>();
+        for (Long id : ids) {
+            try (Stream<ManifestStore.Entry> entries = manifestStore.read(id)) {
+                entries.map(entry -> relativeKey(entry.target, s3Target, sourcePath, localSource))
+                        .filter(key -> key != null && isUnderSourceKeys(downstream.getPipeline(), key))
+                        .forEach(keys::add);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Manifests record S3 targets as bare keys, local targets as paths and other targets as
+     * locations.
+     */
+    private static String relativeKey(String produced, S3Location s3Target, String sourcePath, Path localSource) {
+        if (localSource != null) {
+            Path file = LocalStorageBackend.path(produced).toAbsolutePath().normalize();
+            return file.startsWith(localSource) && !file.equals(localSource)
+                    ? localSource.relativize(file).toString().replace('\\', '/') : null;
+        }
+        String location = s3Target != null && !S3Location.isS3Path(produced)
+                ? "s3://" + s3Target.bucket + "/" + produced : produced.replace('\\', '/');
+        return location.startsWith(sourcePath) && location.length() > sourcePath.length()
+                ? location.substring(sourcePath.length()) : null;
+    }
+
+    private static boolean isUnderSourceKeys(PipelineConfig.Pipeline pipeline, String file) {
+        if (pipeline.getSourceKeys() == null || pipeline.getSourceKeys().isEmpty()) {
+            return true;
+        }
+        return pipeline.getSourceKeys().stream()
+                .map(key -> key.replace('\\', '/').replaceAll("^/+|/+$", ""))
+                .anyMatch(key -> file.equals(key) || file.startsWith(key + "/"));
+    }
+
+    /**
+     * A copy of the pipeline whose source keys are the batch's files, with both paths ending
+     * in a separator so that keys relative to the source directory resolve below it.
+     */
+    private static PipelineConfig.Pipeline batchOf(PipelineConfig.Pipeline pipeline, List<String> files) {
+        PipelineConfig.Pipeline batch = new PipelineConfig.Pipeline();
+        BeanUtils.copyProperties(pipeline, batch);
+        PipelineConfig.Source source = new PipelineConfig.Source();
+        source.setPath(asDirectory(pipeline.getSource().getPath()));
+        PipelineConfig.Target target = new PipelineConfig.Target();
+        target.setPath(asDirectory(pipeline.getTarget().getPath()));
+        batch.setSource(source);
+        batch.setTarget(target);
+        batch.setSourceKeys(files);
+        return batch;
+    }
+
+    private static String asDirectory(String path) {
+        return path.endsWith("/") || path.endsWith("\\") ? path : path + "/";
+    }
+
+    private void registerGauges(String pipelineName) {
+        transferMetrics.pipelineGauge("pipeline.runs.running", pipelineName,
+                () -> dispatcher.status(pipelineName).getRunning());
+        transferMetrics.pipelineGauge("pipeline.runs.waiting", pipelineName,
+                () -> dispatcher.status(pipelineName).getWaiting());
+        transferMetrics.pipelineGauge("pipeline.runs.lag.millis", pipelineName,
+                () -> dispatcher.status(pipelineName).getCurrentLagMillis());
+    }
+
+    @PreDestroy
+    public void stopTriggers() {
+        if (triggerQueue != null) {
+            triggerQueue.stop();
+        }
+        if (eventTrigger != null) {
+            eventTrigger.stop();
+        }
+        pipelinePlans.stop();
+        eventSources.forEach(PipelineEventSource::stop);
+        clusterCoordinator.stop();
+        if (shardWorker != null) {
+            shardWorker.stop();
+        }
+        shardPlanner.stop();
+    }
+
+    public List<PipelineDispatcher.PipelineStatus> getPipelineStatuses() {
+        return dispatcher.statuses();
+    }
+
+    /**
+     * Queues a run outside the pipeline's schedule. The returned progress is already finished
+     * with status {@code SKIPPED} when the overlap policy refused the run.
+     */
+    public JobProgress submitPipeline(PipelineConfig.Pipeline pipeline) {
+        JobProgress progress = jobRunRegistry.register(pipeline.getPlName());
+        dispatcher.dispatch(pipeline, ZonedDateTime.now(), progress);
+        return progress;
+    }
+
+    /**
+     * Executions still marked running by a node that died, or by this node before a restart,
+     * are marked interrupted with the progress their manifest recorded and, unless disabled,
+     * resumed. Shards are set back to pending for any node's shard workers instead.
+     */
+    void recoverInterrupted(boolean startup) {
+        for (JobExecution jobExecution : jobExecutionRepository.findByStatus(JobProgress.RUNNING)) {
+            String owner = jobExecution.getNodeId();
+            if (clusterCoordinator.isAlive(owner) && !(startup && clusterCoordinator.getNodeId().equals(owner))) {
+                continue;
+            }
+            if (jobExecution.getParentId() != null) {
+                if (jobExecutionRepository.transition(jobExecution.getId(), JobProgress.RUNNING,
+                        ShardWorker.PENDING, null) == 1) {
+                    log.warn("Shard {} of job execution {} was interrupted on node {}", jobExecution.getId(),
+                            jobExecution.getParentId(), owner);
+                }
+                continue;
+            }
+            if (jobExecutionRepository.transition(jobExecution.getId(), JobProgress.RUNNING,
+                    JobProgress.INTERRUPTED, owner) == 0) {
+                continue;
+            }
+            jobExecution.setStatus(JobProgress.INTERRUPTED);
+            jobExecution.setFilesProcessed(manifestStore.count(jobExecution.getId()));
+            jobExecutionRepository.save(jobExecution);
+            log.warn("Job execution {} of pipeline {} was interrupted after {} file(s)", jobExecution.getId(),
+                    jobExecution.getPipelineName(), jobExecution.getFilesProcessed());
+            if (schedulerProperties.isResumeInterrupted()) {
+                try {
+                    resumeExecution(jobExecution.getId());
+                } catch (RuntimeException e) {
+                    log.error("Cannot resume job execution {}: {}", jobExecution.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues the rest of an interrupted, failed or cancelled execution under the pipeline's
+     * overlap policy. The run continues the same execution and manifest, skipping every file
+     * the manifest records as done.
+     */
+    public JobProgress resumeExecution(Long jobExecutionId) {
+        JobExecution jobExecution = jobExecutionRepository.findById(jobExecutionId)
+                .orElseThrow(() -> new IllegalArgumentException("No job execution " + jobExecutionId));
+        if (!RESUMABLE.contains(jobExecution.getStatus())) {
+            throw new IllegalArgumentException("Job execution " + jobExecutionId + " is "
+                    + jobExecution.getStatus() + " and cannot be resumed");
+        }
+        PipelineConfig.Pipeline pipeline = findPipelineByName(jobExecution.getPipelineName())
+                .orElseThrow(() -> new IllegalArgumentException("Pipeline " + jobExecution.getPipelineName()
+                        + " is no longer configured"));
+        if (!resuming.add(jobExecutionId)) {
+            throw new IllegalArgumentException("Job execution " + jobExecutionId + " is already being resumed");
+        }
+        JobProgress progress = jobRunRegistry.register(pipeline.getPlName());
+        resumes.put(progress.getRunId(), jobExecutionId);
+        boolean dispatched = false;
+        try {
+            dispatched = dispatcher.dispatch(pipeline, ZonedDateTime.now(), progress);
+        } finally {
+            if (!dispatched) {
+                resumes.remove(progress.getRunId());
+                resuming.remove(jobExecutionId);
+            }
+        }
+        return progress;
+    }
+
+    private JobExecution resumeOperation(PipelineConfig.Pipeline pipeline, Long jobExecutionId,
+                                         JobProgress progress) {
+        try {
+            JobExecution jobExecution = jobExecutionRepository.findById(jobExecutionId)
+                    .orElseThrow(() -> new IllegalArgumentException("No job execution " + jobExecutionId));
+            // Another node may have resumed it since the request was accepted.
+            if (!RESUMABLE.contains(jobExecution.getStatus()) || jobExecutionRepository.transition(jobExecutionId,
+                    jobExecution.getStatus(), JobProgress.RUNNING, clusterCoordinator.getNodeId()) == 0) {
+                progress.finished(JobProgress.SKIPPED, jobExecutionId, "Job execution is already running");
+                return jobExecution;
+            }
+            ManifestStore.ResumePoint resumePoint = manifestStore.resumePoint(jobExecutionId);
+            log.info("Resuming job execution {} of pipeline {} from {} to {}", jobExecutionId,
+                    pipeline.getPlName(), jobExecution.getSourcePath(), jobExecution.getTargetPath());
+            return execute(pipeline, jobExecution, progress, resumePoint);
+        } finally {
+            resuming.remove(jobExecutionId);
+        }
+    }
+
+    private void runShard(JobExecution shard) {
+        Optional<PipelineConfig.Pipeline> pipeline = findPipelineByName(shard.getPipelineName());
+        if (pipeline.isEmpty()) {
+            shard.setStatus("FAILED");
+            shard.setErrorMessage("Pipeline " + shard.getPipelineName() + " is no longer configured");
+            shard.setEndTime(LocalDateTime.now());
+            jobExecutionRepository.save(shard);
+            return;
+        }
+        log.info("Running shard {} of job execution {}: keys from {} to {}", shard.getId(), shard.getParentId(),
+                shard.getShardFirstKey(), shard.getShardEndKey());
+        try {
+            execute(pipeline.get(), shard, jobRunRegistry.register(shard.getPipelineName()),
+                    manifestStore.resumePoint(shard.getId()));
+        } catch (RuntimeException e) {
+            log.error("Shard {} of job execution {} failed: {}", shard.getId(), shard.getParentId(), e.getMessage());
+        }
+        shardPlanner.completeFinished();
     }
 
-    private boolean isWithinExecutionWindow(LocalDateTime now, LocalDateTime nextExecutionTime) {
-        return nextExecutionTime != null &&
-                nextExecutionTime.minusMinutes(1).isBefore(now) &&
-                nextExecutionTime.plusMinutes(1).isAfter(now);
+    public JobExecution runPipeline(PipelineConfig.Pipeline pipeline, LocalDateTime slot, JobProgress progress) {
+        PipelinePlan plan = pipelinePlans.planFor(pipeline);
+        String sourcePath = plan.getSource().render(slot, plan.getName());
+        String targetPath = plan.getTarget().render(slot, plan.getName());
+
+        log.info("Executing pipeline: {}", pipeline.getPlName());
+        log.info("From: {}", sourcePath);
+        log.info("To: {}", targetPath);
+
+        return executeOperation(pipeline, sourcePath, targetPath, slot, progress);
     }
 
-    private void copyFiles(String sourcePath, String targetPath, List<String> sourceKeys, JobExecution jobExecution) {
+    public Optional<PipelineConfig.Pipeline> findPipelineByName(String pipelineName) {
+        return pipelinePlans.find(pipelineName).map(PipelinePlan::getPipeline);
+    }
+
+    private void copyFiles(PipelineConfig.Pipeline pipeline, String sourcePath, String targetPath,
+                           List<String> sourceKeys, JobExecution jobExecution, JobProgress progress,
+                           ManifestStore.Writer manifest, ManifestStore.ResumePoint resume) {
         log.info("Copying files from {} to {}", sourcePath, targetPath);
-        if (isS3Path(sourcePath) || isS3Path(targetPath)) {
-            copyS3Files(sourcePath, targetPath, sourceKeys, jobExecution);
+        StorageBackend source = fileOperationService.backendFor(sourcePath);
+        StorageBackend target = fileOperationService.backendFor(targetPath);
+        if (isS3Path(sourcePath) && isS3Path(targetPath)) {
+            timed(pipeline, "copy_s3", () -> copyS3Files(pipeline, sourcePath, targetPath, sourceKeys,
+                    jobExecution, progress, manifest, resume));
+        } else if (isLocal(source) && isLocal(target)) {
+            timed(pipeline, "copy_local", () -> copyLocalFiles(pipeline, sourcePath, targetPath, sourceKeys,
+                    progress, manifest, resume));
         } else {
-            copyLocalFiles(sourcePath, targetPath, sourceKeys, jobExecution);
+            timed(pipeline, "copy_stream", () -> copyAcrossBackends(pipeline, source, target, sourcePath,
+                    targetPath, sourceKeys, progress, manifest, resume));
         }
     }
 
-    private void moveFiles(String sourcePath, String targetPath, List<String> sourceKeys, JobExecution jobExecution) {
+    /**
+     * A resumed move needs no special handling: files already renamed are gone from the source,
+     * and the source deletion replays the whole manifest, which is idempotent.
+     */
+    private void moveFiles(PipelineConfig.Pipeline pipeline, String sourcePath, String targetPath,
+                           List<String> sourceKeys, JobExecution jobExecution, JobProgress progress,
+                           ManifestStore.Writer manifest, ManifestStore.ResumePoint resume) {
         log.info("Moving files from {} to {}", sourcePath, targetPath);
-        copyFiles(sourcePath, targetPath, sourceKeys, jobExecution);
-        deleteSource(sourcePath, sourceKeys);
+        if (isLocal(fileOperationService.backendFor(sourcePath))
+                && isLocal(fileOperationService.backendFor(targetPath))) {
+            timed(pipeline, "move_local", () -> moveLocalFiles(pipeline, sourcePath, targetPath, sourceKeys,
+                    progress, manifest));
+            return;
+        }
+        copyFiles(pipeline, sourcePath, targetPath, sourceKeys, jobExecution, progress, manifest, resume);
+        if (jobExecution.getShards() != null) {
+            // Each shard has moved its own keys.
+            return;
+        }
+        manifest.flush();
+        // Even after a cancel, what was copied is deleted so source and target stay consistent.
+        timed(pipeline, "delete_source",
+                () -> deleteSource(sourcePath, targetPath, sourceKeys,
+                        isS3Path(sourcePath) ? resolveS3Concurrency(pipeline) : resolveConcurrency(pipeline),
+                        isVerified(pipeline), jobExecution));
+    }
+
+    /**
+     * Streams files between different backends, or copies server-side within a backend that has
+     * no dedicated engine. {@code source_keys} select subtrees, as for local pipelines.
+     */
+    private void copyAcrossBackends(PipelineConfig.Pipeline pipeline, StorageBackend source, StorageBackend target,
+                                    String sourcePath, String targetPath, List<String> sourceKeys,
+                                    JobProgress progress, ManifestStore.Writer manifest,
+                                    ManifestStore.ResumePoint resume) {
+        if (Boolean.TRUE.equals(pipeline.getIncremental())) {
+            log.warn("Pipeline {}: incremental mode only applies between S3 locations, copying everything",
+                    pipeline.getPlName());
+        }
+        List<String[]> roots = new ArrayList<>();
+        if (sourceKeys != null && !sourceKeys.isEmpty()) {
+            sourceKeys.forEach(key -> roots.add(new String[]{sourcePath + key, targetPath + key}));
+        } else {
+            roots.add(new String[]{sourcePath, targetPath});
+        }
+        try (Stream<StorageTransferEngine.TransferTask> tasks = roots.stream()
+                .flatMap(root -> source.list(root[0])
+                        .filter(object -> !resume.isDone(object.location))
+                        .map(object -> new StorageTransferEngine.TransferTask(object,
+                                target.resolve(root[1], object.relativePath))))) {
+            StorageTransferEngine.TransferResult result = storageTransferEngine.transfer(source, target,
+                    tasks.iterator(), resolveConcurrency(pipeline), progress, manifest, isVerified(pipeline));
+            log.info("Transferred {} file(s)", result.filesTransferred);
+        }
     }
 
-    private void copyS3Files(String sourcePath, String targetPath, List<String> sourceKeys, JobExecution jobExecution) {
-        List<String> processedSourceFiles = new ArrayList<>();
-        List<String> processedTargetFiles = new ArrayList<>();
+    private static boolean isVerified(PipelineConfig.Pipeline pipeline) {
+        return Boolean.TRUE.equals(pipeline.getVerify());
+    }
 
+    private static boolean isLocal(StorageBackend backend) {
+        return backend instanceof LocalStorageBackend;
+    }
+
+    private void timed(PipelineConfig.Pipeline pipeline, String phase, Runnable body) {
+        Timer.Sample sample = transferMetrics.startPhase();
+        try {
+            body.run();
+        } finally {
+            transferMetrics.stopPhase(sample, pipeline.getPlName(), phase);
+        }
+    }
+
+    private int resolveConcurrency(PipelineConfig.Pipeline pipeline) {
+        Integer concurrency = pipeline.getConcurrency();
+        return concurrency != null && concurrency > 0 ? concurrency : transferProperties.getDefaultConcurrency();
+    }
+
+    /**
+     * With adaptive concurrency the job may fill the transfer pool, and S3RateController holds
+     * the number of requests actually in flight at what S3 sustains.
+     */
+    private int resolveS3Concurrency(PipelineConfig.Pipeline pipeline) {
+        Integer concurrency = pipeline.getConcurrency();
+        if (concurrency != null && concurrency > 0) {
+            return concurrency;
+        }
+        return transferProperties.isAdaptiveConcurrency()
+                ? Math.min(transferProperties.getAdaptiveJobConcurrency(), transferProperties.getMaxThreads())
+                : transferProperties.getDefaultConcurrency();
+    }
+
+    private void copyS3Files(PipelineConfig.Pipeline pipeline, String sourcePath, String targetPath,
+                             List<String> sourceKeys, JobExecution jobExecution, JobProgress progress,
+                             ManifestStore.Writer manifest, ManifestStore.ResumePoint resume) {
         S3Location source = parseS3Path(sourcePath);
         S3Location target = parseS3Path(targetPath);
+        boolean incremental = Boolean.TRUE.equals(pipeline.getIncremental());
+        LongAdder skipped = new LongAdder();
 
+        Iterator<S3CopyEngine.CopyTask> tasks;
+        Stream<S3ObjectSummary> listing = null;
         if (sourceKeys != null && !sourceKeys.isEmpty()) {
-            for (String key : sourceKeys) {
-                String sourceKey = source.key + key;
-                String targetKey = target.key + key;
-
-                try {
-                    getS3Client().copyObject(source.bucket, sourceKey, target.bucket, targetKey);
-                    processedSourceFiles.add(sourceKey);
-                    processedTargetFiles.add(targetKey);
-                    log.info("Copied file: {}", key);
-                } catch (Exception e) {
-                    log.error("Failed to copy file {}: {}", key, e.getMessage());
-                }
-            }
+            tasks = sourceKeys.stream()
+                    .filter(key -> !resume.isDone(source.key + key))
+                    .filter(key -> {
+                        if (incremental && incrementalCopyFilter.isUnchanged(
+                                source.bucket, source.key + key, target.bucket, target.key + key)) {
+                            skipped.increment();
+                            return false;
+                        }
+                        return true;
+                    })
+                    .map(key -> new S3CopyEngine.CopyTask(source.key + key, target.key + key))
+                    .iterator();
         } else {
-            ListObjectsV2Request listRequest = new ListObjectsV2Request()
-                    .withBucketName(source.bucket)
-                    .withPrefix(source.key);
-
-            ListObjectsV2Result listing = getS3Client().listObjectsV2(listRequest);
-            for (S3ObjectSummary summary : listing.getObjectSummaries()) {
-                String sourceKey = summary.getKey();
-                String targetKey = target.key + sourceKey.substring(source.key.length());
-                try {
-                    getS3Client().copyObject(source.bucket, sourceKey, target.bucket, targetKey);
-                    processedSourceFiles.add(sourceKey);
-                    processedTargetFiles.add(targetKey);
-                    log.info("Copied file: {}", sourceKey);
-                } catch (Exception e) {
-                    log.error("Failed to copy file {}: {}", sourceKey, e.getMessage());
-                }
+            if (clusterCoordinator.isEnabled() && jobExecution.getParentId() == null && resume.isEmpty()
+                    && shardPlanner.plan(source, jobExecution, progress)) {
+                return;
             }
+            // A resumed run lists everything again: keys that failed before the last recorded one still need copying.
+            Predicate<String> done = resume.listedDone(source.key);
+            String firstKey = jobExecution.getShardFirstKey();
+            String startAfter = ShardPlanner.listAfter(firstKey);
+            // Merging with the target listing needs the source in key order, which only a sequential listing keeps.
+            listing = incremental
+                    ? s3KeyLister.list(source.bucket, source.key, startAfter, jobExecution.getShardEndKey())
+                    : s3KeyLister.listPartitioned(source.bucket, source.key, startAfter,
+                    jobExecution.getShardEndKey(), transferProperties.getListParallelism());
+            Stream<S3ObjectSummary> summaries = listing
+                    .filter(summary -> firstKey == null
+                            || S3Keys.compare(summary.getKey(), firstKey) >= 0)
+                    .filter(summary -> !done.test(summary.getKey()));
+            if (incremental) {
+                summaries = incrementalCopyFilter.changedOnly(summaries, source.key, target.bucket, target.key,
+                        startAfter == null || startAfter.length() < source.key.length() ? null
+                                : target.key + startAfter.substring(source.key.length()), skipped);
+            }
+            tasks = summaries
+                    .map(summary -> new S3CopyEngine.CopyTask(summary.getKey(),
+                            target.key + summary.getKey().substring(source.key.length()),
+                            summary.getSize(), summary.getETag()))
+                    .iterator();
         }
 
-        jobExecution.setSourceFiles(processedSourceFiles);
-        jobExecution.setTargetFiles(processedTargetFiles);
-        jobExecution.setFilesProcessed(processedSourceFiles.size());
+        S3CopyEngine.CopyResult result;
+        try {
+            result = s3CopyEngine.copy(source.bucket, target.bucket, tasks, resolveS3Concurrency(pipeline), progress,
+                    manifest, isVerified(pipeline));
+        } finally {
+            if (listing != null) {
+                listing.close();
+            }
+        }
+        log.info("Copied {} file(s)", result.filesCopied);
+        if (incremental) {
+            jobExecution.setFilesSkipped(skipped.intValue());
+            log.info("Skipped {} unchanged file(s)", skipped.intValue());
+        }
     }
 
-    public JobExecution executeOperation(String operation, String sourcePath, String targetPath,
-                                         String pipelineName, List<String> sourceKeys) {
+    public JobExecution executeOperation(PipelineConfig.Pipeline pipeline, String sourcePath, String targetPath,
+                                         LocalDateTime slot, JobProgress progress) {
         JobExecution jobExecution = new JobExecution();
-        jobExecution.setPipelineName(pipelineName);
+        jobExecution.setPipelineName(pipeline.getPlName());
+        jobExecution.setSlot(slot);
         jobExecution.setSourcePath(sourcePath);
         jobExecution.setTargetPath(targetPath);
-        jobExecution.setOperation(operation);
+        jobExecution.setOperation(pipeline.getOperation());
         jobExecution.setStartTime(LocalDateTime.now());
+        return execute(pipeline, jobExecution, progress, ManifestStore.ResumePoint.NONE);
+    }
+
+    private JobExecution execute(PipelineConfig.Pipeline pipeline, JobExecution jobExecution, JobProgress progress,
+                                 ManifestStore.ResumePoint resume) {
+        String operation = jobExecution.getOperation();
+        String pipelineName = jobExecution.getPipelineName();
+        String sourcePath = jobExecution.getSourcePath();
+        String targetPath = jobExecution.getTargetPath();
+        List<String> sourceKeys = pipeline.getSourceKeys();
+
+        jobExecution.setRunId(progress.getRunId());
+        jobExecution.setNodeId(clusterCoordinator.getNodeId());
+        jobExecution.setStatus(JobProgress.RUNNING);
+        jobExecution.setEndTime(null);
+        jobExecution.setErrorMessage(null);
+        // The summary row is written first so manifest chunks can reference it while the job runs.
+        jobExecutionRepository.save(jobExecution);
+        ManifestStore.Writer manifest = resume == ManifestStore.ResumePoint.NONE
+                ? manifestStore.open(jobExecution.getId()) : manifestStore.resume(jobExecution.getId());
+        LocalDateTime runStart = LocalDateTime.now();
+        progress.setListener(transferMetrics.transferListener(pipelineName, operation));
+        progress.started();
 
         try {
             if ("copy".equals(operation)) {
-                copyFiles(sourcePath, targetPath, sourceKeys, jobExecution);
+                copyFiles(pipeline, sourcePath, targetPath, sourceKeys, jobExecution, progress, manifest, resume);
             } else if ("move".equals(operation)) {
-                moveFiles(sourcePath, targetPath, sourceKeys, jobExecution);
+                moveFiles(pipeline, sourcePath, targetPath, sourceKeys, jobExecution, progress, manifest, resume);
+            }
+            if (progress.isDetached()) {
+                // The shard planner finishes the run once its shards are done.
+                return jobExecution;
+            }
+            long failed = progress.snapshot().getFilesFailed();
+            if (failed > 0 && !progress.isCancelRequested()) {
+                // Failed files are not in the manifest, so resuming the execution retries them.
+                throw new IllegalStateException(failed + " file(s) failed to transfer");
             }
-            jobExecution.setStatus("SUCCESS");
+            jobExecution.setStatus(progress.isCancelRequested() ? JobProgress.CANCELLED : "SUCCESS");
         } catch (Exception e) {
             jobExecution.setStatus("FAILED");
             jobExecution.setErrorMessage(e.getMessage());
             throw e;
         } finally {
-            jobExecution.setEndTime(LocalDateTime.now());
-            if (jobExecution.getFilesProcessed() > 0) {
-                jobExecutionRepository.save(jobExecution);
+            manifest.flush();
+            if (!progress.isDetached()) {
+                finish(jobExecution, progress, manifest, runStart);
             }
         }
         return jobExecution;
     }
 
-    private void copyLocalFiles(String sourcePath, String targetPath, List<String> sourceKeys, JobExecution jobExecution) {
-        List<String> processedSourceFiles = new ArrayList<>();
-        List<String> processedTargetFiles = new ArrayList<>();
+    private void finish(JobExecution jobExecution, JobProgress progress, ManifestStore.Writer manifest,
+                        LocalDateTime runStart) {
+        jobExecution.setEndTime(LocalDateTime.now());
+        if (jobExecution.getShards() == null) {
+            jobExecution.setFilesProcessed(manifest.getTotal());
+            jobExecution.setBytesTransferred(progress.snapshot().getBytesDone());
+        }
+        // Shards and sharded runs stay on record even when empty, so the run can account for them,
+        // as do runs that pipelines depending on this one count towards their release.
+        if (jobExecution.getShards() != null || jobExecution.getParentId() != null
+                || jobExecution.getFilesProcessed() > 0
+                || !pipelinePlans.downstreamOf(jobExecution.getPipelineName()).isEmpty()) {
+            jobExecutionRepository.save(jobExecution);
+        } else {
+            jobExecutionRepository.delete(jobExecution);
+            jobExecution.setId(null);
+        }
+        transferMetrics.recordRun(jobExecution.getPipelineName(), jobExecution.getOperation(),
+                jobExecution.getStatus(), Duration.between(runStart, jobExecution.getEndTime()));
+        progress.finished(jobExecution.getStatus(), jobExecution.getId(), jobExecution.getErrorMessage());
+    }
 
+    private void copyLocalFiles(PipelineConfig.Pipeline pipeline, String sourcePath, String targetPath,
+                                List<String> sourceKeys, JobProgress progress, ManifestStore.Writer manifest,
+                                ManifestStore.ResumePoint resume) {
         try {
-            if (sourceKeys != null && !sourceKeys.isEmpty()) {
-                for (String key : sourceKeys) {
-                    String sourceFile = sourcePath + key;
-                    String targetFile = targetPath + key;
-                    Files.walk(Paths.get(sourceFile))
-                            .forEach(source -> {
-                                try {
-                                    String relativePath = Paths.get(sourceFile).relativize(source).toString();
-                                    Path targetFilePath = Paths.get(targetFile).resolve(relativePath);
-                                    if (Files.isDirectory(source)) {
-                                        Files.createDirectories(targetFilePath);
-                                    } else {
-                                        Files.createDirectories(targetFilePath.getParent());
-                                        Files.copy(source, targetFilePath, StandardCopyOption.REPLACE_EXISTING);
-                                        processedSourceFiles.add(source.toString());
-                                        processedTargetFiles.add(targetFilePath.toString());
-                                        log.info("Copied file: {} to {}", source, targetFilePath);
-                                    }
-                                } catch (IOException e) {
-                                    throw new RuntimeException("Failed to copy file: " + source, e);
-                                }
-                            });
-                }
-            } else {
-                Files.walk(Paths.get(sourcePath))
-                        .forEach(source -> {
-                            try {
-                                String relativePath = Paths.get(sourcePath).relativize(source).toString();
-                                Path targetFilePath = Paths.get(targetPath).resolve(relativePath);
-                                if (Files.isDirectory(source)) {
-                                    Files.createDirectories(targetFilePath);
-                                } else {
-                                    Files.createDirectories(targetFilePath.getParent());
-                                    Files.copy(source, targetFilePath, StandardCopyOption.REPLACE_EXISTING);
-                                    processedSourceFiles.add(source.toString());
-                                    processedTargetFiles.add(targetFilePath.toString());
-                                    log.info("Copied file: {} to {}", source, targetFilePath);
-                                }
-                            } catch (IOException e) {
-                                throw new RuntimeException("Failed to copy file: " + source, e);
-                            }
-                        });
-            }
-
-            jobExecution.setSourceFiles(processedSourceFiles);
-            jobExecution.setTargetFiles(processedTargetFiles);
-            jobExecution.setFilesProcessed(processedSourceFiles.size());
-        } catch (IOException e) {
+            LocalTransferEngine.TransferResult result = localTransferEngine.copy(
+                    localTrees(sourcePath, targetPath, sourceKeys), resolveConcurrency(pipeline), progress,
+                    manifest, file -> resume.isDone(file.toString()), isVerified(pipeline));
+            log.info("Copied {} file(s)", result.filesTransferred);
+        } catch (UncheckedIOException e) {
             log.error("Failed to copy local files: {}", e.getMessage());
             throw new RuntimeException("Failed to copy local files", e);
         }
     }
 
-
-    private void deleteSource(String sourcePath, List<String> sourceKeys) {
+    private void moveLocalFiles(PipelineConfig.Pipeline pipeline, String sourcePath, String targetPath,
+                                List<String> sourceKeys, JobProgress progress, ManifestStore.Writer manifest) {
         try {
-            if (isS3Path(sourcePath)) {
-                S3Location source = parseS3Path(sourcePath);
-                if (sourceKeys != null && !sourceKeys.isEmpty()) {
-                    for (String key : sourceKeys) {
-                        String sourceKey = source.key + key;
-                        getS3Client().deleteObject(source.bucket, sourceKey);
-                        log.info("Deleted file: {}", key);
-                    }
-                } else {
-                    ListObjectsV2Request listRequest = new ListObjectsV2Request()
-                            .withBucketName(source.bucket)
-                            .withPrefix(source.key);
-
-                    ListObjectsV2Result listing = getS3Client().listObjectsV2(listRequest);
-                    for (S3ObjectSummary summary : listing.getObjectSummaries()) {
-                        getS3Client().deleteObject(source.bucket, summary.getKey());
-                        log.info("Deleted file: {}", summary.getKey());
-                    }
-                }
-            } else {
-                Path sourceDir = Paths.get(sourcePath);
-                if (sourceKeys != null && !sourceKeys.isEmpty()) {
-                    for (String key : sourceKeys) {
-                        Files.walk(sourceDir.resolve(key))
-                                .sorted(Comparator.reverseOrder())
-                                .filter(path -> !path.equals(sourceDir))
-                                .forEach(path -> {
-                                    try {
-                                        Files.delete(path);
-                                        log.info("Deleted: {}", path);
-                                    } catch (IOException e) {
-                                        throw new RuntimeException("Failed to delete: " + path, e);
-                                    }
-                                });
-                    }
-                } else {
-                    Files.walk(sourceDir)
-                            .sorted(Comparator.reverseOrder())
-                            .filter(path -> !path.equals(sourceDir))
-                            .forEach(path -> {
-                                try {
-                                    Files.delete(path);
-                                    log.info("Deleted: {}", path);
-                                } catch (IOException e) {
-                                    throw new RuntimeException("Failed to delete: " + path, e);
-                                }
-                            });
-                }
+            LocalTransferEngine.TransferResult result = localTransferEngine.move(
+                    localTrees(sourcePath, targetPath, sourceKeys), resolveConcurrency(pipeline), progress,
+                    manifest, isVerified(pipeline));
+            log.info("Moved {} file(s)", result.filesTransferred);
+        } catch (UncheckedIOException e) {
+            log.error("Failed to move local files: {}", e.getMessage());
+            throw new RuntimeException("Failed to move local files", e);
+        }
+    }
+
+    private List<LocalTransferEngine.TreeMapping> localTrees(String sourcePath, String targetPath,
+                                                             List<String> sourceKeys) {
+        List<LocalTransferEngine.TreeMapping> trees = new ArrayList<>();
+        if (sourceKeys != null && !sourceKeys.isEmpty()) {
+            for (String key : sourceKeys) {
+                trees.add(new LocalTransferEngine.TreeMapping(
+                        Paths.get(sourcePath + key), Paths.get(targetPath + key), true));
             }
-        } catch (IOException e) {
-            log.error("Failed to delete source contents: {}", e.getMessage());
-            throw new RuntimeException("Failed to delete source contents", e);
+        } else {
+            trees.add(new LocalTransferEngine.TreeMapping(Paths.get(sourcePath), Paths.get(targetPath), false));
         }
+        return trees;
     }
 
-    private boolean isS3Path(String path) {
-        return path != null && path.startsWith("s3://");
+    /**
+     * Deletes only what the manifest says was copied, never a fresh listing of the source:
+     * files that failed to copy or arrived after the listing must stay in place. A verified
+     * pipeline also keeps files recorded without a checksum, such as those copied before
+     * verification was turned on, and reports them as not verified. Any file left in place
+     * fails the run.
+     */
+    private void deleteSource(String sourcePath, String targetPath, List<String> sourceKeys, int concurrency,
+                              boolean verify, JobExecution jobExecution) {
+        int deleted;
+        int failed;
+        List<String> errors;
+        AtomicInteger unverified = new AtomicInteger();
+        List<String> unverifiedSample = new ArrayList<>();
+        try (Stream<ManifestStore.Entry> copied = manifestStore.read(jobExecution.getId())) {
+            Iterator<String> sources = copied
+                    .filter(entry -> {
+                        if (verify && entry.checksum == null) {
+                            if (unverified.getAndIncrement() < StorageBackend.DeleteResult.MAX_ERRORS) {
+                                unverifiedSample.add(entry.source + ": not verified");
+                            }
+                            return false;
+                        }
+                        return true;
+                    })
+                    .map(entry -> entry.source).iterator();
+            if (isS3Path(sourcePath) && isS3Path(targetPath)) {
+                // The S3 copy engine records bare keys.
+                S3BatchDeleter.DeleteResult result =
+                        s3BatchDeleter.delete(parseS3Path(sourcePath).bucket, sources, concurrency);
+                deleted = result.deleted;
+                failed = result.failed;
+                errors = result.errors;
+            } else {
+                StorageBackend source = fileOperationService.backendFor(sourcePath);
+                StorageBackend.DeleteResult result = source.delete(sources, concurrency);
+                deleted = result.deleted;
+                failed = result.failed;
+                errors = result.errors;
+                if (isLocal(source)) {
+                    pruneLocalSource(sourcePath, sourceKeys);
+                }
+            }
+        }
+        if (unverified.get() > 0) {
+            log.warn("Kept {} source file(s) copied without verification", unverified.get());
+            failed += unverified.get();
+            errors = new ArrayList<>(errors);
+            errors.addAll(unverifiedSample.subList(0,
+                    Math.min(unverifiedSample.size(), StorageBackend.DeleteResult.MAX_ERRORS - errors.size())));
+        }
+        jobExecution.setFilesDeleted(deleted);
+        jobExecution.setDeleteFailures(failed);
+        transferMetrics.recordDeletes(jobExecution.getPipelineName(), deleted, failed);
+        jobExecution.setDeleteErrors(errors);
+        if (failed > 0) {
+            // A move that left files behind has not moved them; failing it lets a resume retry the deletes.
+            throw new IllegalStateException("Failed to delete " + failed + " source file(s)");
+        }
     }
 
-    private S3Location parseS3Path(String path) {
-        if (!isS3Path(path)) {
-            return null;
+    private void pruneLocalSource(String sourcePath, List<String> sourceKeys) {
+        if (sourceKeys != null && !sourceKeys.isEmpty()) {
+            for (String key : sourceKeys) {
+                localTransferEngine.pruneEmptyDirectories(Paths.get(sourcePath + key), true);
+            }
+        } else {
+            localTransferEngine.pruneEmptyDirectories(Paths.get(sourcePath), false);
         }
-        String s3Path = path.substring(5); // Remove "s3://"
-        int slashIndex = s3Path.indexOf('/');
-        return new S3Location(
-                s3Path.substring(0, slashIndex),
-                s3Path.substring(slashIndex + 1)
-        );
     }
 
-    private static class S3Location {
-        final String bucket;
-        final String key;
+    private boolean isS3Path(String path) {
+        return S3Location.isS3Path(path);
+    }
 
-        S3Location(String bucket, String key) {
-            this.bucket = bucket;
-            this.key = key;
-        }
+    private S3Location parseS3Path(String path) {
+        return S3Location.parse(path);
     }
 }
@@ -0,0 +1,158 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.service.LocalStorageBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Watches local source directories, including directories created below them later, with the
+ * platform {@link WatchService}. One thread serves every watched pipeline.
+ */
+@Component
+@Slf4j
+public class DirectoryWatchEventSource implements PipelineEventSource {
+
+    private final LocalStorageBackend localStorageBackend;
+    private final Map<WatchKey, WatchedDirectory> directories = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+
+    public DirectoryWatchEventSource(LocalStorageBackend localStorageBackend) {
+        this.localStorageBackend = localStorageBackend;
+    }
+
+    @Override
+    public boolean supports(PipelineConfig.Pipeline pipeline) {
+        return localStorageBackend.supports(pipeline.getSource().getPath());
+    }
+
+    @Override
+    public synchronized void watch(PipelineConfig.Pipeline pipeline, Sink sink) {
+        Path root = LocalStorageBackend.path(pipeline.getSource().getPath()).toAbsolutePath().normalize();
+        try {
+            if (watchService == null) {
+                watchService = root.getFileSystem().newWatchService();
+                thread = new Thread(this::run, "directory-watch");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            Files.createDirectories(root);
+            register(root, root, sink, false);
+            log.info("Watching {} for pipeline {}", root, pipeline.getPlName());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to watch " + root, e);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Failed to close directory watch: {}", e.getMessage());
+        }
+        thread.interrupt();
+        watchService = null;
+        thread = null;
+        directories.clear();
+    }
+
+    /**
+     * Registers {@code directory} and everything below it. A directory is registered before its
+     * contents are listed, so files created while a new directory is being registered are
+     * reported either by the listing or by an event.
+     */
+    private void register(Path root, Path directory, Sink sink, boolean reportFiles) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            Iterator<Path> iterator = paths.iterator();
+            while (iterator.hasNext()) {
+                Path path = iterator.next();
+                if (Files.isDirectory(path)) {
+                    WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    directories.put(key, new WatchedDirectory(root, path, sink));
+                } else if (reportFiles && Files.isRegularFile(path)) {
+                    sink.fileChanged(relativePath(root, path));
+                }
+            }
+        }
+    }
+
+    private void run() {
+        WatchService service = watchService;
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            WatchedDirectory directory = directories.get(key);
+            if (directory != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handle(directory, event);
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+        }
+    }
+
+    private void handle(WatchedDirectory directory, WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            log.warn("Directory watch overflowed for {}, rescanning", directory.root);
+            directory.sink.rescan();
+            return;
+        }
+        Path path = directory.path.resolve((Path) event.context());
+        String relativePath = relativePath(directory.root, path);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            directory.sink.fileRemoved(relativePath);
+        } else if (!Files.isDirectory(path)) {
+            directory.sink.fileChanged(relativePath);
+        } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            try {
+                register(directory.root, path, directory.sink, true);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to watch new directory {}, rescanning: {}", path, e.getMessage());
+                directory.sink.rescan();
+            }
+        }
+    }
+
+    private static String relativePath(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static class WatchedDirectory {
+        final Path root;
+        final Path path;
+        final Sink sink;
+
+        WatchedDirectory(Path root, Path path, Sink sink) {
+            this.root = root;
+            this.path = path;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.tapestry.dataintegration;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * A source or target path with variables, parsed once when the pipeline is loaded:
+ * {@code {date_folder}} (the slot as yyyyMMdd), {@code {year}}, {@code {month}}, {@code {day}},
+ * {@code {hour}}, {@code {minute}}, {@code {pipeline}} and {@code {date:<pattern>}} with any
+ * {@link DateTimeFormatter} pattern.
+ */
+public final class PathTemplate {
+
+    private static final DateTimeFormatter DATE_FOLDER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final String template;
+    /** Literal text and variables, each rendering its part for a slot and pipeline name. */
+    private final List<BiFunction<LocalDateTime, String, String>> parts;
+
+    private PathTemplate(String template, List<BiFunction<LocalDateTime, String, String>> parts) {
+        this.template = template;
+        this.parts = parts;
+    }
+
+    /**
+     * @throws IllegalArgumentException for an unknown variable or an unclosed brace
+     */
+    public static PathTemplate compile(String template) {
+        List<BiFunction<LocalDateTime, String, String>> parts = new ArrayList<>();
+        int position = 0;
+        while (position < template.length()) {
+            int open = template.indexOf('{', position);
+            if (open < 0) {
+                parts.add(literal(template.substring(position)));
+                break;
+            }
+            if (open > position) {
+                parts.add(literal(template.substring(position, open)));
+            }
+            int close = template.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed variable in path " + template);
+            }
+            parts.add(variable(template.substring(open + 1, close), template));
+            position = close + 1;
+        }
+        return new PathTemplate(template, List.copyOf(parts));
+    }
+
+    private static BiFunction<LocalDateTime, String, String> literal(String text) {
+        return (slot, pipeline) -> text;
+    }
+
+    private static BiFunction<LocalDateTime, String, String> variable(String name, String template) {
+        switch (name) {
+            case "date_folder":
+                return (slot, pipeline) -> slot.format(DATE_FOLDER);
+            case "year":
+                return date("yyyy");
+            case "month":
+                return date("MM");
+            case "day":
+                return date("dd");
+            case "hour":
+                return date("HH");
+            case "minute":
+                return date("mm");
+            case "pipeline":
+                return (slot, pipeline) -> pipeline;
+            default:
+                if (name.startsWith("date:")) {
+                    try {
+                        return date(name.substring("date:".length()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Invalid date pattern '" + name + "' in path " + template, e);
+                    }
+                }
+                throw new IllegalArgumentException("Unknown variable {" + name + "} in path " + template);
+        }
+    }
+
+    private static BiFunction<LocalDateTime, String, String> date(String pattern) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+        return (slot, pipeline) -> slot.format(formatter);
+    }
+
+    public String render(LocalDateTime slot, String pipelineName) {
+        if (parts.size() == 1) {
+            return parts.get(0).apply(slot, pipelineName);
+        }
+        StringBuilder path = new StringBuilder(template.length() + 16);
+        for (BiFunction<LocalDateTime, String, String> part : parts) {
+            path.append(part.apply(slot, pipelineName));
+        }
+        return path.toString();
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -0,0 +1,139 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.config.PipelineTriggerState;
+import com.tapestry.dataintegration.service.JobExecutionRepository;
+import com.tapestry.dataintegration.service.PipelineTriggerStateRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Releases pipelines that depend on others. A downstream pipeline is released as soon as every
+ * one of its upstream pipelines has succeeded since its last release. Readiness is read from
+ * the persisted job executions, so upstream successes survive a restart or a change of leader,
+ * and the downstream's release mark moves with a conditional update, so exactly one node
+ * releases each run. Independent branches are released independently, so they run in parallel.
+ *
+ * <p>A downstream run covers the union of the keys its upstream runs produced, or its whole
+ * source when an upstream could not name its keys, for example because it produced more than
+ * {@link PipelineEventTrigger#MAX_BATCH_FILES} files or writes somewhere else.
+ */
+@Slf4j
+public class PipelineDependencies {
+
+    private static final String SUCCESS = "SUCCESS";
+
+    public interface ReleaseHandler {
+        /**
+         * @param slot the latest slot of the upstream runs, which the downstream run takes on
+         * @param keys keys relative to the downstream source, or {@code null} for the whole source
+         */
+        void release(PipelineConfig.Pipeline pipeline, ZonedDateTime slot, List<String> keys);
+    }
+
+    public interface KeyResolver {
+        /**
+         * @return the keys the upstream run produced relative to the downstream source, or
+         * {@code null} when unknown
+         */
+        List<String> producedKeys(JobExecution upstream, PipelinePlan downstream, ZonedDateTime slot);
+    }
+
+    private final JobExecutionRepository jobExecutionRepository;
+    private final PipelineTriggerStateRepository triggerStateRepository;
+    private final Clock clock;
+    private final KeyResolver keyResolver;
+    private final ReleaseHandler handler;
+
+    public PipelineDependencies(JobExecutionRepository jobExecutionRepository,
+                                PipelineTriggerStateRepository triggerStateRepository, Clock clock,
+                                KeyResolver keyResolver, ReleaseHandler handler) {
+        this.jobExecutionRepository = jobExecutionRepository;
+        this.triggerStateRepository = triggerStateRepository;
+        this.clock = clock;
+        this.keyResolver = keyResolver;
+        this.handler = handler;
+    }
+
+    /**
+     * Starts counting upstream successes for a downstream pipeline, unless they are already
+     * counted from an earlier point.
+     */
+    public void watch(PipelinePlan downstream) {
+        triggerStateRepository.watchUpstream(downstream.getName(), LocalDateTime.now(clock));
+    }
+
+    /**
+     * Drops the upstream successes counted for a pipeline, for example when its dependencies change.
+     */
+    public void forget(String downstream) {
+        triggerStateRepository.resetReleases(downstream, LocalDateTime.now(clock));
+    }
+
+    /**
+     * Releases the downstream pipeline if all its upstream pipelines have succeeded since its
+     * last release.
+     *
+     * @return whether this call released it
+     */
+    public boolean check(PipelinePlan downstream) {
+        LocalDateTime releasedThrough = triggerStateRepository.findById(downstream.getName())
+                .map(PipelineTriggerState::getReleasedThrough)
+                .orElse(null);
+        if (releasedThrough == null) {
+            return false;
+        }
+        List<JobExecution> runs = new ArrayList<>();
+        List<String> waiting = new ArrayList<>();
+        for (String upstream : downstream.getDependsOn()) {
+            List<JobExecution> succeeded = jobExecutionRepository
+                    .findByPipelineNameAndStatusAndParentIdIsNullAndEndTimeGreaterThanOrderByEndTimeAsc(
+                            upstream, SUCCESS, releasedThrough);
+            if (succeeded.isEmpty()) {
+                waiting.add(upstream);
+            }
+            runs.addAll(succeeded);
+        }
+        if (!waiting.isEmpty()) {
+            log.info("Pipeline {} still waits for {}", downstream.getName(), waiting);
+            return false;
+        }
+        LocalDateTime through = runs.stream().map(JobExecution::getEndTime).max(Comparator.naturalOrder())
+                .orElseThrow();
+        if (triggerStateRepository.release(downstream.getName(), releasedThrough, through) == 0) {
+            // Another node released it first.
+            return false;
+        }
+        ZonedDateTime slot = runs.stream()
+                .map(run -> run.getSlot() != null ? run.getSlot() : run.getStartTime())
+                .max(Comparator.naturalOrder())
+                .orElseThrow()
+                .atZone(clock.getZone());
+        Set<String> keys = new LinkedHashSet<>();
+        for (JobExecution run : runs) {
+            List<String> produced = keyResolver.producedKeys(run, downstream, slot);
+            if (produced == null) {
+                keys = null;
+                break;
+            }
+            keys.addAll(produced);
+            if (keys.size() > PipelineEventTrigger.MAX_BATCH_FILES) {
+                keys = null;
+                break;
+            }
+        }
+        log.info("Releasing pipeline {} after {} run(s) of {} with {} key(s)", downstream.getName(), runs.size(),
+                downstream.getDependsOn(), keys == null ? "all" : keys.size());
+        handler.release(downstream.getPipeline(), slot, keys == null ? null : new ArrayList<>(keys));
+        return true;
+    }
+}
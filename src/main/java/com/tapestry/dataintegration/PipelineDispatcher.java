@@ -0,0 +1,227 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.service.JobProgress;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hands pipeline runs to a shared worker pool, whose size is the global cap on concurrent runs,
+ * so a slow pipeline no longer delays the others. When a run is due while earlier runs of the
+ * same pipeline are still going, the pipeline's overlap policy decides: {@code skip} drops the
+ * new run, {@code queue} starts it when the previous one finishes, and {@code concurrent} runs
+ * up to {@code max_concurrent_runs} at once, queueing beyond that.
+ */
+@Slf4j
+public class PipelineDispatcher {
+
+    public static final String SKIP = "skip";
+    public static final String QUEUE = "queue";
+    public static final String CONCURRENT = "concurrent";
+
+    static final int MAX_QUEUED_RUNS = 100;
+
+    public interface Runner {
+        void run(PipelineConfig.Pipeline pipeline, ZonedDateTime slot, JobProgress progress);
+    }
+
+    private final Executor pipelineExecutor;
+    private final Clock clock;
+    private final String defaultOverlapPolicy;
+    private final Runner runner;
+    private final Map<String, PipelineState> states = new ConcurrentHashMap<>();
+
+    public PipelineDispatcher(Executor pipelineExecutor, Clock clock, String defaultOverlapPolicy, Runner runner) {
+        if (!isOverlapPolicy(defaultOverlapPolicy)) {
+            throw new IllegalArgumentException("Unknown default overlap policy '" + defaultOverlapPolicy + "'");
+        }
+        this.pipelineExecutor = pipelineExecutor;
+        this.clock = clock;
+        this.defaultOverlapPolicy = defaultOverlapPolicy;
+        this.runner = runner;
+    }
+
+    /**
+     * @return whether the run was started or queued, as opposed to skipped
+     */
+    public boolean dispatch(PipelineConfig.Pipeline pipeline, ZonedDateTime slot, JobProgress progress) {
+        PipelineState state = states.computeIfAbsent(pipeline.getPlName(), name -> new PipelineState());
+        String policy = overlapPolicy(pipeline);
+        int limit = CONCURRENT.equals(policy) && pipeline.getMaxConcurrentRuns() != null
+                ? Math.max(1, pipeline.getMaxConcurrentRuns()) : 1;
+
+        synchronized (state) {
+            if (state.active < limit) {
+                state.active++;
+                submit(new QueuedRun(pipeline, slot, progress), state);
+                return true;
+            }
+            if (SKIP.equals(policy)) {
+                state.skippedRuns++;
+                log.warn("Skipping pipeline {} for slot {}: previous run still in progress",
+                        pipeline.getPlName(), slot);
+                progress.finished(JobProgress.SKIPPED, null, "Previous run still in progress");
+                return false;
+            }
+            if (state.queued.size() >= MAX_QUEUED_RUNS) {
+                state.skippedRuns++;
+                log.warn("Dropping pipeline {} for slot {}: {} runs already queued", pipeline.getPlName(), slot,
+                        MAX_QUEUED_RUNS);
+                progress.finished(JobProgress.SKIPPED, null, MAX_QUEUED_RUNS + " runs already queued");
+                return false;
+            }
+            state.queued.addLast(new QueuedRun(pipeline, slot, progress));
+            state.pendingSlots.add(slot);
+            log.info("Queued pipeline {} for slot {} behind {} running", pipeline.getPlName(), slot, state.active);
+            return true;
+        }
+    }
+
+    private void submit(QueuedRun run, PipelineState state) {
+        state.pendingSlots.add(run.slot);
+        try {
+            pipelineExecutor.execute(() -> execute(run, state));
+        } catch (RejectedExecutionException e) {
+            state.active--;
+            state.pendingSlots.remove(run.slot);
+            run.progress.finished(JobProgress.SKIPPED, null, "Pipeline executor is shut down");
+            throw e;
+        }
+    }
+
+    private void execute(QueuedRun run, PipelineState state) {
+        PipelineConfig.Pipeline pipeline = run.pipeline;
+        ZonedDateTime slot = run.slot;
+        synchronized (state) {
+            state.pendingSlots.remove(slot);
+            state.running++;
+            state.lastLag = Duration.between(slot, ZonedDateTime.now(clock));
+            state.lastSlot = slot;
+        }
+        try {
+            runner.run(pipeline, slot, run.progress);
+        } catch (RuntimeException e) {
+            log.error("Pipeline {} failed for slot {}: {}", pipeline.getPlName(), slot, e.getMessage());
+            // Failing before its job execution was saved, the run would otherwise stay queued forever.
+            if (!run.progress.isFinished()) {
+                run.progress.finished("FAILED", null, e.getMessage());
+            }
+        }
+        if (run.progress.isDetached()) {
+            // The run goes on elsewhere and holds its slot until it finishes.
+            run.progress.whenFinished(() -> release(run, state));
+        } else {
+            release(run, state);
+        }
+    }
+
+    private void release(QueuedRun run, PipelineState state) {
+        synchronized (state) {
+            state.running--;
+            QueuedRun next = state.queued.pollFirst();
+            if (next != null) {
+                // The freed slot passes straight to the next queued run.
+                state.pendingSlots.remove(next.slot);
+                try {
+                    submit(next, state);
+                } catch (RejectedExecutionException e) {
+                    log.warn("Dropping queued run of pipeline {} for slot {}: executor is shut down",
+                            run.pipeline.getPlName(), next.slot);
+                }
+            } else {
+                state.active--;
+            }
+        }
+    }
+
+    private String overlapPolicy(PipelineConfig.Pipeline pipeline) {
+        String policy = pipeline.getOverlapPolicy() != null ? pipeline.getOverlapPolicy() : defaultOverlapPolicy;
+        if (!isOverlapPolicy(policy)) {
+            throw new IllegalArgumentException("Unknown overlap policy '" + policy + "' for pipeline "
+                    + pipeline.getPlName());
+        }
+        return policy;
+    }
+
+    static boolean isOverlapPolicy(String policy) {
+        return SKIP.equals(policy) || QUEUE.equals(policy) || CONCURRENT.equals(policy);
+    }
+
+    public List<PipelineStatus> statuses() {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        List<PipelineStatus> statuses = new ArrayList<>();
+        states.forEach((name, state) -> statuses.add(status(name, state, now)));
+        statuses.sort((a, b) -> a.getPipelineName().compareTo(b.getPipelineName()));
+        return statuses;
+    }
+
+    /**
+     * @return the status of one pipeline, all zero if it has never been dispatched
+     */
+    public PipelineStatus status(String pipelineName) {
+        PipelineState state = states.get(pipelineName);
+        return state == null ? new PipelineStatus(pipelineName, 0, 0, 0, null, null, 0)
+                : status(pipelineName, state, ZonedDateTime.now(clock));
+    }
+
+    private static PipelineStatus status(String name, PipelineState state, ZonedDateTime now) {
+        synchronized (state) {
+            Duration currentLag = state.pendingSlots.isEmpty()
+                    ? Duration.ZERO : Duration.between(state.pendingSlots.peek(), now);
+            return new PipelineStatus(name, state.running, state.active - state.running + state.queued.size(),
+                    state.skippedRuns, state.lastSlot, state.lastLag == null ? null : state.lastLag.toMillis(),
+                    currentLag.toMillis());
+        }
+    }
+
+    private static class PipelineState {
+        /** Runs holding a slot: submitted to the pool, whether or not they have started yet. */
+        int active;
+        int running;
+        long skippedRuns;
+        Duration lastLag;
+        ZonedDateTime lastSlot;
+        final Deque<QueuedRun> queued = new ArrayDeque<>();
+        final PriorityQueue<ZonedDateTime> pendingSlots = new PriorityQueue<>();
+    }
+
+    private static class QueuedRun {
+        final PipelineConfig.Pipeline pipeline;
+        final ZonedDateTime slot;
+        final JobProgress progress;
+
+        QueuedRun(PipelineConfig.Pipeline pipeline, ZonedDateTime slot, JobProgress progress) {
+            this.pipeline = pipeline;
+            this.slot = slot;
+            this.progress = progress;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class PipelineStatus {
+        private String pipelineName;
+        private int running;
+        private int waiting;
+        private long skippedRuns;
+        private ZonedDateTime lastSlot;
+        /** How late the most recent run started relative to its slot. */
+        private Long lastStartLagMillis;
+        /** Age of the oldest run that is due but has not started; zero when nothing waits. */
+        private long currentLagMillis;
+    }
+}
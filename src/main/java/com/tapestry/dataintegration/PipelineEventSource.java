@@ -0,0 +1,32 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+
+/**
+ * Delivers file arrivals for pipelines with {@code trigger: watch}. The scheduler picks the
+ * first source that supports a pipeline's source location, so another notification channel,
+ * such as a queue fed by S3 event notifications, only has to be registered as a bean.
+ */
+public interface PipelineEventSource {
+
+    boolean supports(PipelineConfig.Pipeline pipeline);
+
+    /**
+     * Starts delivering events for the pipeline's source location to {@code sink}. Paths are
+     * relative to the source location and use {@code /} as separator.
+     */
+    void watch(PipelineConfig.Pipeline pipeline, Sink sink);
+
+    void stop();
+
+    interface Sink {
+        void fileChanged(String relativePath);
+
+        void fileRemoved(String relativePath);
+
+        /**
+         * Events were lost, so the next run has to process the whole source.
+         */
+        void rescan();
+    }
+}
@@ -0,0 +1,290 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Turns file events into batched runs for pipelines with {@code trigger: watch}. Events for a
+ * pipeline are collected until its source has been quiet for the debounce period, or for at
+ * most the max delay under a steady stream of arrivals, so a burst of files becomes one run
+ * over just those files. A batch the dispatcher refuses, for example because the previous run
+ * is still going, is kept and retried after the next quiet period.
+ */
+@Slf4j
+public class PipelineEventTrigger {
+
+    public static final String CRON = "cron";
+    public static final String WATCH = "watch";
+
+    /**
+     * Past this many pending files one scan of the whole source is cheaper than a key per file.
+     */
+    static final int MAX_BATCH_FILES = 10_000;
+
+    public interface BatchHandler {
+        /**
+         * @param files the changed files, or {@code null} when the whole source must be processed
+         * @return whether the run was started or queued
+         */
+        boolean fire(PipelineConfig.Pipeline pipeline, List<String> files);
+    }
+
+    private final Clock clock;
+    private final Duration defaultDebounce;
+    private final Duration maxDelay;
+    private final BatchHandler handler;
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private volatile boolean running;
+    private Thread thread;
+
+    public PipelineEventTrigger(Clock clock, Duration defaultDebounce, Duration maxDelay, BatchHandler handler) {
+        this.clock = clock;
+        this.defaultDebounce = defaultDebounce;
+        this.maxDelay = maxDelay;
+        this.handler = handler;
+    }
+
+    /**
+     * @return whether the pipeline runs on file events, in addition to any cron schedule
+     */
+    public static boolean isWatched(PipelineConfig.Pipeline pipeline) {
+        String trigger = pipeline.getTrigger();
+        if (trigger == null || CRON.equals(trigger)) {
+            return false;
+        }
+        if (WATCH.equals(trigger)) {
+            return true;
+        }
+        throw new IllegalArgumentException("Unknown trigger '" + trigger + "' for pipeline " + pipeline.getPlName());
+    }
+
+    /**
+     * @return the sink the pipeline's event source reports to
+     */
+    public PipelineEventSource.Sink register(PipelineConfig.Pipeline pipeline) {
+        String sourcePath = pipeline.getSource().getPath();
+        if (sourcePath.contains("{")) {
+            throw new IllegalArgumentException("Pipeline " + pipeline.getPlName()
+                    + " cannot watch a templated source path: " + sourcePath);
+        }
+        Duration debounce = pipeline.getDebounce() != null ? pipeline.getDebounce() : defaultDebounce;
+        Batch batch = new Batch(pipeline, debounce);
+        batches.put(pipeline.getPlName(), batch);
+        log.info("Watching pipeline {} with a {} debounce", pipeline.getPlName(), debounce);
+        return new PipelineEventSource.Sink() {
+            @Override
+            public void fileChanged(String relativePath) {
+                record(batch, b -> {
+                    if (!b.rescan && b.files.add(relativePath) && b.files.size() > MAX_BATCH_FILES) {
+                        b.rescan = true;
+                        b.files.clear();
+                    }
+                });
+            }
+
+            @Override
+            public void fileRemoved(String relativePath) {
+                record(batch, b -> b.files.remove(relativePath));
+            }
+
+            @Override
+            public void rescan() {
+                record(batch, b -> {
+                    b.rescan = true;
+                    b.files.clear();
+                });
+            }
+        };
+    }
+
+    /**
+     * Drops the pipeline's pending events; its sink keeps accepting events but they no longer
+     * trigger runs.
+     */
+    public void unregister(String pipelineName) {
+        lock.lock();
+        try {
+            if (batches.remove(pipelineName) != null) {
+                log.info("Stopped watching pipeline {}", pipelineName);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(Batch batch, Consumer<Batch> change) {
+        lock.lock();
+        try {
+            change.accept(batch);
+            if (batch.isEmpty()) {
+                batch.firstEvent = null;
+                return;
+            }
+            Instant now = clock.instant();
+            if (batch.firstEvent == null) {
+                batch.firstEvent = now;
+            }
+            batch.lastEvent = now;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "pipeline-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                fireDue();
+                awaitNextDue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Pipeline event trigger failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Hands every settled batch to the handler, outside the lock so events keep arriving.
+     */
+    void fireDue() {
+        List<Firing> firings = new ArrayList<>();
+        lock.lock();
+        try {
+            Instant now = clock.instant();
+            for (Batch batch : batches.values()) {
+                Instant due = batch.dueAt(maxDelay);
+                if (due != null && !due.isAfter(now)) {
+                    firings.add(new Firing(batch, batch.rescan ? null : new ArrayList<>(batch.files)));
+                    batch.clear();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Firing firing : firings) {
+            String pipelineName = firing.batch.pipeline.getPlName();
+            boolean accepted = false;
+            try {
+                accepted = handler.fire(firing.batch.pipeline, firing.files);
+            } catch (RuntimeException e) {
+                log.error("Pipeline {} failed to start for {} file event(s): {}", pipelineName,
+                        firing.files == null ? "all" : firing.files.size(), e.getMessage());
+            }
+            if (!accepted) {
+                record(firing.batch, b -> {
+                    if (firing.files == null) {
+                        b.rescan = true;
+                        b.files.clear();
+                    } else if (!b.rescan) {
+                        b.files.addAll(firing.files);
+                    }
+                });
+            }
+        }
+    }
+
+    private void awaitNextDue() throws InterruptedException {
+        lock.lock();
+        try {
+            Instant next = null;
+            for (Batch batch : batches.values()) {
+                Instant due = batch.dueAt(maxDelay);
+                if (due != null && (next == null || due.isBefore(next))) {
+                    next = due;
+                }
+            }
+            if (next == null) {
+                changed.await();
+                return;
+            }
+            long nanos = Duration.between(clock.instant(), next).toNanos();
+            if (nanos > 0) {
+                changed.await(nanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Batch {
+        final PipelineConfig.Pipeline pipeline;
+        final Duration debounce;
+        final Set<String> files = new LinkedHashSet<>();
+        boolean rescan;
+        Instant firstEvent;
+        Instant lastEvent;
+
+        Batch(PipelineConfig.Pipeline pipeline, Duration debounce) {
+            this.pipeline = pipeline;
+            this.debounce = debounce;
+        }
+
+        boolean isEmpty() {
+            return !rescan && files.isEmpty();
+        }
+
+        Instant dueAt(Duration maxDelay) {
+            if (firstEvent == null) {
+                return null;
+            }
+            Instant quiet = lastEvent.plus(debounce);
+            Instant deadline = firstEvent.plus(maxDelay);
+            return quiet.isBefore(deadline) ? quiet : deadline;
+        }
+
+        void clear() {
+            files.clear();
+            rescan = false;
+            firstEvent = null;
+            lastEvent = null;
+        }
+    }
+
+    private static class Firing {
+        final Batch batch;
+        final List<String> files;
+
+        Firing(Batch batch, List<String> files) {
+            this.batch = batch;
+            this.files = files;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import org.springframework.beans.BeanUtils;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.util.List;
+
+/**
+ * A pipeline as the scheduler runs it, compiled once when the configuration is loaded: the
+ * cron expression parsed, the paths turned into templates and the trigger validated. Plans are
+ * never changed; a reload replaces them.
+ */
+public final class PipelinePlan {
+
+    private final PipelineConfig.Pipeline pipeline;
+    private final CronExpression cron;
+    private final PathTemplate source;
+    private final PathTemplate target;
+    private final boolean watched;
+
+    private PipelinePlan(PipelineConfig.Pipeline pipeline, CronExpression cron, PathTemplate source,
+                         PathTemplate target, boolean watched) {
+        this.pipeline = pipeline;
+        this.cron = cron;
+        this.source = source;
+        this.target = target;
+        this.watched = watched;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the pipeline is incomplete, an incremental move, or has
+     *                                  an invalid schedule, overlap policy, path template or trigger
+     */
+    public static PipelinePlan compile(PipelineConfig.Pipeline pipeline) {
+        String name = pipeline.getPlName();
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Pipeline without pl_name");
+        }
+        if (pipeline.getSource() == null || pipeline.getSource().getPath() == null
+                || pipeline.getTarget() == null || pipeline.getTarget().getPath() == null) {
+            throw new IllegalArgumentException("Pipeline " + name + " needs a source and a target path");
+        }
+        if (Boolean.TRUE.equals(pipeline.getIncremental()) && "move".equals(pipeline.getOperation())) {
+            // Files skipped as unchanged are never recorded as copied, so a move would never delete them.
+            throw new IllegalArgumentException("Pipeline " + name + " cannot be incremental, only copies are");
+        }
+        if (pipeline.getOverlapPolicy() != null && !PipelineDispatcher.isOverlapPolicy(pipeline.getOverlapPolicy())) {
+            throw new IllegalArgumentException("Unknown overlap policy '" + pipeline.getOverlapPolicy()
+                    + "' for pipeline " + name);
+        }
+        // The plan keeps its own copy, so later changes to the bound configuration cannot reach it.
+        PipelineConfig.Pipeline copy = new PipelineConfig.Pipeline();
+        BeanUtils.copyProperties(pipeline, copy);
+        copy.setSource(new PipelineConfig.Source());
+        copy.getSource().setPath(pipeline.getSource().getPath());
+        copy.setTarget(new PipelineConfig.Target());
+        copy.getTarget().setPath(pipeline.getTarget().getPath());
+        copy.setSourceKeys(pipeline.getSourceKeys() == null ? null : List.copyOf(pipeline.getSourceKeys()));
+        copy.setDependsOn(pipeline.getDependsOn() == null ? null : List.copyOf(pipeline.getDependsOn()));
+        CronExpression cron;
+        try {
+            cron = pipeline.getSchedule() == null ? null : CronExpression.parse("0 " + pipeline.getSchedule());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid schedule '" + pipeline.getSchedule() + "' for pipeline "
+                    + name + ": " + e.getMessage(), e);
+        }
+        return new PipelinePlan(copy, cron, PathTemplate.compile(pipeline.getSource().getPath()),
+                PathTemplate.compile(pipeline.getTarget().getPath()), PipelineEventTrigger.isWatched(pipeline));
+    }
+
+    public PipelineConfig.Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public String getName() {
+        return pipeline.getPlName();
+    }
+
+    /**
+     * @return the parsed schedule, or {@code null} for a pipeline that only runs on events or request
+     */
+    public CronExpression getCron() {
+        return cron;
+    }
+
+    /**
+     * @return the pipelines this one runs after, empty for a pipeline that runs on its own
+     */
+    public List<String> getDependsOn() {
+        return pipeline.getDependsOn() == null ? List.of() : pipeline.getDependsOn();
+    }
+
+    public PathTemplate getSource() {
+        return source;
+    }
+
+    public PathTemplate getTarget() {
+        return target;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+}
@@ -0,0 +1,249 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.config.SchedulerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The compiled plans of all pipelines, indexed by name. Pipelines come from
+ * {@code scheduler.pipeline-file} when set, otherwise from {@code application.yml}. While the
+ * file can be read from disk it is checked for changes every
+ * {@code scheduler.pipeline-reload-interval}, and a changed file replaces all plans in one
+ * step. Runs already going keep the pipeline they started with. A file that does not compile
+ * is logged and ignored, so the plans in use are always valid.
+ */
+@Component
+@Slf4j
+public class PipelinePlans {
+
+    public interface ReloadListener {
+        void reloaded(Map<String, PipelinePlan> previous, Map<String, PipelinePlan> current);
+    }
+
+    private final SchedulerProperties schedulerProperties;
+    private final Path file;
+    private volatile Snapshot snapshot;
+    private FileTime lastModified;
+    private ReloadListener listener;
+    private Thread thread;
+
+    public PipelinePlans(PipelineConfig pipelineConfig, SchedulerProperties schedulerProperties) {
+        this.schedulerProperties = schedulerProperties;
+        this.file = configFile(schedulerProperties);
+        this.lastModified = file == null ? null : modifiedTime(file);
+        this.snapshot = compile(schedulerProperties.getPipelineFile() != null ? load(file)
+                : pipelineConfig.getPipelines());
+    }
+
+    private static Path configFile(SchedulerProperties schedulerProperties) {
+        if (schedulerProperties.getPipelineFile() != null) {
+            return Paths.get(schedulerProperties.getPipelineFile());
+        }
+        for (Path candidate : List.of(Paths.get("config", "application.yml"), Paths.get("application.yml"))) {
+            if (Files.isRegularFile(candidate)) {
+                return candidate;
+            }
+        }
+        ClassPathResource resource = new ClassPathResource("application.yml");
+        try {
+            return resource.isFile() ? resource.getFile().toPath() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public Collection<PipelinePlan> all() {
+        return snapshot.byName.values();
+    }
+
+    public Optional<PipelinePlan> find(String name) {
+        return Optional.ofNullable(snapshot.byName.get(name));
+    }
+
+    /**
+     * @return the plans that depend on the pipeline, in configuration order
+     */
+    public List<PipelinePlan> downstreamOf(String name) {
+        return snapshot.downstream.getOrDefault(name, List.of());
+    }
+
+    /**
+     * @return the plan of a pipeline handed out by this registry, or a plan compiled on the spot
+     * for other pipelines, such as the copy a watch batch runs
+     */
+    public PipelinePlan planFor(PipelineConfig.Pipeline pipeline) {
+        PipelinePlan plan = snapshot.byPipeline.get(pipeline);
+        return plan != null ? plan : PipelinePlan.compile(pipeline);
+    }
+
+    public synchronized void start(ReloadListener listener) {
+        this.listener = listener;
+        Duration interval = schedulerProperties.getPipelineReloadInterval();
+        if (file == null || thread != null || interval == null || interval.isZero() || interval.isNegative()) {
+            return;
+        }
+        log.info("Reloading pipelines when {} changes", file.toAbsolutePath());
+        thread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(interval.toMillis());
+                    reloadIfModified();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("Pipeline reload failed: {}", e.getMessage());
+                }
+            }
+        }, "pipeline-reload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    void reloadIfModified() {
+        FileTime modified = modifiedTime(file);
+        if (modified != null && !modified.equals(lastModified)) {
+            lastModified = modified;
+            reload();
+        }
+    }
+
+    /**
+     * @return whether the pipelines changed
+     */
+    synchronized boolean reload() {
+        Snapshot next;
+        try {
+            next = compile(load(file));
+        } catch (RuntimeException e) {
+            log.error("Keeping the current pipelines, {} is invalid: {}", file, e.getMessage());
+            return false;
+        }
+        Snapshot previous = snapshot;
+        if (pipelines(previous).equals(pipelines(next))) {
+            return false;
+        }
+        snapshot = next;
+        log.info("Reloaded {} pipeline(s) from {}", next.byName.size(), file);
+        if (listener != null) {
+            listener.reloaded(previous.byName, next.byName);
+        }
+        return true;
+    }
+
+    private static Map<String, PipelineConfig.Pipeline> pipelines(Snapshot snapshot) {
+        return snapshot.byName.values().stream()
+                .collect(Collectors.toMap(PipelinePlan::getName, PipelinePlan::getPipeline));
+    }
+
+    private static List<PipelineConfig.Pipeline> load(Path file) {
+        try {
+            List<PropertySource<?>> sources = new YamlPropertySourceLoader().load(file.toString(),
+                    new FileSystemResource(file));
+            return new Binder(ConfigurationPropertySources.from(sources))
+                    .bind("pipelines", Bindable.listOf(PipelineConfig.Pipeline.class))
+                    .orElse(List.of());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read pipelines from " + file, e);
+        }
+    }
+
+    private static Snapshot compile(List<PipelineConfig.Pipeline> pipelines) {
+        Map<String, PipelinePlan> byName = new LinkedHashMap<>();
+        Map<PipelineConfig.Pipeline, PipelinePlan> byPipeline = new IdentityHashMap<>();
+        for (PipelineConfig.Pipeline pipeline : pipelines == null ? List.<PipelineConfig.Pipeline>of() : pipelines) {
+            PipelinePlan plan = PipelinePlan.compile(pipeline);
+            if (byName.put(plan.getName(), plan) != null) {
+                throw new IllegalArgumentException("Duplicate pipeline " + plan.getName());
+            }
+            byPipeline.put(plan.getPipeline(), plan);
+        }
+        Map<String, List<PipelinePlan>> downstream = new HashMap<>();
+        for (PipelinePlan plan : byName.values()) {
+            for (String upstream : plan.getDependsOn()) {
+                if (!byName.containsKey(upstream)) {
+                    throw new IllegalArgumentException("Pipeline " + plan.getName() + " depends on unknown pipeline "
+                            + upstream);
+                }
+                downstream.computeIfAbsent(upstream, name -> new ArrayList<>()).add(plan);
+            }
+        }
+        Set<String> done = new HashSet<>();
+        for (String name : byName.keySet()) {
+            checkAcyclic(name, byName, new LinkedHashSet<>(), done);
+        }
+        return new Snapshot(Collections.unmodifiableMap(byName), byPipeline, downstream);
+    }
+
+    private static void checkAcyclic(String name, Map<String, PipelinePlan> byName, Set<String> path,
+                                     Set<String> done) {
+        if (done.contains(name)) {
+            return;
+        }
+        if (!path.add(name)) {
+            throw new IllegalArgumentException("Pipelines depend on each other in a cycle: "
+                    + String.join(" -> ", path) + " -> " + name);
+        }
+        for (String upstream : byName.get(name).getDependsOn()) {
+            checkAcyclic(upstream, byName, path, done);
+        }
+        path.remove(name);
+        done.add(name);
+    }
+
+    private static FileTime modifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class Snapshot {
+        final Map<String, PipelinePlan> byName;
+        final Map<PipelineConfig.Pipeline, PipelinePlan> byPipeline;
+        final Map<String, List<PipelinePlan>> downstream;
+
+        Snapshot(Map<String, PipelinePlan> byName, Map<PipelineConfig.Pipeline, PipelinePlan> byPipeline,
+                 Map<String, List<PipelinePlan>> downstream) {
+            this.byName = byName;
+            this.byPipeline = byPipeline;
+            this.downstream = downstream;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fires pipelines at their cron slots. Each cron expression is parsed once, and the pipelines
+ * sit in a heap ordered by next fire time, so the trigger thread sleeps exactly until the
+ * earliest slot and only ever looks at pipelines that are due.
+ *
+ * <p>Every slot is considered exactly once. Slots that are found more than the misfire
+ * threshold late, for example because the trigger thread was busy, are handled by the
+ * pipeline's misfire policy: {@code fire_once} runs the latest missed slot only,
+ * {@code fire_all} catches up on the last {@value #MAX_CATCH_UP_SLOTS} missed slots in order
+ * and {@code skip} drops them. All due slots of a pipeline are handled at once, however many.
+ * A pipeline scheduled with the last slot it fired before a restart continues after that slot,
+ * so the slots missed while it was down count as misfired too.
+ */
+@Slf4j
+public class PipelineTriggerQueue {
+
+    public static final String FIRE_ONCE = "fire_once";
+    public static final String FIRE_ALL = "fire_all";
+    public static final String SKIP = "skip";
+
+    private static final int MAX_CATCH_UP_SLOTS = 1000;
+
+    public interface FireHandler {
+        void fire(PipelineConfig.Pipeline pipeline, ZonedDateTime slot);
+    }
+
+    private final Clock clock;
+    private final Duration misfireThreshold;
+    private final String defaultMisfirePolicy;
+    private final FireHandler handler;
+
+    private final PriorityQueue<Trigger> queue = new PriorityQueue<>(Comparator.comparing(t -> t.nextFire));
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private volatile boolean running;
+    private Thread thread;
+
+    public PipelineTriggerQueue(Clock clock, Duration misfireThreshold, String defaultMisfirePolicy,
+                                FireHandler handler) {
+        this.clock = clock;
+        this.misfireThreshold = misfireThreshold;
+        this.defaultMisfirePolicy = defaultMisfirePolicy;
+        this.handler = handler;
+    }
+
+    public void schedule(PipelineConfig.Pipeline pipeline) {
+        schedule(pipeline, CronExpression.parse("0 " + pipeline.getSchedule()));
+    }
+
+    public void schedule(PipelineConfig.Pipeline pipeline, CronExpression cron) {
+        schedule(pipeline, cron, null);
+    }
+
+    /**
+     * @param lastSlot the last slot fired for the pipeline, or {@code null} to start from now
+     */
+    public void schedule(PipelineConfig.Pipeline pipeline, CronExpression cron, ZonedDateTime lastSlot) {
+        String policy = pipeline.getMisfirePolicy() != null ? pipeline.getMisfirePolicy() : defaultMisfirePolicy;
+        if (!FIRE_ONCE.equals(policy) && !FIRE_ALL.equals(policy) && !SKIP.equals(policy)) {
+            throw new IllegalArgumentException("Unknown misfire policy '" + policy + "' for pipeline "
+                    + pipeline.getPlName());
+        }
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        Trigger trigger = new Trigger(pipeline, cron, policy,
+                cron.next(lastSlot != null && lastSlot.isBefore(now) ? lastSlot : now));
+        if (trigger.nextFire == null) {
+            log.warn("Pipeline {} has no future fire time for '{}'", pipeline.getPlName(), pipeline.getSchedule());
+            return;
+        }
+        lock.lock();
+        try {
+            queue.add(trigger);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Scheduled pipeline {} next at {}", pipeline.getPlName(), trigger.nextFire);
+    }
+
+    /**
+     * Stops firing the pipeline; a slot already handed to the handler still runs.
+     *
+     * @return whether the pipeline was scheduled
+     */
+    public boolean unschedule(String pipelineName) {
+        lock.lock();
+        try {
+            boolean removed = queue.removeIf(trigger -> trigger.pipeline.getPlName().equals(pipelineName));
+            if (removed) {
+                changed.signalAll();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "pipeline-trigger");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                fireDue();
+                awaitNextDue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Pipeline trigger failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Fires every due slot and reschedules the affected pipelines. Handlers run outside the
+     * lock so new pipelines can be scheduled meanwhile.
+     */
+    void fireDue() {
+        List<Firing> firings = new ArrayList<>();
+        lock.lock();
+        try {
+            ZonedDateTime now = ZonedDateTime.now(clock);
+            while (!queue.isEmpty() && !queue.peek().nextFire.isAfter(now)) {
+                Trigger trigger = queue.poll();
+                DueSlots due = new DueSlots(trigger.nextFire, FIRE_ALL.equals(trigger.misfirePolicy));
+                for (ZonedDateTime slot = trigger.nextFire; slot != null && !slot.isAfter(now);
+                     slot = trigger.cron.next(slot)) {
+                    due.add(slot);
+                }
+                for (ZonedDateTime dueSlot : selectSlots(trigger, due, now)) {
+                    firings.add(new Firing(trigger.pipeline, dueSlot));
+                }
+                // Advance past every due slot, so no slot is considered twice.
+                trigger.nextFire = trigger.cron.next(due.latest);
+                if (trigger.nextFire != null) {
+                    queue.add(trigger);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Firing firing : firings) {
+            try {
+                handler.fire(firing.pipeline, firing.slot);
+            } catch (RuntimeException e) {
+                log.error("Pipeline {} failed for slot {}: {}", firing.pipeline.getPlName(), firing.slot,
+                        e.getMessage());
+            }
+        }
+    }
+
+    private List<ZonedDateTime> selectSlots(Trigger trigger, DueSlots due, ZonedDateTime now) {
+        ZonedDateTime latest = due.latest;
+        boolean misfired = Duration.between(due.first, now).compareTo(misfireThreshold) > 0;
+        if (!misfired) {
+            return List.of(latest);
+        }
+        log.warn("Pipeline {} missed {} slot(s) since {}, applying misfire policy {}",
+                trigger.pipeline.getPlName(), due.count, due.first, trigger.misfirePolicy);
+        switch (trigger.misfirePolicy) {
+            case FIRE_ALL:
+                if (due.count > MAX_CATCH_UP_SLOTS) {
+                    log.warn("Pipeline {} catches up on its last {} slot(s) only, dropping {}",
+                            trigger.pipeline.getPlName(), MAX_CATCH_UP_SLOTS, due.count - MAX_CATCH_UP_SLOTS);
+                }
+                return new ArrayList<>(due.catchUp);
+            case SKIP:
+                return Duration.between(latest, now).compareTo(misfireThreshold) > 0 ? List.of() : List.of(latest);
+            default:
+                return List.of(latest);
+        }
+    }
+
+    private void awaitNextDue() throws InterruptedException {
+        lock.lock();
+        try {
+            Trigger head = queue.peek();
+            if (head == null) {
+                changed.await();
+                return;
+            }
+            long nanos = Duration.between(clock.instant(), head.nextFire.toInstant()).toNanos();
+            if (nanos > 0) {
+                changed.await(nanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Trigger {
+        final PipelineConfig.Pipeline pipeline;
+        final CronExpression cron;
+        final String misfirePolicy;
+        ZonedDateTime nextFire;
+
+        Trigger(PipelineConfig.Pipeline pipeline, CronExpression cron, String misfirePolicy, ZonedDateTime nextFire) {
+            this.pipeline = pipeline;
+            this.cron = cron;
+            this.misfirePolicy = misfirePolicy;
+            this.nextFire = nextFire;
+        }
+    }
+
+    /**
+     * The due slots of a trigger. Only {@code fire_all} keeps them, up to the last
+     * {@value #MAX_CATCH_UP_SLOTS}; the other policies need the first and latest only.
+     */
+    private static class DueSlots {
+        final ZonedDateTime first;
+        final Deque<ZonedDateTime> catchUp;
+        ZonedDateTime latest;
+        long count;
+
+        DueSlots(ZonedDateTime first, boolean keep) {
+            this.first = first;
+            this.catchUp = keep ? new ArrayDeque<>() : null;
+        }
+
+        void add(ZonedDateTime slot) {
+            latest = slot;
+            count++;
+            if (catchUp != null) {
+                if (catchUp.size() == MAX_CATCH_UP_SLOTS) {
+                    catchUp.removeFirst();
+                }
+                catchUp.addLast(slot);
+            }
+        }
+    }
+
+    private static class Firing {
+        final PipelineConfig.Pipeline pipeline;
+        final ZonedDateTime slot;
+
+        Firing(PipelineConfig.Pipeline pipeline, ZonedDateTime slot) {
+            this.pipeline = pipeline;
+            this.slot = slot;
+        }
+    }
+}
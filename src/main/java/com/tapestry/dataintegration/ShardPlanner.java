@@ -0,0 +1,284 @@
+package com.tapestry.dataintegration;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.tapestry.dataintegration.config.ClusterProperties;
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.config.TransferProperties;
+import com.tapestry.dataintegration.service.JobExecutionRepository;
+import com.tapestry.dataintegration.service.JobProgress;
+import com.tapestry.dataintegration.service.S3KeyLister;
+import com.tapestry.dataintegration.service.S3Keys;
+import com.tapestry.dataintegration.service.S3Location;
+import com.tapestry.dataintegration.service.TransferMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Splits the listing of a cluster run into shards for the shard workers of every node, and
+ * finishes the run once its last shard is done. The run's pipeline thread returns as soon as
+ * the shards are planned; the run keeps its progress, detached, until this node sees that no
+ * shard is pending or running any more, totals the shards up and finishes it.
+ */
+@Component
+@Slf4j
+public class ShardPlanner {
+
+    private final JobExecutionRepository jobExecutionRepository;
+    private final S3KeyLister s3KeyLister;
+    private final TransferProperties transferProperties;
+    private final ClusterProperties clusterProperties;
+    private final TransferMetrics transferMetrics;
+    /** Sharded runs planned on this node that are waiting for their shards, by job execution id. */
+    private final Map<Long, ShardedRun> waiting = new ConcurrentHashMap<>();
+    private Thread thread;
+
+    public ShardPlanner(JobExecutionRepository jobExecutionRepository, S3KeyLister s3KeyLister,
+                        TransferProperties transferProperties, ClusterProperties clusterProperties,
+                        TransferMetrics transferMetrics) {
+        this.jobExecutionRepository = jobExecutionRepository;
+        this.s3KeyLister = s3KeyLister;
+        this.transferProperties = transferProperties;
+        this.clusterProperties = clusterProperties;
+        this.transferMetrics = transferMetrics;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::poll, "shard-planner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void poll() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(clusterProperties.getShardPollInterval().toMillis());
+                completeFinished();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Checking sharded runs failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cuts the listing into shards of up to {@code cluster.shard-size} keys as it goes, so shard
+     * workers on every node start on the first shard while the rest is still being listed.
+     * Partitions are listed in parallel and come in no particular order, so each shard is a
+     * range of consecutive keys within a partition; what is left of adjacent partitions at the
+     * end is merged into shards spanning them. A resumed run lists everything again, skips the
+     * keys its shards already cover and runs its failed and cancelled shards again. Once
+     * planned, the progress is detached and finished by {@link #completeFinished}.
+     *
+     * @return false, having created no shard, when the listing fits in one shard and the run
+     * should copy it in place
+     */
+    public boolean plan(S3Location source, JobExecution parent, JobProgress progress) {
+        int shardSize = Math.max(1, clusterProperties.getShardSize());
+        NavigableMap<String, String> covered = new TreeMap<>(S3Keys::compare);
+        if (parent.getShards() != null) {
+            jobExecutionRepository.findByParentId(parent.getId())
+                    .forEach(shard -> covered.put(shard.getShardFirstKey(), shard.getShardEndKey()));
+            // Shards that failed or were cancelled run again and retry what they did not copy.
+            jobExecutionRepository.transitionShards(parent.getId(), "FAILED", ShardWorker.PENDING);
+            jobExecutionRepository.transitionShards(parent.getId(), JobProgress.CANCELLED, ShardWorker.PENDING);
+        }
+        // The range being collected in each partition.
+        Map<Integer, Range> open = new TreeMap<>();
+        try (Stream<S3KeyLister.Page> pages = s3KeyLister.listPages(source.bucket, source.key, null, null,
+                transferProperties.getListParallelism())) {
+            Iterator<S3KeyLister.Page> iterator = pages.iterator();
+            while (iterator.hasNext() && !progress.isCancelRequested()) {
+                S3KeyLister.Page page = iterator.next();
+                Range range = open.computeIfAbsent(page.partition, partition -> new Range(true));
+                for (S3ObjectSummary summary : page.summaries) {
+                    boolean isCovered = isCovered(covered, summary.getKey());
+                    if (!isCovered) {
+                        range.add(summary.getKey());
+                    }
+                    if (isCovered && range.count > 0 || range.count == shardSize) {
+                        createShard(parent, range);
+                    }
+                    if (isCovered || range.count == shardSize) {
+                        range = new Range(false);
+                        open.put(page.partition, range);
+                    }
+                }
+            }
+            List<Range> rest = merge(open, shardSize);
+            if (parent.getShards() == null && (rest.size() <= 1 || progress.isCancelRequested())) {
+                return false;
+            }
+            if (!progress.isCancelRequested()) {
+                rest.forEach(range -> createShard(parent, range));
+            }
+        } catch (RuntimeException e) {
+            if (parent.getShards() != null) {
+                jobExecutionRepository.transitionShards(parent.getId(), ShardWorker.PENDING, JobProgress.CANCELLED);
+            }
+            throw e;
+        }
+        log.info("Split job execution {} into {} shard(s)", parent.getId(), parent.getShards());
+        progress.detach();
+        waiting.put(parent.getId(), new ShardedRun(parent, progress));
+        return true;
+    }
+
+    private static boolean isCovered(NavigableMap<String, String> covered, String key) {
+        Map.Entry<String, String> shard = covered.floorEntry(key);
+        return shard != null && S3Keys.compare(key, shard.getValue()) <= 0;
+    }
+
+    /**
+     * Joins the last range of a partition with the first of the next partition that has keys,
+     * when that range starts the partition, since no key lies between them.
+     */
+    private static List<Range> merge(Map<Integer, Range> open, int shardSize) {
+        List<Range> merged = new ArrayList<>();
+        Range current = null;
+        for (Range range : open.values()) {
+            if (current != null && range.fromStart && current.count + range.count <= shardSize) {
+                current.endKey = range.endKey;
+                current.count += range.count;
+                continue;
+            }
+            if (current != null) {
+                merged.add(current);
+            }
+            current = range.count > 0 ? range : null;
+        }
+        if (current != null) {
+            merged.add(current);
+        }
+        return merged;
+    }
+
+    /**
+     * Where a shard's listing starts: every key from its first key on sorts after the first
+     * key without its last character, and the few keys in between are filtered out.
+     */
+    public static String listAfter(String firstKey) {
+        if (firstKey == null || firstKey.isEmpty()) {
+            return null;
+        }
+        String startAfter = firstKey.substring(0, firstKey.offsetByCodePoints(firstKey.length(), -1));
+        return startAfter.isEmpty() ? null : startAfter;
+    }
+
+    private void createShard(JobExecution parent, Range range) {
+        JobExecution shard = new JobExecution();
+        shard.setPipelineName(parent.getPipelineName());
+        shard.setSourcePath(parent.getSourcePath());
+        shard.setTargetPath(parent.getTargetPath());
+        shard.setOperation(parent.getOperation());
+        shard.setStartTime(LocalDateTime.now());
+        shard.setStatus(ShardWorker.PENDING);
+        shard.setParentId(parent.getId());
+        shard.setShardFirstKey(range.firstKey);
+        shard.setShardEndKey(range.endKey);
+        jobExecutionRepository.save(shard);
+        parent.setShards(parent.getShards() == null ? 1 : parent.getShards() + 1);
+        jobExecutionRepository.save(parent);
+    }
+
+    /**
+     * Finishes the waiting runs none of whose shards is pending or running, with the totals of
+     * their shards. Cancelling a run cancels the shards no node has started yet.
+     */
+    public synchronized void completeFinished() {
+        for (ShardedRun run : waiting.values()) {
+            JobExecution parent = run.parent;
+            if (run.progress.isCancelRequested()) {
+                jobExecutionRepository.transitionShards(parent.getId(), ShardWorker.PENDING, JobProgress.CANCELLED);
+            }
+            List<JobExecution> shards = jobExecutionRepository.findByParentId(parent.getId());
+            if (shards.stream().anyMatch(shard -> ShardWorker.PENDING.equals(shard.getStatus())
+                    || JobProgress.RUNNING.equals(shard.getStatus()))) {
+                continue;
+            }
+            parent.setFilesProcessed(sum(shards, JobExecution::getFilesProcessed));
+            parent.setFilesSkipped(sum(shards, JobExecution::getFilesSkipped));
+            parent.setFilesDeleted(sum(shards, JobExecution::getFilesDeleted));
+            parent.setDeleteFailures(sum(shards, JobExecution::getDeleteFailures));
+            parent.setBytesTransferred(shards.stream().map(JobExecution::getBytesTransferred)
+                    .filter(Objects::nonNull).mapToLong(Long::longValue).sum());
+            long failed = shards.stream().filter(shard -> "FAILED".equals(shard.getStatus())).count();
+            boolean cancelled = run.progress.isCancelRequested()
+                    || shards.stream().anyMatch(shard -> JobProgress.CANCELLED.equals(shard.getStatus()));
+            if (failed > 0) {
+                parent.setStatus("FAILED");
+                parent.setErrorMessage(failed + " of " + shards.size() + " shard(s) failed");
+            } else {
+                parent.setStatus(cancelled ? JobProgress.CANCELLED : "SUCCESS");
+            }
+            parent.setEndTime(LocalDateTime.now());
+            jobExecutionRepository.save(parent);
+            waiting.remove(parent.getId());
+            log.info("Job execution {} finished {} after {} shard(s)", parent.getId(), parent.getStatus(),
+                    shards.size());
+            transferMetrics.recordRun(parent.getPipelineName(), parent.getOperation(), parent.getStatus(),
+                    Duration.between(run.progress.snapshot().getStartTime(), parent.getEndTime()));
+            run.progress.finished(parent.getStatus(), parent.getId(), parent.getErrorMessage());
+        }
+    }
+
+    private static int sum(List<JobExecution> shards, Function<JobExecution, Integer> field) {
+        return shards.stream().map(field).filter(Objects::nonNull).mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Consecutive keys of one partition, or of adjacent partitions once merged.
+     */
+    private static class Range {
+        /** Whether the range starts at the first key its partition listed. */
+        final boolean fromStart;
+        String firstKey;
+        String endKey;
+        int count;
+
+        Range(boolean fromStart) {
+            this.fromStart = fromStart;
+        }
+
+        void add(String key) {
+            if (firstKey == null) {
+                firstKey = key;
+            }
+            endKey = key;
+            count++;
+        }
+    }
+
+    private static class ShardedRun {
+        final JobExecution parent;
+        final JobProgress progress;
+
+        ShardedRun(JobExecution parent, JobProgress progress) {
+            this.parent = parent;
+            this.progress = progress;
+        }
+    }
+}
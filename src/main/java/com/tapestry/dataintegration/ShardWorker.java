@@ -0,0 +1,100 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.service.JobExecutionRepository;
+import com.tapestry.dataintegration.service.JobProgress;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the shards of sharded runs, whichever node created them. A worker claims the oldest
+ * pending shard with a conditional update, so each shard runs on one node at a time. Shards
+ * of a node that died are set back to pending by the leader and resume here from their
+ * manifest.
+ */
+@Slf4j
+public class ShardWorker {
+
+    /** A shard no node has claimed yet. */
+    public static final String PENDING = "PENDING";
+
+    public interface Handler {
+        /**
+         * Runs a shard this node has claimed; its status is already {@code RUNNING}.
+         */
+        void run(JobExecution shard);
+    }
+
+    private final JobExecutionRepository jobExecutionRepository;
+    private final String nodeId;
+    private final int workers;
+    private final Duration pollInterval;
+    private final Handler handler;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    public ShardWorker(JobExecutionRepository jobExecutionRepository, String nodeId, int workers,
+                       Duration pollInterval, Handler handler) {
+        this.jobExecutionRepository = jobExecutionRepository;
+        this.nodeId = nodeId;
+        this.workers = Math.max(1, workers);
+        this.pollInterval = pollInterval;
+        this.handler = handler;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, "shard-worker-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                if (!runNext()) {
+                    Thread.sleep(pollInterval.toMillis());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Shard worker failed: {}", e.getMessage());
+                try {
+                    Thread.sleep(pollInterval.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether a shard was claimed and run
+     */
+    boolean runNext() {
+        for (JobExecution shard : jobExecutionRepository.findTop20ByStatusAndParentIdIsNotNullOrderByIdAsc(PENDING)) {
+            if (jobExecutionRepository.transition(shard.getId(), PENDING, JobProgress.RUNNING, nodeId) == 1) {
+                shard.setStatus(JobProgress.RUNNING);
+                shard.setNodeId(nodeId);
+                handler.run(shard);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,24 @@
+package com.tapestry.dataintegration.config;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A named claim held by one node until it expires: node liveness, the cluster leader and the
+ * pipeline slots that have been fired.
+ */
+@Entity
+@Table(name = "cluster_leases")
+@Data
+public class ClusterLease {
+
+    @Id
+    private String name;
+
+    private String owner;
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,36 @@
+package com.tapestry.dataintegration.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "cluster")
+@Data
+public class ClusterProperties {
+    /**
+     * Coordinates several scheduler instances through the shared database. Off, an instance
+     * assumes it is the only one.
+     */
+    private boolean enabled = false;
+    /**
+     * Stable name of this instance; generated from the host name when unset.
+     */
+    private String nodeId;
+    /**
+     * How long a node or leader lease lasts without renewal before another node takes over.
+     */
+    private Duration leaseDuration = Duration.ofSeconds(30);
+    private Duration heartbeatInterval = Duration.ofSeconds(10);
+    /**
+     * Number of keys per shard when the listing of an S3 run is split across nodes.
+     */
+    private int shardSize = 50_000;
+    /**
+     * Shards each node works on at the same time.
+     */
+    private int shardWorkers = 2;
+    private Duration shardPollInterval = Duration.ofSeconds(2);
+}
@@ -6,6 +6,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.Data;
 
@@ -13,7 +14,12 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "job_executions")
+@Table(name = "job_executions", indexes = {
+        @Index(name = "idx_job_start_time", columnList = "startTime, id"),
+        @Index(name = "idx_job_pipeline_start_time", columnList = "pipelineName, startTime, id"),
+        @Index(name = "idx_job_status", columnList = "status, id"),
+        @Index(name = "idx_job_parent", columnList = "parentId, id")
+})
 @Data
 public class JobExecution {
 
@@ -21,21 +27,38 @@ public class JobExecution {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    private String runId;
     private String pipelineName;
     private String sourcePath;
     private String targetPath;
     private String operation;
+    /** The schedule slot the run was for; pipelines that depend on this one take it on. */
+    private LocalDateTime slot;
     private LocalDateTime startTime;
     private LocalDateTime endTime;
     private String status;
     private String errorMessage;
     private Integer filesProcessed;
+    private Integer filesSkipped;
+    private Integer filesDeleted;
+    private Long bytesTransferred;
+    /** The cluster node running the execution. */
+    private String nodeId;
 
-    @ElementCollection
-    @CollectionTable(name = "job_execution_files")
-    private List<String> sourceFiles;
+    /*
+     * In cluster mode a large S3 run is split into shards, each an execution of its own over
+     * the keys from shardFirstKey up to and including shardEndKey. The parent records how
+     * many shards it has created.
+     */
+    private Long parentId;
+    private Integer shards;
+    private String shardFirstKey;
+    private String shardEndKey;
+
+    /** Source files a move failed to delete; deleteErrors describes the first hundred. */
+    private Integer deleteFailures;
 
     @ElementCollection
-    @CollectionTable(name = "job_execution_target_files")
-    private List<String> targetFiles;
+    @CollectionTable(name = "job_execution_delete_errors")
+    private List<String> deleteErrors;
 }
@@ -0,0 +1,37 @@
+package com.tapestry.dataintegration.config;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * What one pipeline's runs added up to on one day. Rollups outlive the executions they were
+ * computed from, so trends reach further back than the detailed history.
+ */
+@Entity
+@Table(name = "job_execution_rollups", indexes = @Index(name = "idx_rollup_pipeline_day",
+        columnList = "pipelineName, rollup_day", unique = true))
+@Data
+public class JobExecutionRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String pipelineName;
+    @Column(name = "rollup_day")
+    private LocalDate day;
+    private int runs;
+    private int failures;
+    private long filesProcessed;
+    private long bytesTransferred;
+    private long p50DurationMillis;
+    private long p95DurationMillis;
+}
@@ -0,0 +1,34 @@
+package com.tapestry.dataintegration.config;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * A block of a job's file manifest: up to a few thousand source/target pairs, gzip-compressed
+ * into one row, so a large job writes a handful of rows instead of one per file.
+ */
+@Entity
+@Table(name = "job_manifest_chunks", indexes = @Index(name = "idx_manifest_job_chunk",
+        columnList = "jobExecutionId, chunkIndex", unique = true))
+@Data
+public class ManifestChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long jobExecutionId;
+    private int chunkIndex;
+    private int fileCount;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+}
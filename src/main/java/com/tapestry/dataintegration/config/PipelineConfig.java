@@ -4,6 +4,7 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 @Component
@@ -21,6 +22,15 @@ public class PipelineConfig {
         private String operation;
         private String snsTopic;
         private List<String> sourceKeys;
+        private Integer concurrency;
+        private Boolean incremental;
+        private String misfirePolicy;
+        private String overlapPolicy;
+        private Integer maxConcurrentRuns;
+        private String trigger;
+        private Duration debounce;
+        private List<String> dependsOn;
+        private Boolean verify;
     }
 
     @Data
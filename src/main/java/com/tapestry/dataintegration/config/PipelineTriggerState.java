@@ -0,0 +1,27 @@
+package com.tapestry.dataintegration.config;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * The last cron slot fired for a pipeline, so slots that pass while no node is running are
+ * caught up by the misfire policy after a restart. For a pipeline that depends on others,
+ * {@code releasedThrough} is the end time of the last upstream run it has been released after;
+ * upstream runs that succeeded since count towards its next release.
+ */
+@Entity
+@Table(name = "pipeline_trigger_states")
+@Data
+public class PipelineTriggerState {
+
+    @Id
+    private String pipelineName;
+
+    private LocalDateTime lastSlot;
+
+    private LocalDateTime releasedThrough;
+}
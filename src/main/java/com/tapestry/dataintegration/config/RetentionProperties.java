@@ -0,0 +1,35 @@
+package com.tapestry.dataintegration.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "retention")
+@Data
+public class RetentionProperties {
+    private boolean enabled = true;
+    /**
+     * How long executions and their file manifests stay in the database. Older ones are rolled
+     * up, their manifests archived, and then deleted.
+     */
+    private Duration keepDetails = Duration.ofDays(30);
+    /**
+     * Where archived manifests are written, one gzip-compressed file per pipeline and day.
+     */
+    private String archiveDirectory = "./data/job-archive";
+    /**
+     * Executions deleted per transaction.
+     */
+    private int batchSize = 200;
+    /**
+     * Time between retention passes.
+     */
+    private Duration interval = Duration.ofHours(1);
+    /**
+     * Time from startup to the first retention pass.
+     */
+    private Duration initialDelay = Duration.ofMinutes(5);
+}
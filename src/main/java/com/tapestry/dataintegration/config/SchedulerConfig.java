@@ -0,0 +1,19 @@
+package com.tapestry.dataintegration.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class SchedulerConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor pipelineExecutor(SchedulerProperties schedulerProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(schedulerProperties.getMaxConcurrentRuns());
+        executor.setMaxPoolSize(schedulerProperties.getMaxConcurrentRuns());
+        executor.setThreadNamePrefix("pipeline-");
+        executor.initialize();
+        return executor;
+    }
+}
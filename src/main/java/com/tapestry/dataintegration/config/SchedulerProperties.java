@@ -0,0 +1,46 @@
+package com.tapestry.dataintegration.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "scheduler")
+@Data
+public class SchedulerProperties {
+    /**
+     * How late a slot may fire and still count as on time; later slots are handled by the
+     * pipeline's misfire policy.
+     */
+    private Duration misfireThreshold = Duration.ofSeconds(60);
+    private String defaultMisfirePolicy = "fire_once";
+    /**
+     * Global cap on pipeline runs executing at the same time.
+     */
+    private int maxConcurrentRuns = 4;
+    private String defaultOverlapPolicy = "skip";
+    /**
+     * Quiet period after the last file event before a watched pipeline runs, unless the
+     * pipeline sets its own {@code debounce}.
+     */
+    private Duration watchDebounce = Duration.ofSeconds(5);
+    /**
+     * Longest a file event waits for its run while new events keep arriving.
+     */
+    private Duration watchMaxDelay = Duration.ofSeconds(60);
+    /**
+     * Whether executions left running by a previous process are resumed on startup, rather
+     * than only marked interrupted.
+     */
+    private boolean resumeInterrupted = true;
+    /**
+     * YAML file to read pipelines from instead of {@code application.yml}.
+     */
+    private String pipelineFile;
+    /**
+     * How often the pipeline file is checked for changes; zero turns reloading off.
+     */
+    private Duration pipelineReloadInterval = Duration.ofSeconds(10);
+}
@@ -0,0 +1,71 @@
+package com.tapestry.dataintegration.config;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.tapestry.dataintegration.service.MultipartCopier;
+import com.tapestry.dataintegration.service.S3RequestMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class TransferConfig {
+
+    public TransferConfig(TransferProperties transferProperties) {
+        // Every part but the last must reach the S3 minimum, or completing the upload fails.
+        if (transferProperties.getMultipartPartSize() < MultipartCopier.MIN_PART_SIZE) {
+            throw new IllegalStateException("transfer.multipart-part-size must be at least "
+                    + MultipartCopier.MIN_PART_SIZE + " bytes, got " + transferProperties.getMultipartPartSize());
+        }
+    }
+
+    @Bean
+    public AmazonS3 amazonS3(AwsProperties awsProperties, TransferProperties transferProperties,
+                             S3RequestMetrics s3RequestMetrics) {
+        // Every transfer thread may hold a connection, so the pool must not be the bottleneck.
+        // Retries are left to S3RateController, which has to see every throttle to adapt.
+        ClientConfiguration clientConfiguration = new ClientConfiguration()
+                .withMaxConnections(Math.max(ClientConfiguration.DEFAULT_MAX_CONNECTIONS,
+                        transferProperties.getMaxThreads() + transferProperties.getPartThreads()))
+                .withRetryPolicy(PredefinedRetryPolicies.NO_RETRY_POLICY);
+        return AmazonS3ClientBuilder.standard()
+                .withRegion(awsProperties.getRegion())
+                .withClientConfiguration(clientConfiguration)
+                .withRequestHandlers(s3RequestMetrics)
+                .build();
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor transferExecutor(TransferProperties transferProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(transferProperties.getMaxThreads());
+        executor.setMaxPoolSize(transferProperties.getMaxThreads());
+        executor.setThreadNamePrefix("transfer-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor partCopyExecutor(TransferProperties transferProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(transferProperties.getPartThreads());
+        executor.setMaxPoolSize(transferProperties.getPartThreads());
+        executor.setThreadNamePrefix("part-copy-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor listExecutor(TransferProperties transferProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(transferProperties.getListThreads());
+        executor.setMaxPoolSize(transferProperties.getListThreads());
+        executor.setThreadNamePrefix("s3-list-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,45 @@
+package com.tapestry.dataintegration.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "transfer")
+@Data
+public class TransferProperties {
+    private int maxThreads = 32;
+    private int defaultConcurrency = 8;
+    private int partThreads = 16;
+    private long multipartThreshold = 256L * 1024 * 1024;
+    private long multipartPartSize = 64L * 1024 * 1024;
+    /**
+     * Lets S3 jobs without an explicit {@code concurrency} use up to
+     * {@code adaptiveJobConcurrency} transfer threads, leaving the in-flight request count to the
+     * adaptive per-prefix limit. Turn it off to hold them to {@code defaultConcurrency}.
+     */
+    private boolean adaptiveConcurrency = true;
+    /**
+     * Keeps an adaptive job from taking the whole transfer pool, so other pipelines still run.
+     */
+    private int adaptiveJobConcurrency = 16;
+    private int s3InitialConcurrency = 16;
+    /**
+     * Upper bound of the per-prefix limit. Only transfer and part copy threads issue requests,
+     * so the limit never goes beyond {@code maxThreads + partThreads} either.
+     */
+    private int s3MaxConcurrency = 48;
+    private int retryMaxAttempts = 8;
+    private Duration retryBaseDelay = Duration.ofMillis(100);
+    private Duration retryMaxDelay = Duration.ofSeconds(20);
+    /**
+     * Subprefixes of an S3 source listed at the same time; 1 lists every source sequentially.
+     */
+    private int listParallelism = 8;
+    /**
+     * Threads listing partitions, shared by every listing.
+     */
+    private int listThreads = 16;
+}
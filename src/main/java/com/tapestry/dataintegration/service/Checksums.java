@@ -0,0 +1,109 @@
+package com.tapestry.dataintegration.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Checksums computed while files are transferred, so the source is read only once. They are
+ * recorded with a prefix naming the algorithm: {@code crc32c:} for local copies,
+ * {@code md5:} for streams and {@code etag:} for S3 ETags, including the
+ * {@code <md5 of part md5s>-<parts>} form S3 gives objects written in parts.
+ */
+public final class Checksums {
+
+    private Checksums() {
+    }
+
+    public static String crc32c(long value) {
+        return "crc32c:" + String.format("%08x", value);
+    }
+
+    public static String md5(byte[] digest) {
+        return "md5:" + HexFormat.of().formatHex(digest);
+    }
+
+    public static String etag(String eTag) {
+        return "etag:" + eTag;
+    }
+
+    /**
+     * @return the ETag S3 gives an object assembled from parts with these MD5 digests
+     */
+    public static String multipartETag(List<byte[]> partDigests) {
+        MessageDigest md5 = newMd5();
+        partDigests.forEach(md5::update);
+        return HexFormat.of().formatHex(md5.digest()) + "-" + partDigests.size();
+    }
+
+    /**
+     * @return whether an ETag is the MD5 of the object's content, as it is for objects written
+     * in one request without KMS encryption
+     */
+    public static boolean isPlainMd5(String eTag) {
+        return eTag != null && eTag.length() == 32 && eTag.indexOf('-') < 0;
+    }
+
+    static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * Digests and counts the bytes read through it.
+     */
+    public static class DigestingInputStream extends FilterInputStream {
+        private final MessageDigest digest = newMd5();
+        private long count;
+
+        public DigestingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                digest.update(buffer, offset, read);
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            // Skipped bytes would be missing from the digest.
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public byte[] digest() {
+            return digest.digest();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.config.ClusterLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Leases change hands only through conditional statements, so the row lock the database takes
+ * for each of them decides between nodes racing for the same lease.
+ */
+@Repository
+public interface ClusterLeaseRepository extends JpaRepository<ClusterLease, String> {
+
+    /**
+     * Fails with a {@code DataIntegrityViolationException} when the lease already exists.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into cluster_leases (name, owner, expires_at) values (:name, :owner, :expiresAt)",
+            nativeQuery = true)
+    void insert(@Param("name") String name, @Param("owner") String owner,
+                @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Extends a lease the owner holds, or takes over one that has expired.
+     *
+     * @return 1 if the lease is now held by {@code owner}
+     */
+    @Modifying
+    @Transactional
+    @Query("update ClusterLease l set l.owner = :owner, l.expiresAt = :expiresAt "
+            + "where l.name = :name and (l.owner = :owner or l.expiresAt < :now)")
+    int renew(@Param("name") String name, @Param("owner") String owner,
+              @Param("expiresAt") LocalDateTime expiresAt, @Param("now") LocalDateTime now);
+
+    boolean existsByNameAndExpiresAtAfter(String name, LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("delete from ClusterLease l where l.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
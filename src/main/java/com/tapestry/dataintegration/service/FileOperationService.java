@@ -3,10 +3,25 @@ package com.tapestry.dataintegration.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
+/**
+ * Resolves the storage backend that owns a location.
+ */
 @Service
 @Slf4j
 public class FileOperationService {
 
+    private final List<StorageBackend> backends;
 
+    public FileOperationService(List<StorageBackend> backends) {
+        this.backends = backends;
+    }
 
+    public StorageBackend backendFor(String location) {
+        return backends.stream()
+                .filter(backend -> backend.supports(location))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No storage backend for " + location));
+    }
 }
@@ -0,0 +1,119 @@
+package com.tapestry.dataintegration.service;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * {@code mem://} locations held on the heap, for dry runs of a pipeline definition and for
+ * exercising the cross-backend paths without real storage.
+ */
+@Component
+@Order(2)
+public class InMemoryStorageBackend implements StorageBackend {
+
+    static final String SCHEME = "mem://";
+
+    private final NavigableMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+
+    @Override
+    public boolean supports(String location) {
+        return location.startsWith(SCHEME);
+    }
+
+    public void put(String location, byte[] content) {
+        objects.put(location, content);
+    }
+
+    public byte[] get(String location) {
+        return objects.get(location);
+    }
+
+    @Override
+    public Stream<StorageObject> list(String location) {
+        return objects.tailMap(location, true).entrySet().stream()
+                .takeWhile(entry -> entry.getKey().startsWith(location))
+                .map(entry -> new StorageObject(entry.getKey(), entry.getKey().substring(location.length()),
+                        entry.getValue().length));
+    }
+
+    @Override
+    public String resolve(String location, String relativePath) {
+        return S3StorageBackend.join(location, relativePath);
+    }
+
+    @Override
+    public InputStream openRead(String location, long offset, long length) {
+        byte[] content = require(location);
+        return new ByteArrayInputStream(content, (int) offset, (int) Math.min(length, content.length - offset));
+    }
+
+    @Override
+    public void write(String location, InputStream content, long size) {
+        try {
+            objects.put(location, content.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + location, e);
+        }
+    }
+
+    @Override
+    public PartWriter openMultipartWrite(String location, long size) {
+        byte[] content = new byte[Math.toIntExact(size)];
+        return new PartWriter() {
+            @Override
+            public void writePart(int partNumber, long offset, InputStream part, long length) {
+                try {
+                    part.readNBytes(content, (int) offset, (int) length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to write part " + partNumber + " of " + location, e);
+                }
+            }
+
+            @Override
+            public void complete() {
+                objects.put(location, content);
+            }
+
+            @Override
+            public void abort() {
+                // Nothing is visible until complete.
+            }
+        };
+    }
+
+    @Override
+    public void copy(String sourceLocation, String targetLocation) {
+        byte[] content = require(sourceLocation);
+        objects.put(targetLocation, Arrays.copyOf(content, content.length));
+    }
+
+    @Override
+    public DeleteResult delete(Iterator<String> locations, int concurrency) {
+        DeleteResult result = new DeleteResult();
+        while (locations.hasNext()) {
+            String location = locations.next();
+            if (objects.remove(location) != null) {
+                result.deleted++;
+            }
+        }
+        return result;
+    }
+
+    private byte[] require(String location) {
+        byte[] content = objects.get(location);
+        if (content == null) {
+            throw new IllegalArgumentException("No such object: " + location);
+        }
+        return content;
+    }
+}
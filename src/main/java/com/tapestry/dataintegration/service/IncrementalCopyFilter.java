@@ -0,0 +1,103 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Drops source objects that already exist unchanged at the target. An object is unchanged when
+ * the sizes match and either the ETags match or the target copy is not older than the source
+ * (multipart copies get a new ETag, so the ETag alone is not enough).
+ */
+@Component
+public class IncrementalCopyFilter {
+
+    private final AmazonS3 s3Client;
+    private final S3KeyLister s3KeyLister;
+    private final S3RateController rateController;
+
+    public IncrementalCopyFilter(AmazonS3 s3Client, S3KeyLister s3KeyLister, S3RateController rateController) {
+        this.s3Client = s3Client;
+        this.s3KeyLister = s3KeyLister;
+        this.rateController = rateController;
+    }
+
+    /**
+     * Both listings come back in key order, so they are merge-joined on the relative key while
+     * streaming; neither side is ever held in memory.
+     */
+    public Stream<S3ObjectSummary> changedOnly(Stream<S3ObjectSummary> sources, String sourcePrefix,
+                                               String targetBucket, String targetPrefix, LongAdder skipped) {
+        return changedOnly(sources, sourcePrefix, targetBucket, targetPrefix, null, skipped);
+    }
+
+    /**
+     * @param targetStartAfter where to start the target listing when the source listing starts
+     *                         part way through the prefix, or {@code null}
+     */
+    public Stream<S3ObjectSummary> changedOnly(Stream<S3ObjectSummary> sources, String sourcePrefix,
+                                               String targetBucket, String targetPrefix, String targetStartAfter,
+                                               LongAdder skipped) {
+        Iterator<S3ObjectSummary> targets = s3KeyLister.list(targetBucket, targetPrefix, targetStartAfter).iterator();
+        S3ObjectSummary[] pendingTarget = new S3ObjectSummary[1];
+
+        return sources.filter(source -> {
+            String relativeKey = source.getKey().substring(sourcePrefix.length());
+            while (pendingTarget[0] == null
+                    || S3Keys.compare(relativeOf(pendingTarget[0], targetPrefix), relativeKey) < 0) {
+                if (!targets.hasNext()) {
+                    pendingTarget[0] = null;
+                    return true;
+                }
+                pendingTarget[0] = targets.next();
+            }
+            S3ObjectSummary target = pendingTarget[0];
+            if (S3Keys.compare(relativeOf(target, targetPrefix), relativeKey) == 0
+                    && isUnchanged(source.getSize(), source.getETag(), source.getLastModified(),
+                    target.getSize(), target.getETag(), target.getLastModified())) {
+                skipped.increment();
+                return false;
+            }
+            return true;
+        });
+    }
+
+    public boolean isUnchanged(String sourceBucket, String sourceKey, String targetBucket, String targetKey) {
+        ObjectMetadata target;
+        try {
+            target = rateController.call(targetBucket, targetKey,
+                    () -> s3Client.getObjectMetadata(targetBucket, targetKey));
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+        ObjectMetadata source = rateController.call(sourceBucket, sourceKey,
+                () -> s3Client.getObjectMetadata(sourceBucket, sourceKey));
+        return isUnchanged(source.getContentLength(), source.getETag(), source.getLastModified(),
+                target.getContentLength(), target.getETag(), target.getLastModified());
+    }
+
+    private boolean isUnchanged(long sourceSize, String sourceETag, Date sourceModified,
+                                long targetSize, String targetETag, Date targetModified) {
+        if (sourceSize != targetSize) {
+            return false;
+        }
+        if (sourceETag != null && sourceETag.equals(targetETag)) {
+            return true;
+        }
+        return sourceModified != null && targetModified != null && !targetModified.before(sourceModified);
+    }
+
+    private static String relativeOf(S3ObjectSummary summary, String prefix) {
+        return summary.getKey().substring(prefix.length());
+    }
+}
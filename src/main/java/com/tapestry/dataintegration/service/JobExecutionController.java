@@ -2,33 +2,71 @@ package com.tapestry.dataintegration.service;
 
 
 import com.tapestry.dataintegration.DataIntegrationTaskScheduler;
+import com.tapestry.dataintegration.PipelineDispatcher;
 import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.config.JobExecutionRollup;
 import com.tapestry.dataintegration.config.PipelineConfig;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/jobs")
 @RequiredArgsConstructor
 public class JobExecutionController {
+    private static final Duration SSE_INTERVAL = Duration.ofSeconds(1);
+    private static final Duration SSE_TIMEOUT = Duration.ofHours(6);
+    private static final int MAX_JOBS_PAGE = 500;
+    private static final int MAX_FILES_PAGE = 5000;
+    private static final int TREND_DAYS = 30;
+
     private final JobExecutionRepository jobExecutionRepository;
     private final DataIntegrationTaskScheduler taskScheduler;
+    private final JobRunRegistry jobRunRegistry;
+    private final ManifestStore manifestStore;
+    private final TaskScheduler progressPublisher;
+    private final JobExecutionRollupRepository rollupRepository;
 
     @GetMapping
-    public List<JobExecution> getAllJobs() {
-        return jobExecutionRepository.findAll();
+    public CursorPage<JobExecutionSummary> getAllJobs(@RequestParam(required = false) String cursor,
+                                                      @RequestParam(defaultValue = "50") int limit) {
+        return JobHistoryCursor.page(jobExecutionRepository.findByOrderByStartTimeDescIdDesc(
+                JobHistoryCursor.decode(cursor), pageLimit(limit, MAX_JOBS_PAGE)));
+    }
+
+    @GetMapping("/pipelines")
+    public List<PipelineDispatcher.PipelineStatus> getPipelineStatuses() {
+        return taskScheduler.getPipelineStatuses();
     }
 
     @GetMapping("/{id}")
@@ -38,40 +76,182 @@ public class JobExecutionController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{id}/files")
+    public ResponseEntity<CursorPage<ManifestStore.Entry>> getJobFiles(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "1000") int limit) {
+        if (!jobExecutionRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        int offset;
+        try {
+            offset = cursor == null || cursor.isEmpty() ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        return ResponseEntity.ok(manifestStore.page(id, Math.max(0, offset), pageLimit(limit, MAX_FILES_PAGE).max()));
+    }
+
+    /**
+     * Streams the whole file manifest of a job as tab-separated source and target lines.
+     */
+    @GetMapping(path = "/{id}/files/export", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportJobFiles(@PathVariable Long id) {
+        if (!jobExecutionRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try (Stream<ManifestStore.Entry> entries = manifestStore.read(id)) {
+                for (Iterator<ManifestStore.Entry> it = entries.iterator(); it.hasNext(); ) {
+                    ManifestStore.Entry entry = it.next();
+                    writer.write(entry.source);
+                    writer.write('\t');
+                    writer.write(entry.target);
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+        };
+        return ResponseEntity.ok(body);
+    }
+
     @GetMapping("/pipeline/{pipelineName}")
-    public List<JobExecution> getJobsByPipeline(@PathVariable String pipelineName) {
-        return jobExecutionRepository.findByPipelineName(pipelineName);
+    public CursorPage<JobExecutionSummary> getJobsByPipeline(@PathVariable String pipelineName,
+                                                             @RequestParam(required = false) String cursor,
+                                                             @RequestParam(defaultValue = "50") int limit) {
+        return JobHistoryCursor.page(jobExecutionRepository.findByPipelineNameOrderByStartTimeDescIdDesc(
+                pipelineName, JobHistoryCursor.decode(cursor), pageLimit(limit, MAX_JOBS_PAGE)));
+    }
+
+    /**
+     * Daily totals of a pipeline's runs, read from the rollups that outlive the detailed history.
+     * Covers the last 30 days unless a range is given.
+     */
+    @GetMapping("/pipeline/{pipelineName}/trend")
+    public List<JobExecutionRollup> getPipelineTrend(
+            @PathVariable String pipelineName,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(TREND_DAYS);
+        return rollupRepository.findByPipelineNameAndDayBetweenOrderByDayAsc(pipelineName, start, end);
     }
 
     @GetMapping("/search")
-    public List<JobExecution> searchJobs(
+    public CursorPage<JobExecutionSummary> searchJobs(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
-        return jobExecutionRepository.findByStartTimeBetween(startTime, endTime);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        return JobHistoryCursor.page(jobExecutionRepository.findByStartTimeBetweenOrderByStartTimeDescIdDesc(
+                startTime, endTime, JobHistoryCursor.decode(cursor), pageLimit(limit, MAX_JOBS_PAGE)));
     }
 
     @PostMapping("/execute/{pipelineName}")
-    public ResponseEntity<JobExecution> executePipeline(@PathVariable String pipelineName) {
+    public ResponseEntity<JobProgress.Snapshot> executePipeline(@PathVariable String pipelineName) {
         Optional<PipelineConfig.Pipeline> pipeline = taskScheduler.findPipelineByName(pipelineName);
 
         if (pipeline.isPresent()) {
-            String dateFolder = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-            PipelineConfig.Pipeline p = pipeline.get();
+            JobProgress progress = taskScheduler.submitPipeline(pipeline.get());
+            if (JobProgress.SKIPPED.equals(progress.snapshot().getStatus())) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(progress.snapshot());
+            }
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/jobs/runs/" + progress.getRunId()))
+                    .body(progress.snapshot());
+        }
+
+        return ResponseEntity.notFound().build();
+    }
 
-            String sourcePath = p.getSource().getPath().replace("{date_folder}", dateFolder);
-            String targetPath = p.getTarget().getPath().replace("{date_folder}", dateFolder);
+    /**
+     * Continues an interrupted, failed or cancelled execution with the files it has not done yet.
+     */
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<JobProgress.Snapshot> resumeJob(@PathVariable Long id) {
+        if (!jobExecutionRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        JobProgress progress = taskScheduler.resumeExecution(id);
+        if (JobProgress.SKIPPED.equals(progress.snapshot().getStatus())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(progress.snapshot());
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/runs/" + progress.getRunId()))
+                .body(progress.snapshot());
+    }
+
+    @GetMapping("/runs")
+    public List<JobProgress.Snapshot> getRuns() {
+        return jobRunRegistry.snapshots();
+    }
 
-            JobExecution execution = taskScheduler.executeOperation(
-                    p.getOperation(),
-                    sourcePath,
-                    targetPath,
-                    pipelineName,
-                    p.getSourceKeys()
-            );
+    @GetMapping("/runs/{runId}")
+    public ResponseEntity<JobProgress.Snapshot> getRun(@PathVariable String runId) {
+        JobProgress progress = jobRunRegistry.get(runId);
+        return progress == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(progress.snapshot());
+    }
 
-            return ResponseEntity.ok(execution);
+    @GetMapping(path = "/runs/{runId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamRun(@PathVariable String runId) {
+        JobProgress progress = jobRunRegistry.get(runId);
+        if (progress == null) {
+            return ResponseEntity.notFound().build();
         }
 
-        return ResponseEntity.notFound().build();
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT.toMillis());
+        AtomicReference<ScheduledFuture<?>> publisher = new AtomicReference<>();
+        AtomicBoolean closed = new AtomicBoolean();
+        Runnable stop = () -> {
+            closed.set(true);
+            ScheduledFuture<?> future = publisher.get();
+            if (future != null) {
+                future.cancel(false);
+            }
+        };
+        emitter.onCompletion(stop);
+        emitter.onTimeout(stop);
+        emitter.onError(e -> stop.run());
+
+        publisher.set(progressPublisher.scheduleAtFixedRate(() -> {
+            if (closed.get()) {
+                stop.run();
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(progress.snapshot()));
+                if (progress.isFinished()) {
+                    stop.run();
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                stop.run();
+            }
+        }, SSE_INTERVAL));
+        return ResponseEntity.ok(emitter);
+    }
+
+    @PostMapping("/runs/{runId}/cancel")
+    public ResponseEntity<JobProgress.Snapshot> cancelRun(@PathVariable String runId) {
+        JobProgress progress = jobRunRegistry.get(runId);
+        if (progress == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (progress.isFinished()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(progress.snapshot());
+        }
+        progress.cancel();
+        return ResponseEntity.accepted().body(progress.snapshot());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private static Limit pageLimit(int limit, int max) {
+        return Limit.of(Math.max(1, Math.min(limit, max)));
     }
 }
@@ -1,16 +1,69 @@
 package com.tapestry.dataintegration.service;
 
 import com.tapestry.dataintegration.config.JobExecution;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
+/**
+ * History queries scroll newest first by {@code (startTime, id)}, which the indexes on
+ * {@code job_executions} cover, so each page costs the same however much history there is.
+ */
 @Repository
 public interface JobExecutionRepository extends JpaRepository<JobExecution, Long> {
-    List<JobExecution> findByPipelineName(String pipelineName);
-    List<JobExecution> findByStartTimeBetween(LocalDateTime start, LocalDateTime end);
-    // Optional: Add query for endTime if needed
-    List<JobExecution> findByEndTimeBetween(LocalDateTime start, LocalDateTime end);
-}
\ No newline at end of file
+    Window<JobExecutionSummary> findByOrderByStartTimeDescIdDesc(ScrollPosition position, Limit limit);
+
+    Window<JobExecutionSummary> findByPipelineNameOrderByStartTimeDescIdDesc(String pipelineName,
+                                                                             ScrollPosition position, Limit limit);
+
+    Window<JobExecutionSummary> findByStartTimeBetweenOrderByStartTimeDescIdDesc(LocalDateTime start,
+                                                                                 LocalDateTime end,
+                                                                                 ScrollPosition position,
+                                                                                 Limit limit);
+
+    List<JobExecution> findByStatus(String status);
+
+    List<JobExecution> findByParentId(Long parentId);
+
+    List<JobExecution> findByPipelineNameAndStatusAndParentIdIsNullAndEndTimeGreaterThanOrderByEndTimeAsc(
+            String pipelineName, String status, LocalDateTime endTime);
+
+    Optional<JobExecution> findFirstByParentIdOrderByIdDesc(Long parentId);
+
+    List<JobExecution> findTop20ByStatusAndParentIdIsNotNullOrderByIdAsc(String status);
+
+    Optional<JobExecution> findFirstByOrderByStartTimeAsc();
+
+    Optional<JobExecution> findFirstByStartTimeGreaterThanEqualOrderByStartTimeAsc(LocalDateTime start);
+
+    Optional<JobExecution> findFirstByStartTimeLessThanAndEndTimeIsNotNullOrderByStartTimeAsc(LocalDateTime end);
+
+    List<JobExecution> findByStartTimeGreaterThanEqualAndStartTimeLessThanOrderByIdAsc(LocalDateTime start,
+                                                                                       LocalDateTime end);
+
+    /**
+     * Moves an execution from one status to another only if no other node has moved it first.
+     *
+     * @return 1 if this call made the transition
+     */
+    @Modifying
+    @Transactional
+    @Query("update JobExecution j set j.status = :to, j.nodeId = :nodeId where j.id = :id and j.status = :from")
+    int transition(@Param("id") Long id, @Param("from") String from, @Param("to") String to,
+                   @Param("nodeId") String nodeId);
+
+    @Modifying
+    @Transactional
+    @Query("update JobExecution j set j.status = :to where j.parentId = :parentId and j.status = :from")
+    int transitionShards(@Param("parentId") Long parentId, @Param("from") String from, @Param("to") String to);
+}
@@ -0,0 +1,19 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.config.JobExecutionRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface JobExecutionRollupRepository extends JpaRepository<JobExecutionRollup, Long> {
+    List<JobExecutionRollup> findByPipelineNameAndDayBetweenOrderByDayAsc(String pipelineName, LocalDate from,
+                                                                          LocalDate to);
+
+    Optional<JobExecutionRollup> findByPipelineNameAndDay(String pipelineName, LocalDate day);
+
+    Optional<JobExecutionRollup> findFirstByOrderByDayDesc();
+}
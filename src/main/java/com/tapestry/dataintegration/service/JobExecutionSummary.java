@@ -0,0 +1,27 @@
+package com.tapestry.dataintegration.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection of a job execution without its collections, for history listings.
+ */
+public interface JobExecutionSummary {
+    Long getId();
+    String getRunId();
+    String getPipelineName();
+    String getSourcePath();
+    String getTargetPath();
+    String getOperation();
+    LocalDateTime getStartTime();
+    LocalDateTime getEndTime();
+    String getStatus();
+    String getErrorMessage();
+    Integer getFilesProcessed();
+    Integer getFilesSkipped();
+    Integer getFilesDeleted();
+    Integer getDeleteFailures();
+    Long getBytesTransferred();
+    String getNodeId();
+    Long getParentId();
+    Integer getShards();
+}
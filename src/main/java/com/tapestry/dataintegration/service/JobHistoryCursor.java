@@ -0,0 +1,45 @@
+package com.tapestry.dataintegration.service;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes the {@code (startTime, id)} keyset of the last row of a page as an opaque cursor.
+ */
+final class JobHistoryCursor {
+
+    private JobHistoryCursor() {
+    }
+
+    static ScrollPosition decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("startTime", LocalDateTime.parse(parts[0]));
+            keys.put("id", Long.parseLong(parts[1]));
+            return ScrollPosition.forward(keys);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    static CursorPage<JobExecutionSummary> page(Window<JobExecutionSummary> window) {
+        String next = null;
+        if (window.hasNext() && !window.isEmpty()) {
+            KeysetScrollPosition position = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+            String raw = position.getKeys().get("startTime") + "|" + position.getKeys().get("id");
+            next = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        return new CursorPage<>(window.getContent(), next);
+    }
+}
@@ -0,0 +1,256 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.ClusterCoordinator;
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.config.JobExecutionRollup;
+import com.tapestry.dataintegration.config.RetentionProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the execution history from growing without bound. Every finished day is rolled up
+ * into one {@link JobExecutionRollup} per pipeline, which trend queries read. Once a day is
+ * older than {@code retention.keep-details}, the file manifests of its executions are
+ * archived to {@code <archive-directory>/<pipeline>/<day>.tsv.gz} and its executions and
+ * manifest chunks are deleted together, {@code retention.batch-size} executions per transaction.
+ *
+ * <p>Days are rolled up in order and never purged before their rollup exists, and an archive
+ * is written to a temporary file and moved into place, so a pass cut short anywhere is picked
+ * up by the next one. A day is neither rolled up nor purged while any of its executions is
+ * unfinished, so every run is counted. In cluster mode only the leader runs it.
+ */
+@Component
+@Slf4j
+public class JobHistoryRetention {
+
+    private final RetentionProperties properties;
+    private final JobExecutionRepository jobExecutionRepository;
+    private final JobExecutionRollupRepository rollupRepository;
+    private final ManifestChunkRepository chunkRepository;
+    private final ManifestStore manifestStore;
+    private final ClusterCoordinator clusterCoordinator;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+
+    @Autowired
+    public JobHistoryRetention(RetentionProperties properties, JobExecutionRepository jobExecutionRepository,
+                               JobExecutionRollupRepository rollupRepository, ManifestChunkRepository chunkRepository,
+                               ManifestStore manifestStore, ClusterCoordinator clusterCoordinator,
+                               PlatformTransactionManager transactionManager) {
+        this(properties, jobExecutionRepository, rollupRepository, chunkRepository, manifestStore, clusterCoordinator,
+                transactionManager, Clock.systemDefaultZone());
+    }
+
+    JobHistoryRetention(RetentionProperties properties, JobExecutionRepository jobExecutionRepository,
+                        JobExecutionRollupRepository rollupRepository, ManifestChunkRepository chunkRepository,
+                        ManifestStore manifestStore, ClusterCoordinator clusterCoordinator,
+                        PlatformTransactionManager transactionManager, Clock clock) {
+        this.properties = properties;
+        this.jobExecutionRepository = jobExecutionRepository;
+        this.rollupRepository = rollupRepository;
+        this.chunkRepository = chunkRepository;
+        this.manifestStore = manifestStore;
+        this.clusterCoordinator = clusterCoordinator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+    }
+
+    @Scheduled(fixedDelayString = "#{@retentionProperties.interval}",
+            initialDelayString = "#{@retentionProperties.initialDelay}")
+    public void run() {
+        if (!properties.isEnabled() || !clusterCoordinator.isLeader()) {
+            return;
+        }
+        try {
+            apply();
+        } catch (RuntimeException e) {
+            log.error("Failed to apply job history retention", e);
+        }
+    }
+
+    /**
+     * @return the number of executions deleted
+     */
+    int apply() {
+        LocalDate today = LocalDate.now(clock);
+        LocalDate expired = LocalDateTime.now(clock).minus(properties.getKeepDetails()).toLocalDate();
+        LocalDate rolledUp = rollUp(today);
+        return purge(rolledUp.isBefore(expired) ? rolledUp : expired);
+    }
+
+    /**
+     * Rolls up the days after the last one rolled up, up to yesterday. A day waits while any of
+     * its executions is unfinished, even once expired, and so do the days after it.
+     *
+     * @return the first day not rolled up
+     */
+    private LocalDate rollUp(LocalDate today) {
+        LocalDate day = rollupRepository.findFirstByOrderByDayDesc()
+                .map(rollup -> rollup.getDay().plusDays(1))
+                .or(() -> jobExecutionRepository.findFirstByOrderByStartTimeAsc()
+                        .map(execution -> execution.getStartTime().toLocalDate()))
+                .orElse(today);
+        while (day.isBefore(today)) {
+            Optional<JobExecution> next = jobExecutionRepository
+                    .findFirstByStartTimeGreaterThanEqualOrderByStartTimeAsc(day.atStartOfDay());
+            if (next.isEmpty() || !next.get().getStartTime().toLocalDate().isBefore(today)) {
+                return today;
+            }
+            day = next.get().getStartTime().toLocalDate();
+            List<JobExecution> executions = executionsOn(day);
+            if (executions.stream().anyMatch(execution -> execution.getEndTime() == null)) {
+                log.debug("Not rolling up {} while some of its executions are unfinished", day);
+                return day;
+            }
+            rollupRepository.saveAll(rollUp(day, executions));
+            day = day.plusDays(1);
+        }
+        return day;
+    }
+
+    /**
+     * Shards count towards the run that created them, whose totals already include theirs.
+     */
+    private List<JobExecutionRollup> rollUp(LocalDate day, List<JobExecution> executions) {
+        Map<String, List<JobExecution>> byPipeline = executions.stream()
+                .filter(execution -> execution.getParentId() == null && execution.getEndTime() != null)
+                .collect(Collectors.groupingBy(JobExecution::getPipelineName, TreeMap::new, Collectors.toList()));
+        return byPipeline.entrySet().stream().map(pipeline -> {
+            List<JobExecution> runs = pipeline.getValue();
+            long[] durations = runs.stream()
+                    .mapToLong(run -> Duration.between(run.getStartTime(), run.getEndTime()).toMillis())
+                    .sorted()
+                    .toArray();
+            // Executions recomputed after an interrupted pass replace what was rolled up.
+            JobExecutionRollup rollup = rollupRepository.findByPipelineNameAndDay(pipeline.getKey(), day)
+                    .orElseGet(JobExecutionRollup::new);
+            rollup.setPipelineName(pipeline.getKey());
+            rollup.setDay(day);
+            rollup.setRuns(runs.size());
+            rollup.setFailures((int) runs.stream().filter(run -> "FAILED".equals(run.getStatus())).count());
+            rollup.setFilesProcessed(runs.stream().map(JobExecution::getFilesProcessed)
+                    .filter(Objects::nonNull).mapToLong(Integer::longValue).sum());
+            rollup.setBytesTransferred(runs.stream().map(JobExecution::getBytesTransferred)
+                    .filter(Objects::nonNull).mapToLong(Long::longValue).sum());
+            rollup.setP50DurationMillis(percentile(durations, 0.50));
+            rollup.setP95DurationMillis(percentile(durations, 0.95));
+            return rollup;
+        }).toList();
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.max(0, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    /**
+     * Archives and deletes the executions that started before {@code before}, oldest day first.
+     * Every day before it is rolled up, so all its executions are finished.
+     */
+    private int purge(LocalDate before) {
+        int deleted = 0;
+        while (true) {
+            Optional<JobExecution> oldest = jobExecutionRepository
+                    .findFirstByStartTimeLessThanAndEndTimeIsNotNullOrderByStartTimeAsc(before.atStartOfDay());
+            if (oldest.isEmpty()) {
+                break;
+            }
+            LocalDate day = oldest.get().getStartTime().toLocalDate();
+            List<JobExecution> executions = executionsOn(day).stream()
+                    .filter(execution -> execution.getEndTime() != null)
+                    .toList();
+            executions.stream()
+                    .collect(Collectors.groupingBy(JobExecution::getPipelineName, TreeMap::new, Collectors.toList()))
+                    .forEach((pipeline, runs) -> archive(pipeline, day, runs));
+            List<Long> ids = executions.stream().map(JobExecution::getId).toList();
+            for (int from = 0; from < ids.size(); from += properties.getBatchSize()) {
+                List<Long> batch = ids.subList(from, Math.min(ids.size(), from + properties.getBatchSize()));
+                transactionTemplate.executeWithoutResult(status -> {
+                    chunkRepository.deleteByJobExecutionIds(batch);
+                    jobExecutionRepository.deleteAllByIdInBatch(batch);
+                });
+            }
+            deleted += ids.size();
+            log.info("Archived and deleted {} execution(s) from {}", ids.size(), day);
+        }
+        return deleted;
+    }
+
+    private List<JobExecution> executionsOn(LocalDate day) {
+        return jobExecutionRepository.findByStartTimeGreaterThanEqualAndStartTimeLessThanOrderByIdAsc(
+                day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Writes a comment line per execution followed by its manifest as tab-separated source,
+     * target and, when verified, checksum. An archive already in place is from a pass that
+     * was interrupted while deleting, and is kept.
+     */
+    private void archive(String pipeline, LocalDate day, List<JobExecution> executions) {
+        Path file = archiveFile(pipeline, day);
+        if (Files.exists(file)) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path partial = file.resolveSibling(file.getFileName() + ".partial");
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(partial)), StandardCharsets.UTF_8))) {
+                for (JobExecution execution : executions) {
+                    writer.write("# " + execution.getId() + '\t' + execution.getStatus() + '\t'
+                            + execution.getStartTime() + '\t' + execution.getEndTime() + '\n');
+                    try (Stream<ManifestStore.Entry> entries = manifestStore.read(execution.getId())) {
+                        for (Iterator<ManifestStore.Entry> it = entries.iterator(); it.hasNext(); ) {
+                            ManifestStore.Entry entry = it.next();
+                            writer.write(entry.source);
+                            writer.write('\t');
+                            writer.write(entry.target);
+                            if (entry.checksum != null) {
+                                writer.write('\t');
+                                writer.write(entry.checksum);
+                            }
+                            writer.write('\n');
+                        }
+                    }
+                }
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to archive the executions of " + pipeline + " on " + day, e);
+        }
+    }
+
+    Path archiveFile(String pipeline, LocalDate day) {
+        return Paths.get(properties.getArchiveDirectory(), pipeline, day + ".tsv.gz");
+    }
+}
@@ -0,0 +1,220 @@
+package com.tapestry.dataintegration.service;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress of one pipeline run, updated by the transfer engines as files are discovered
+ * and completed. Totals grow while the source is still being listed, so "remaining" is relative
+ * to what has been discovered so far until {@code listingComplete} is set.
+ */
+public class JobProgress {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String SKIPPED = "SKIPPED";
+    public static final String CANCELLED = "CANCELLED";
+    /** A run the process died during; it can be resumed from its manifest. */
+    public static final String INTERRUPTED = "INTERRUPTED";
+
+    private static final long SAMPLE_INTERVAL_NANOS = 500_000_000L;
+    private static final long THROUGHPUT_WINDOW_NANOS = 10_000_000_000L;
+
+    private final String runId = UUID.randomUUID().toString();
+    private final String pipelineName;
+    private final AtomicLong filesListed = new AtomicLong();
+    private final AtomicLong bytesListed = new AtomicLong();
+    private final AtomicLong filesDone = new AtomicLong();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong filesFailed = new AtomicLong();
+    private final Deque<long[]> samples = new ArrayDeque<>();
+    private final List<Runnable> onFinished = new ArrayList<>();
+
+    private volatile Listener listener;
+    private volatile String status = QUEUED;
+    private volatile boolean listingComplete;
+    private volatile boolean cancelRequested;
+    private volatile boolean detached;
+    private volatile LocalDateTime startTime;
+    private volatile LocalDateTime endTime;
+    private volatile Long jobExecutionId;
+    private volatile String errorMessage;
+
+    public JobProgress(String pipelineName) {
+        this.pipelineName = pipelineName;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getPipelineName() {
+        return pipelineName;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void started() {
+        startTime = LocalDateTime.now();
+        status = RUNNING;
+    }
+
+    public void fileListed(long bytes) {
+        filesListed.incrementAndGet();
+        bytesListed.addAndGet(bytes);
+    }
+
+    public void listingComplete() {
+        listingComplete = true;
+    }
+
+    public void fileDone(long bytes) {
+        filesDone.incrementAndGet();
+        bytesDone.addAndGet(bytes);
+        sample();
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.fileDone(bytes);
+        }
+    }
+
+    public void fileFailed() {
+        filesFailed.incrementAndGet();
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.fileFailed();
+        }
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Marks a run that goes on after the thread that started it returns, such as a sharded run
+     * the shard workers finish; whoever finishes it calls {@link #finished}.
+     */
+    public void detach() {
+        detached = true;
+    }
+
+    public boolean isDetached() {
+        return detached;
+    }
+
+    public boolean isFinished() {
+        return endTime != null;
+    }
+
+    public void finished(String status, Long jobExecutionId, String errorMessage) {
+        List<Runnable> callbacks;
+        synchronized (onFinished) {
+            this.jobExecutionId = jobExecutionId;
+            this.errorMessage = errorMessage;
+            this.status = status;
+            this.endTime = LocalDateTime.now();
+            callbacks = new ArrayList<>(onFinished);
+            onFinished.clear();
+        }
+        callbacks.forEach(Runnable::run);
+    }
+
+    /**
+     * Runs the callback once the run has finished, right away if it already has.
+     */
+    public void whenFinished(Runnable callback) {
+        synchronized (onFinished) {
+            if (endTime == null) {
+                onFinished.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        synchronized (samples) {
+            long[] last = samples.peekLast();
+            if (last == null || now - last[0] >= SAMPLE_INTERVAL_NANOS) {
+                samples.addLast(new long[]{now, filesDone.get(), bytesDone.get()});
+                while (samples.size() > 2 && now - samples.peekFirst()[0] > THROUGHPUT_WINDOW_NANOS) {
+                    samples.pollFirst();
+                }
+            }
+        }
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.runId = runId;
+        snapshot.pipelineName = pipelineName;
+        snapshot.status = status;
+        snapshot.startTime = startTime;
+        snapshot.endTime = endTime;
+        snapshot.listingComplete = listingComplete;
+        snapshot.filesListed = filesListed.get();
+        snapshot.bytesListed = bytesListed.get();
+        snapshot.filesDone = filesDone.get();
+        snapshot.bytesDone = bytesDone.get();
+        snapshot.filesFailed = filesFailed.get();
+        snapshot.filesRemaining = Math.max(0, snapshot.filesListed - snapshot.filesDone - snapshot.filesFailed);
+        snapshot.bytesRemaining = Math.max(0, snapshot.bytesListed - snapshot.bytesDone);
+        snapshot.jobExecutionId = jobExecutionId;
+        snapshot.errorMessage = errorMessage;
+        synchronized (samples) {
+            long[] first = samples.peekFirst();
+            long now = System.nanoTime();
+            if (first != null && endTime == null && now > first[0]) {
+                double seconds = (now - first[0]) / 1e9;
+                snapshot.filesPerSecond = (snapshot.filesDone - first[1]) / seconds;
+                snapshot.bytesPerSecond = (snapshot.bytesDone - first[2]) / seconds;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Notified from the transfer threads as each file completes.
+     */
+    public interface Listener {
+        void fileDone(long bytes);
+
+        void fileFailed();
+    }
+
+    @Data
+    public static class Snapshot {
+        private String runId;
+        private String pipelineName;
+        private String status;
+        private LocalDateTime startTime;
+        private LocalDateTime endTime;
+        private boolean listingComplete;
+        private long filesListed;
+        private long bytesListed;
+        private long filesDone;
+        private long bytesDone;
+        private long filesFailed;
+        private long filesRemaining;
+        private long bytesRemaining;
+        /** Throughput over roughly the last ten seconds. */
+        private double filesPerSecond;
+        private double bytesPerSecond;
+        private Long jobExecutionId;
+        private String errorMessage;
+    }
+}
@@ -0,0 +1,51 @@
+package com.tapestry.dataintegration.service;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of queued, running and recently finished pipeline runs, keyed by run id.
+ * Finished runs stay visible for {@value #RETENTION_MINUTES} minutes; after that the persisted
+ * {@code JobExecution} is the record of the run.
+ */
+@Component
+public class JobRunRegistry {
+
+    static final long RETENTION_MINUTES = 60;
+
+    private final Map<String, JobProgress> runs = new ConcurrentHashMap<>();
+
+    public JobProgress register(String pipelineName) {
+        JobProgress progress = new JobProgress(pipelineName);
+        runs.put(progress.getRunId(), progress);
+        return progress;
+    }
+
+    public JobProgress get(String runId) {
+        return runs.get(runId);
+    }
+
+    public List<JobProgress.Snapshot> snapshots() {
+        return runs.values().stream()
+                .map(JobProgress::snapshot)
+                .sorted(Comparator.comparing(JobProgress.Snapshot::getStartTime,
+                        Comparator.nullsFirst(Comparator.reverseOrder())))
+                .collect(Collectors.toList());
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(RETENTION_MINUTES);
+        runs.values().removeIf(progress -> {
+            LocalDateTime endTime = progress.snapshot().getEndTime();
+            return endTime != null && endTime.isBefore(cutoff);
+        });
+    }
+}
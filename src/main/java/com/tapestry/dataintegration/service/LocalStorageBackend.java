@@ -0,0 +1,217 @@
+package com.tapestry.dataintegration.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Plain filesystem paths; the fallback for any location without a recognised scheme. Ranged
+ * reads and part writes use positional {@link FileChannel} I/O, so parts of one file can be
+ * read or written by several threads at once.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+@Slf4j
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final int PART_BUFFER_SIZE = 1024 * 1024;
+
+    @Override
+    public boolean supports(String location) {
+        return !location.contains("://") || location.startsWith("file://");
+    }
+
+    @Override
+    public Stream<StorageObject> list(String location) {
+        Path root = path(location);
+        try {
+            return Files.walk(root)
+                    .filter(Files::isRegularFile)
+                    .map(file -> new StorageObject(file.toString(),
+                            root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"),
+                            size(file)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list " + location, e);
+        }
+    }
+
+    @Override
+    public String resolve(String location, String relativePath) {
+        return relativePath.isEmpty() ? location : path(location).resolve(relativePath).toString();
+    }
+
+    @Override
+    public InputStream openRead(String location, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(path(location), StandardOpenOption.READ);
+            channel.position(offset);
+            return new RangeInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open " + location, e);
+        }
+    }
+
+    @Override
+    public void write(String location, InputStream content, long size) {
+        Path target = path(location);
+        try {
+            createParent(target);
+            Files.copy(content, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + location, e);
+        }
+    }
+
+    @Override
+    public PartWriter openMultipartWrite(String location, long size) {
+        Path target = path(location);
+        FileChannel channel;
+        try {
+            createParent(target);
+            channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open " + location, e);
+        }
+        return new PartWriter() {
+            @Override
+            public void writePart(int partNumber, long offset, InputStream content, long length) {
+                byte[] buffer = new byte[(int) Math.min(PART_BUFFER_SIZE, Math.max(1, length))];
+                long position = offset;
+                try {
+                    int read;
+                    while ((read = content.read(buffer)) > 0) {
+                        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                        while (bytes.hasRemaining()) {
+                            position += channel.write(bytes, position);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to write part " + partNumber + " of " + location, e);
+                }
+            }
+
+            @Override
+            public void complete() {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to close " + location, e);
+                }
+            }
+
+            @Override
+            public void abort() {
+                try {
+                    channel.close();
+                    Files.deleteIfExists(target);
+                } catch (IOException e) {
+                    log.error("Failed to remove partial file {}: {}", location, e.getMessage());
+                }
+            }
+        };
+    }
+
+    @Override
+    public void copy(String sourceLocation, String targetLocation) {
+        Path target = path(targetLocation);
+        try {
+            createParent(target);
+            Files.copy(path(sourceLocation), target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to copy " + sourceLocation, e);
+        }
+    }
+
+    @Override
+    public DeleteResult delete(Iterator<String> locations, int concurrency) {
+        DeleteResult result = new DeleteResult();
+        while (locations.hasNext()) {
+            String location = locations.next();
+            try {
+                // Already gone counts as done, so a resumed move can replay its manifest.
+                if (Files.deleteIfExists(path(location))) {
+                    result.deleted++;
+                    log.info("Deleted: {}", location);
+                }
+            } catch (IOException e) {
+                result.error(location + ": " + e.getMessage());
+                log.error("Failed to delete {}: {}", location, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the filesystem path of a location this backend supports
+     */
+    public static Path path(String location) {
+        return Paths.get(location.startsWith("file://") ? location.substring("file://".length()) : location);
+    }
+
+    private static void createParent(Path target) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read size of " + file, e);
+        }
+    }
+
+    /**
+     * Stops after {@code remaining} bytes and closes the underlying channel on close.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.tapestry.dataintegration.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Copies and moves local directory trees on the shared transfer executor. File contents go
+ * channel to channel with {@link FileChannel#transferTo}, which lets the kernel copy without
+ * passing the bytes through the heap. Moves within one filesystem are plain renames.
+ *
+ * <p>A verified transfer instead copies through a direct buffer and takes the CRC32C of the
+ * bytes on their way through, then reads the target back and takes its CRC32C too. A copy
+ * counts only if it wrote as many bytes as the file had when it was listed, the source did not
+ * change meanwhile and the target reads back with the source's checksum; a move deletes the
+ * source only after such a copy.
+ */
+@Component
+@Slf4j
+public class LocalTransferEngine {
+
+    private static final ThreadLocal<ByteBuffer> VERIFY_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1024 * 1024));
+
+    private final Executor transferExecutor;
+
+    public LocalTransferEngine(@Qualifier("transferExecutor") Executor transferExecutor) {
+        this.transferExecutor = transferExecutor;
+    }
+
+    public TransferResult copy(List<TreeMapping> trees, int concurrency, JobProgress progress,
+                               ManifestSink manifest) {
+        return copy(trees, concurrency, progress, manifest, file -> false);
+    }
+
+    /**
+     * @param done files an interrupted run already copied, which are left alone
+     */
+    public TransferResult copy(List<TreeMapping> trees, int concurrency, JobProgress progress,
+                               ManifestSink manifest, Predicate<Path> done) {
+        return copy(trees, concurrency, progress, manifest, done, false);
+    }
+
+    public TransferResult copy(List<TreeMapping> trees, int concurrency, JobProgress progress,
+                               ManifestSink manifest, Predicate<Path> done, boolean verify) {
+        return transfer(trees, concurrency, false, verify, progress, manifest, done);
+    }
+
+    /**
+     * Renames each file into place, falling back to copy and delete only once the filesystem
+     * refuses an atomic rename. Source directories emptied by the move are removed afterwards;
+     * anything that arrived in the meantime is left where it is.
+     */
+    public TransferResult move(List<TreeMapping> trees, int concurrency, JobProgress progress,
+                               ManifestSink manifest) {
+        return move(trees, concurrency, progress, manifest, false);
+    }
+
+    public TransferResult move(List<TreeMapping> trees, int concurrency, JobProgress progress,
+                               ManifestSink manifest, boolean verify) {
+        TransferResult result = transfer(trees, concurrency, true, verify, progress, manifest, file -> false);
+        for (TreeMapping tree : trees) {
+            pruneEmptyDirectories(tree);
+        }
+        return result;
+    }
+
+    private TransferResult transfer(List<TreeMapping> trees, int concurrency, boolean move, boolean verify,
+                                    JobProgress progress, ManifestSink manifest, Predicate<Path> done) {
+        TransferResult result = new TransferResult();
+        JobState state = new JobState(verify);
+        OrderedTaskWindow<FileMapping> window = new OrderedTaskWindow<>(transferExecutor, concurrency, file -> {
+            manifest.add(file.source.toString(), file.target.toString(), file.checksum);
+            result.filesTransferred++;
+            progress.fileDone(file.size);
+        });
+
+        for (TreeMapping tree : trees) {
+            try (Stream<Path> paths = Files.walk(tree.source)) {
+                Iterator<Path> iterator = paths.iterator();
+                while (!progress.isCancelRequested() && iterator.hasNext()) {
+                    Path source = iterator.next();
+                    Path target = tree.target.resolve(tree.source.relativize(source).toString());
+                    if (Files.isDirectory(source)) {
+                        state.ensureDirectory(target);
+                    } else if (!done.test(source)) {
+                        FileMapping file = new FileMapping(source, target, Files.size(source));
+                        progress.fileListed(file.size);
+                        window.submit(file, () -> move ? moveFile(file, state) : copyFile(file, state));
+                    }
+                }
+            } catch (IOException e) {
+                window.finish();
+                throw new UncheckedIOException("Failed to walk " + tree.source, e);
+            }
+        }
+        if (!progress.isCancelRequested()) {
+            progress.listingComplete();
+        }
+        window.finish();
+        return result;
+    }
+
+    private boolean copyFile(FileMapping file, JobState state) {
+        try {
+            state.ensureDirectory(file.target.getParent());
+            copyContents(file, state);
+            log.info("Copied file: {} to {}", file.source, file.target);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to copy file: " + file.source, e);
+        }
+    }
+
+    private boolean moveFile(FileMapping file, JobState state) {
+        try {
+            state.ensureDirectory(file.target.getParent());
+            if (state.renameSupported) {
+                try {
+                    Files.move(file.source, file.target, StandardCopyOption.ATOMIC_MOVE);
+                    log.info("Moved file: {} to {}", file.source, file.target);
+                    return true;
+                } catch (AtomicMoveNotSupportedException e) {
+                    log.info("Source and target are on different filesystems, moving by copy and delete");
+                    state.renameSupported = false;
+                }
+            }
+            copyContents(file, state);
+            Files.delete(file.source);
+            log.info("Moved file: {} to {}", file.source, file.target);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to move file: " + file.source, e);
+        }
+    }
+
+    private void copyContents(FileMapping file, JobState state) throws IOException {
+        if (!state.verify) {
+            transferContents(file.source, file.target);
+            return;
+        }
+        FileTime modified = Files.getLastModifiedTime(file.source);
+        CRC32C crc = new CRC32C();
+        long written = 0;
+        try (FileChannel in = FileChannel.open(file.source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(file.target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = VERIFY_BUFFER.get().clear();
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    written += out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        if (written != file.size || Files.size(file.source) != file.size
+                || !Files.getLastModifiedTime(file.source).equals(modified)) {
+            throw new IOException("Verification failed, " + file.source + " changed while it was copied");
+        }
+        long copied = crc32c(file.target);
+        if (copied != crc.getValue()) {
+            throw new IOException("Verification failed, " + file.target + " has CRC32C "
+                    + Checksums.crc32c(copied) + " instead of " + Checksums.crc32c(crc.getValue()));
+        }
+        file.checksum = Checksums.crc32c(crc.getValue());
+    }
+
+    private static long crc32c(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = VERIFY_BUFFER.get().clear();
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private void transferContents(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    private void pruneEmptyDirectories(TreeMapping tree) {
+        pruneEmptyDirectories(tree.source, tree.removeRoot);
+    }
+
+    /**
+     * Removes the empty directories below {@code root}, and {@code root} itself if asked to and
+     * empty, once the files of a move have been deleted from it.
+     */
+    public void pruneEmptyDirectories(Path root, boolean removeRoot) {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        List<Path> directories = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isDirectory)
+                    .filter(path -> removeRoot || !path.equals(root))
+                    .forEach(directories::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to walk " + root, e);
+        }
+        directories.sort(Comparator.reverseOrder());
+        for (Path directory : directories) {
+            try {
+                Files.delete(directory);
+                log.info("Deleted: {}", directory);
+            } catch (DirectoryNotEmptyException e) {
+                log.debug("Keeping non-empty directory {}", directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete: " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * Per-job state shared by the transfer threads. Directories are created once per job;
+     * {@code computeIfAbsent} makes concurrent callers for the same directory wait for it.
+     */
+    private static class JobState {
+        final Map<Path, Boolean> directories = new ConcurrentHashMap<>();
+        final boolean verify;
+        volatile boolean renameSupported = true;
+
+        JobState(boolean verify) {
+            this.verify = verify;
+        }
+
+        void ensureDirectory(Path directory) {
+            if (directory == null) {
+                return;
+            }
+            directories.computeIfAbsent(directory, dir -> {
+                try {
+                    Files.createDirectories(dir);
+                    return Boolean.TRUE;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to create directory: " + dir, e);
+                }
+            });
+        }
+    }
+
+    public static class TreeMapping {
+        final Path source;
+        final Path target;
+        final boolean removeRoot;
+
+        /**
+         * @param removeRoot whether a move may delete {@code source} itself once it is empty,
+         *                   as it does for a configured source key but not for the pipeline root
+         */
+        public TreeMapping(Path source, Path target, boolean removeRoot) {
+            this.source = source;
+            this.target = target;
+            this.removeRoot = removeRoot;
+        }
+    }
+
+    private static class FileMapping {
+        final Path source;
+        final Path target;
+        final long size;
+        /** Set by a verified copy before the file is recorded. */
+        volatile String checksum;
+
+        FileMapping(Path source, Path target, long size) {
+            this.source = source;
+            this.target = target;
+            this.size = size;
+        }
+    }
+
+    public static class TransferResult {
+        public int filesTransferred;
+    }
+}
@@ -0,0 +1,33 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.config.ManifestChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ManifestChunkRepository extends JpaRepository<ManifestChunk, Long> {
+    Optional<ManifestChunk> findByJobExecutionIdAndChunkIndex(Long jobExecutionId, int chunkIndex);
+
+    boolean existsByJobExecutionIdAndChunkIndex(Long jobExecutionId, int chunkIndex);
+
+    Optional<ManifestChunk> findFirstByJobExecutionIdOrderByChunkIndexDesc(Long jobExecutionId);
+
+    @Query("select c.fileCount from ManifestChunk c where c.jobExecutionId = :jobExecutionId order by c.chunkIndex")
+    List<Integer> findFileCounts(@Param("jobExecutionId") Long jobExecutionId);
+
+    @Query("select coalesce(sum(c.fileCount), 0) from ManifestChunk c where c.jobExecutionId = :jobExecutionId")
+    long sumFileCounts(@Param("jobExecutionId") Long jobExecutionId);
+
+    @Modifying
+    @Transactional
+    @Query("delete from ManifestChunk c where c.jobExecutionId in :jobExecutionIds")
+    int deleteByJobExecutionIds(@Param("jobExecutionIds") Collection<Long> jobExecutionIds);
+}
@@ -0,0 +1,22 @@
+package com.tapestry.dataintegration.service;
+
+/**
+ * Receives every file a transfer completed, in listing order, from the thread that submitted
+ * the transfers.
+ */
+public interface ManifestSink {
+    void add(String source, String target);
+
+    /**
+     * @param checksum what the transfer verified the target against, see {@link Checksums}
+     */
+    default void add(String source, String target, String checksum) {
+        add(source, target);
+    }
+
+    /**
+     * Receives a file whose transfer failed, in the same order, so a resumed run retries it.
+     */
+    default void failed(String source) {
+    }
+}
@@ -0,0 +1,349 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.config.ManifestChunk;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists job file manifests as gzip-compressed chunks of {@value #CHUNK_SIZE} records,
+ * written while the job runs, so neither the heap nor the database sees one object per file.
+ * A record is either a transferred file, with its source, target and checksum, empty when the
+ * run did not verify, or the source of a file that failed, which only resuming reads. The chunk
+ * being filled is rewritten every {@value #CHECKPOINT_SIZE} records or
+ * {@value #CHECKPOINT_SECONDS} seconds, which makes the manifest the checkpoint an interrupted
+ * job resumes from.
+ */
+@Component
+@Slf4j
+public class ManifestStore {
+
+    static final int CHUNK_SIZE = 5000;
+    static final int CHECKPOINT_SIZE = 500;
+    static final long CHECKPOINT_SECONDS = 10;
+    private static final byte FILE = 0;
+    private static final byte FAILED = 1;
+
+    private final ManifestChunkRepository chunkRepository;
+
+    public ManifestStore(ManifestChunkRepository chunkRepository) {
+        this.chunkRepository = chunkRepository;
+    }
+
+    public Writer open(Long jobExecutionId) {
+        return new Writer(jobExecutionId);
+    }
+
+    /**
+     * Continues the manifest of an interrupted job after its last checkpoint.
+     */
+    public Writer resume(Long jobExecutionId) {
+        Writer writer = new Writer(jobExecutionId);
+        chunkRepository.findFirstByJobExecutionIdOrderByChunkIndexDesc(jobExecutionId).ifPresent(last -> {
+            writer.total = count(jobExecutionId);
+            List<Entry> records = decode(last.getData());
+            if (records.size() < CHUNK_SIZE) {
+                writer.chunk = last;
+                writer.chunkIndex = last.getChunkIndex();
+                writer.pending.addAll(records);
+                writer.files = last.getFileCount();
+                writer.checkpointed = writer.pending.size();
+            } else {
+                writer.chunkIndex = last.getChunkIndex() + 1;
+            }
+        });
+        return writer;
+    }
+
+    /**
+     * @return the number of entries checkpointed for a job
+     */
+    public int count(Long jobExecutionId) {
+        return (int) chunkRepository.sumFileCounts(jobExecutionId);
+    }
+
+    public ResumePoint resumePoint(Long jobExecutionId) {
+        boolean recorded = chunkRepository.existsByJobExecutionIdAndChunkIndex(jobExecutionId, 0);
+        return recorded ? new ResumePoint(this, jobExecutionId) : ResumePoint.NONE;
+    }
+
+    /**
+     * Streams the manifest of a job one chunk at a time; close the stream when done.
+     */
+    public Stream<Entry> read(Long jobExecutionId) {
+        return records(jobExecutionId).filter(Entry::isFile);
+    }
+
+    private Stream<Entry> records(Long jobExecutionId) {
+        return Stream.iterate(0, index -> index + 1)
+                .map(index -> chunkRepository.findByJobExecutionIdAndChunkIndex(jobExecutionId, index))
+                .takeWhile(Optional::isPresent)
+                .flatMap(chunk -> decode(chunk.get().getData()).stream());
+    }
+
+    /**
+     * Returns up to {@code limit} entries starting at {@code offset}. The file count of every
+     * chunk is stored with it, so only the chunks covering the page are read.
+     */
+    public CursorPage<Entry> page(Long jobExecutionId, int offset, int limit) {
+        List<Integer> fileCounts = chunkRepository.findFileCounts(jobExecutionId);
+        List<Entry> items = new ArrayList<>();
+        int chunkIndex = 0;
+        int skip = offset;
+        while (chunkIndex < fileCounts.size() && skip >= fileCounts.get(chunkIndex)) {
+            skip -= fileCounts.get(chunkIndex++);
+        }
+        boolean more = false;
+        for (; chunkIndex < fileCounts.size(); chunkIndex++) {
+            List<Entry> entries = chunkRepository.findByJobExecutionIdAndChunkIndex(jobExecutionId, chunkIndex)
+                    .map(chunk -> decode(chunk.getData()).stream().filter(Entry::isFile).toList())
+                    .orElse(List.of());
+            int end = Math.min(entries.size(), skip + limit - items.size());
+            if (skip < end) {
+                items.addAll(entries.subList(skip, end));
+            }
+            skip = 0;
+            if (items.size() == limit) {
+                more = end < entries.size() || fileCounts.subList(chunkIndex + 1, fileCounts.size()).stream()
+                        .anyMatch(count -> count > 0);
+                break;
+            }
+        }
+        return new CursorPage<>(items, more ? String.valueOf(offset + items.size()) : null);
+    }
+
+    private static List<Entry> decode(byte[] data) {
+        List<Entry> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            while (true) {
+                byte kind;
+                try {
+                    kind = in.readByte();
+                } catch (EOFException e) {
+                    return records;
+                }
+                String source = in.readUTF();
+                if (kind == FAILED) {
+                    records.add(new Entry(source, null));
+                    continue;
+                }
+                String target = in.readUTF();
+                String checksum = in.readUTF();
+                records.add(new Entry(source, target, checksum.isEmpty() ? null : checksum));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode manifest chunk", e);
+        }
+    }
+
+    private static byte[] encode(List<Entry> records) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(buffer))) {
+            for (Entry record : records) {
+                out.writeByte(record.isFile() ? FILE : FAILED);
+                out.writeUTF(record.source);
+                if (record.isFile()) {
+                    out.writeUTF(record.target);
+                    out.writeUTF(record.checksum == null ? "" : record.checksum);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode manifest chunk", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Buffers the records of the chunk being filled and checkpoints it by rewriting its row,
+     * so every chunk but the last stays full. Not thread-safe; the transfer engines call it
+     * from the submitting thread only.
+     */
+    public class Writer implements ManifestSink {
+        private final Long jobExecutionId;
+        private final List<Entry> pending = new ArrayList<>();
+        private ManifestChunk chunk;
+        private int chunkIndex;
+        /** Files among the pending records. */
+        private int files;
+        private int checkpointed;
+        private long lastCheckpoint = System.nanoTime();
+        private int total;
+
+        Writer(Long jobExecutionId) {
+            this.jobExecutionId = jobExecutionId;
+        }
+
+        @Override
+        public void add(String source, String target) {
+            add(source, target, null);
+        }
+
+        @Override
+        public void add(String source, String target, String checksum) {
+            files++;
+            total++;
+            append(new Entry(source, target, checksum));
+        }
+
+        @Override
+        public void failed(String source) {
+            append(new Entry(source, null));
+        }
+
+        private void append(Entry record) {
+            pending.add(record);
+            if (pending.size() == CHUNK_SIZE) {
+                flush();
+                chunk = null;
+                chunkIndex++;
+                pending.clear();
+                files = 0;
+                checkpointed = 0;
+            } else if (pending.size() - checkpointed >= CHECKPOINT_SIZE
+                    || System.nanoTime() - lastCheckpoint >= TimeUnit.SECONDS.toNanos(CHECKPOINT_SECONDS)) {
+                flush();
+            }
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Checkpoints the chunk being filled, if it has entries not yet written.
+         */
+        public void flush() {
+            lastCheckpoint = System.nanoTime();
+            if (pending.size() == checkpointed) {
+                return;
+            }
+            if (chunk == null) {
+                chunk = new ManifestChunk();
+                chunk.setJobExecutionId(jobExecutionId);
+                chunk.setChunkIndex(chunkIndex);
+            }
+            chunk.setFileCount(files);
+            chunk.setData(encode(pending));
+            chunk = chunkRepository.save(chunk);
+            checkpointed = pending.size();
+            log.debug("Checkpointed manifest chunk {} of job {} with {} file(s)", chunkIndex, jobExecutionId,
+                    files);
+        }
+    }
+
+    /**
+     * What an interrupted job had finished, read back from its manifest. The engines record
+     * files in listing order, and an S3 listing keeps key order within each folder directly
+     * below its prefix even when it lists folders in parallel, so {@link #listedDone} needs only
+     * the last key recorded per folder and the keys that failed. Other sources skip every
+     * recorded file, loaded on first use.
+     */
+    public static class ResumePoint {
+        public static final ResumePoint NONE = new ResumePoint(null, null);
+
+        private final ManifestStore store;
+        private final Long jobExecutionId;
+        private Set<String> sources;
+
+        ResumePoint(ManifestStore store, Long jobExecutionId) {
+            this.store = store;
+            this.jobExecutionId = jobExecutionId;
+        }
+
+        /**
+         * @return whether the interrupted job recorded nothing
+         */
+        public boolean isEmpty() {
+            return store == null;
+        }
+
+        public boolean isDone(String source) {
+            if (store == null) {
+                return false;
+            }
+            if (sources == null) {
+                try (Stream<Entry> entries = store.read(jobExecutionId)) {
+                    sources = entries.map(entry -> entry.source).collect(Collectors.toSet());
+                }
+            }
+            return sources.contains(source);
+        }
+
+        /**
+         * Reads the manifest once and tells which keys of an S3 listing of {@code prefix} are
+         * done: those up to the last key recorded in their folder that did not fail. Keys that
+         * failed and were copied by a later resume count as done again.
+         */
+        public Predicate<String> listedDone(String prefix) {
+            if (store == null) {
+                return key -> false;
+            }
+            Map<String, String> lastByFolder = new HashMap<>();
+            Set<String> failed = new HashSet<>();
+            try (Stream<Entry> records = store.records(jobExecutionId)) {
+                records.forEach(record -> {
+                    if (!record.isFile()) {
+                        failed.add(record.source);
+                        return;
+                    }
+                    failed.remove(record.source);
+                    lastByFolder.merge(folder(prefix, record.source), record.source,
+                            (last, key) -> S3Keys.compare(key, last) > 0 ? key : last);
+                });
+            }
+            return key -> {
+                String last = lastByFolder.get(folder(prefix, key));
+                return last != null && S3Keys.compare(key, last) <= 0 && !failed.contains(key);
+            };
+        }
+
+        private static String folder(String prefix, String key) {
+            int delimiter = key.indexOf('/', prefix.length());
+            return delimiter < 0 ? "" : key.substring(prefix.length(), delimiter + 1);
+        }
+    }
+
+    public static class Entry {
+        public final String source;
+        public final String target;
+        /** What the target was verified against, or {@code null} when the run did not verify. */
+        public final String checksum;
+
+        public Entry(String source, String target) {
+            this(source, target, null);
+        }
+
+        public Entry(String source, String target, String checksum) {
+            this.source = source;
+            this.target = target;
+            this.checksum = checksum;
+        }
+
+        /**
+         * @return false for the record of a file that failed, which has no target
+         */
+        boolean isFile() {
+            return target != null;
+        }
+    }
+}
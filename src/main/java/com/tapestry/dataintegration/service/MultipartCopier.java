@@ -0,0 +1,215 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.tapestry.dataintegration.config.TransferProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copies a large object with UploadPartCopy, running the parts in parallel on a dedicated
+ * executor. Parts must not share the transfer executor: the object-level copy that waits for
+ * them already occupies one of its threads, and a saturated pool would deadlock.
+ */
+@Component
+@Slf4j
+public class MultipartCopier {
+
+    /** S3 rejects parts smaller than this, except for the last part of an upload. */
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    /** The most parts S3 accepts for one upload. */
+    public static final int MAX_PARTS = 10_000;
+    /** The largest object a single CopyObject request copies. */
+    public static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+
+    private final AmazonS3 s3Client;
+    private final Executor partCopyExecutor;
+    private final TransferProperties transferProperties;
+    private final S3RateController rateController;
+
+    public MultipartCopier(AmazonS3 s3Client,
+                           @Qualifier("partCopyExecutor") Executor partCopyExecutor,
+                           TransferProperties transferProperties,
+                           S3RateController rateController) {
+        this.s3Client = s3Client;
+        this.partCopyExecutor = partCopyExecutor;
+        this.transferProperties = transferProperties;
+        this.rateController = rateController;
+    }
+
+    public boolean shouldUseMultipart(long size) {
+        return size >= transferProperties.getMultipartThreshold();
+    }
+
+    /**
+     * @return {@code configured}, raised as far as needed for {@code size} bytes to fit in
+     * {@link #MAX_PARTS} parts
+     */
+    public static long partSize(long configured, long size) {
+        return Math.max(configured, (size + MAX_PARTS - 1) / MAX_PARTS);
+    }
+
+    public String copy(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                       ObjectMetadata sourceMetadata) {
+        return copy(sourceBucket, sourceKey, targetBucket, targetKey, sourceMetadata, false);
+    }
+
+    /**
+     * @param verify whether to copy each part only while the source still has the ETag it was
+     *               read with, and to copy a source written in parts with the same part sizes
+     *               so the copy must end up with the source's ETag
+     * @return the ETag of the copy; when verifying, {@code null} if the source's part layout
+     * is unknown and the copy could not be checked against it
+     */
+    public String copy(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                       ObjectMetadata sourceMetadata, boolean verify) {
+        long size = sourceMetadata.getContentLength();
+        Long sourcePartSize = verify ? sourcePartSize(sourceBucket, sourceKey, sourceMetadata) : null;
+        long partSize = sourcePartSize != null ? sourcePartSize
+                : partSize(transferProperties.getMultipartPartSize(), size);
+
+        String uploadId = rateController.call(targetBucket, targetKey,
+                () -> s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(
+                        targetBucket, targetKey, copyableMetadata(sourceMetadata)))).getUploadId();
+
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+        int partNumber = 1;
+        for (long offset = 0; offset < size; offset += partSize, partNumber++) {
+            CopyPartRequest request = new CopyPartRequest()
+                    .withSourceBucketName(sourceBucket)
+                    .withSourceKey(sourceKey)
+                    .withDestinationBucketName(targetBucket)
+                    .withDestinationKey(targetKey)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withFirstByte(offset)
+                    .withLastByte(Math.min(offset + partSize, size) - 1);
+            if (verify) {
+                request.withMatchingETagConstraint(sourceMetadata.getETag());
+            }
+            parts.add(CompletableFuture.supplyAsync(() -> copyPart(request, failure), partCopyExecutor));
+        }
+
+        try {
+            List<PartETag> partETags = new ArrayList<>(parts.size());
+            for (CompletableFuture<PartETag> part : parts) {
+                partETags.add(part.join());
+            }
+            String eTag = rateController.call(targetBucket, targetKey, () -> s3Client.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(targetBucket, targetKey, uploadId, partETags))).getETag();
+            log.debug("Completed multipart copy of {} in {} part(s)", sourceKey, partETags.size());
+            if (sourcePartSize != null && !sourceMetadata.getETag().equals(eTag)) {
+                throw new IllegalStateException("Verification failed, " + targetKey + " has ETag " + eTag
+                        + " instead of " + sourceMetadata.getETag());
+            }
+            return verify && sourcePartSize == null ? null : eTag;
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            // Let in-flight parts settle first; a part landing after the abort would leak storage.
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                    .exceptionally(ignored -> null)
+                    .join();
+            abort(targetBucket, targetKey, uploadId);
+            RuntimeException cause = failure.get();
+            throw cause instanceof CompletionException && cause.getCause() instanceof RuntimeException
+                    ? (RuntimeException) cause.getCause() : cause;
+        }
+    }
+
+    /**
+     * S3 gives an object written in parts the ETag {@code <md5 of part md5s>-<parts>}, so a copy
+     * made of parts of the same sizes has the same ETag. The first and last part sizes are read
+     * back; the parts between are taken to be as large as the first, as uploaders write them.
+     *
+     * @return the part size of the source, or {@code null} when it was not written in parts of
+     * one size
+     */
+    private Long sourcePartSize(String bucket, String key, ObjectMetadata metadata) {
+        String eTag = metadata.getETag();
+        int dash = eTag == null ? -1 : eTag.lastIndexOf('-');
+        int parts;
+        try {
+            parts = dash < 0 ? 0 : Integer.parseInt(eTag.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (parts < 1 || parts > MAX_PARTS) {
+            return null;
+        }
+        long size = metadata.getContentLength();
+        long first = partLength(bucket, key, 1);
+        if (first <= 0 || (size + first - 1) / first != parts
+                || parts > 1 && partLength(bucket, key, parts) != size - (parts - 1) * first) {
+            return null;
+        }
+        return first;
+    }
+
+    private long partLength(String bucket, String key, int partNumber) {
+        return rateController.call(bucket, key, () -> s3Client.getObjectMetadata(
+                new GetObjectMetadataRequest(bucket, key).withPartNumber(partNumber))).getContentLength();
+    }
+
+    private PartETag copyPart(CopyPartRequest request, AtomicReference<RuntimeException> failure) {
+        if (failure.get() != null) {
+            throw new CancellationException("Multipart copy aborted before part " + request.getPartNumber());
+        }
+        try {
+            CopyPartResult result = rateController.call(request.getDestinationBucketName(),
+                    request.getDestinationKey(), () -> s3Client.copyPart(request));
+            if (result == null) {
+                // The SDK returns no result when a constraint stopped the copy.
+                throw new IllegalStateException("Verification failed, " + request.getSourceKey()
+                        + " changed while it was copied");
+            }
+            return result.getPartETag();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            rateController.run(bucket, key,
+                    () -> s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId)));
+        } catch (Exception e) {
+            log.error("Failed to abort multipart upload {} for {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    private ObjectMetadata copyableMetadata(ObjectMetadata source) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (source.getContentType() != null) {
+            metadata.setContentType(source.getContentType());
+        }
+        if (source.getContentEncoding() != null) {
+            metadata.setContentEncoding(source.getContentEncoding());
+        }
+        if (source.getContentDisposition() != null) {
+            metadata.setContentDisposition(source.getContentDisposition());
+        }
+        if (source.getCacheControl() != null) {
+            metadata.setCacheControl(source.getCacheControl());
+        }
+        metadata.setUserMetadata(source.getUserMetadata());
+        return metadata;
+    }
+}
@@ -0,0 +1,100 @@
+package com.tapestry.dataintegration.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs per-file transfer tasks on a shared executor with at most {@code concurrency} in
+ * flight, and hands successful items to {@code onSuccess} and failed ones to
+ * {@code onFailure} in submission order so manifests keep the listing order. Completed items
+ * wait in a window capped at a small multiple of the concurrency, which keeps memory flat
+ * however many items are submitted.
+ */
+class OrderedTaskWindow<T> {
+
+    private static final int PENDING_WINDOW_FACTOR = 4;
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final int windowLimit;
+    private final Consumer<T> onSuccess;
+    private final Consumer<T> onFailure;
+    private final Deque<Pending<T>> window = new ArrayDeque<>();
+
+    OrderedTaskWindow(Executor executor, int concurrency, Consumer<T> onSuccess) {
+        this(executor, concurrency, onSuccess, item -> {
+        });
+    }
+
+    OrderedTaskWindow(Executor executor, int concurrency, Consumer<T> onSuccess, Consumer<T> onFailure) {
+        int permitCount = Math.max(1, concurrency);
+        this.executor = executor;
+        this.permits = new Semaphore(permitCount);
+        this.windowLimit = permitCount * PENDING_WINDOW_FACTOR;
+        this.onSuccess = onSuccess;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * Blocks until a permit is free. A task returns {@code false} for a failure it has already
+     * handled; an exception aborts the whole run once in-flight tasks have settled.
+     */
+    void submit(T item, Supplier<Boolean> task) {
+        permits.acquireUninterruptibly();
+        try {
+            window.addLast(new Pending<>(item, CompletableFuture
+                    .supplyAsync(task, executor)
+                    .whenComplete((done, e) -> permits.release())));
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+        drain(windowLimit);
+    }
+
+    void finish() {
+        drain(0);
+    }
+
+    private void drain(int limit) {
+        while (!window.isEmpty() && (window.size() > limit || window.peekFirst().future.isDone())) {
+            Pending<T> head = window.pollFirst();
+            boolean succeeded;
+            try {
+                succeeded = head.future.join();
+            } catch (CompletionException e) {
+                awaitInFlight();
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            if (succeeded) {
+                onSuccess.accept(head.item);
+            } else {
+                onFailure.accept(head.item);
+            }
+        }
+    }
+
+    private void awaitInFlight() {
+        for (Pending<T> pending : window) {
+            pending.future.exceptionally(e -> false).join();
+        }
+        window.clear();
+    }
+
+    private static class Pending<T> {
+        final T item;
+        final CompletableFuture<Boolean> future;
+
+        Pending(T item, CompletableFuture<Boolean> future) {
+            this.item = item;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.config.PipelineTriggerState;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface PipelineTriggerStateRepository extends JpaRepository<PipelineTriggerState, String> {
+
+    /**
+     * @return 1 if the pipeline's last slot was before {@code slot} and now is {@code slot}
+     */
+    @Modifying
+    @Transactional
+    @Query("update PipelineTriggerState s set s.lastSlot = :slot "
+            + "where s.pipelineName = :pipelineName and (s.lastSlot is null or s.lastSlot < :slot)")
+    int advance(@Param("pipelineName") String pipelineName, @Param("slot") LocalDateTime slot);
+
+    /**
+     * Fails with a {@code DataIntegrityViolationException} when the pipeline already has a state.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into pipeline_trigger_states (pipeline_name, last_slot) values (:pipelineName, :slot)",
+            nativeQuery = true)
+    void insert(@Param("pipelineName") String pipelineName, @Param("slot") LocalDateTime slot);
+
+    /**
+     * Moves the pipeline's last slot forward to {@code slot}, never back, even when nodes
+     * record slots at the same time.
+     */
+    default void recordSlot(String pipelineName, LocalDateTime slot) {
+        if (advance(pipelineName, slot) == 0 && !existsById(pipelineName)) {
+            try {
+                insert(pipelineName, slot);
+            } catch (DataIntegrityViolationException e) {
+                advance(pipelineName, slot);
+            }
+        }
+    }
+
+    @Modifying
+    @Transactional
+    @Query("update PipelineTriggerState s set s.releasedThrough = :since "
+            + "where s.pipelineName = :pipelineName and s.releasedThrough is null")
+    int startReleases(@Param("pipelineName") String pipelineName, @Param("since") LocalDateTime since);
+
+    @Modifying
+    @Transactional
+    @Query(value = "insert into pipeline_trigger_states (pipeline_name, released_through) "
+            + "values (:pipelineName, :since)", nativeQuery = true)
+    void insertReleases(@Param("pipelineName") String pipelineName, @Param("since") LocalDateTime since);
+
+    /**
+     * @return 1 if this call moved the pipeline's release mark from {@code from}, which must be
+     * the value read back from the database, to {@code to}; the caller then releases the run
+     */
+    @Modifying
+    @Transactional
+    @Query("update PipelineTriggerState s set s.releasedThrough = :to "
+            + "where s.pipelineName = :pipelineName and s.releasedThrough = :from")
+    int release(@Param("pipelineName") String pipelineName, @Param("from") LocalDateTime from,
+                @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Transactional
+    @Query("update PipelineTriggerState s set s.releasedThrough = :since where s.pipelineName = :pipelineName")
+    int resetReleases(@Param("pipelineName") String pipelineName, @Param("since") LocalDateTime since);
+
+    /**
+     * Counts upstream runs of the pipeline that succeed after {@code since}, unless it already
+     * counts them from an earlier point.
+     */
+    default void watchUpstream(String pipelineName, LocalDateTime since) {
+        if (startReleases(pipelineName, since) == 0 && !existsById(pipelineName)) {
+            try {
+                insertReleases(pipelineName, since);
+            } catch (DataIntegrityViolationException e) {
+                startReleases(pipelineName, since);
+            }
+        }
+    }
+}
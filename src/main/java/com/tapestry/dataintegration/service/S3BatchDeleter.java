@@ -0,0 +1,150 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Deletes an explicit set of keys with multi-object DeleteObjects requests of up to
+ * {@value #MAX_BATCH_SIZE} keys, running the batches in parallel on the transfer executor.
+ */
+@Component
+@Slf4j
+public class S3BatchDeleter {
+
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private final AmazonS3 s3Client;
+    private final Executor transferExecutor;
+    private final S3RateController rateController;
+
+    public S3BatchDeleter(AmazonS3 s3Client,
+                          @Qualifier("transferExecutor") Executor transferExecutor,
+                          S3RateController rateController) {
+        this.s3Client = s3Client;
+        this.transferExecutor = transferExecutor;
+        this.rateController = rateController;
+    }
+
+    public DeleteResult delete(String bucket, List<String> keys, int concurrency) {
+        return delete(bucket, keys.iterator(), concurrency);
+    }
+
+    /**
+     * Pulls keys from the iterator a batch at a time, so a long key stream is never held in full.
+     */
+    public DeleteResult delete(String bucket, Iterator<String> keys, int concurrency) {
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        Deque<CompletableFuture<DeleteResult>> batches = new ArrayDeque<>();
+        DeleteResult result = new DeleteResult();
+
+        while (keys.hasNext()) {
+            List<String> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            while (keys.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                batch.add(keys.next());
+            }
+            permits.acquireUninterruptibly();
+            try {
+                batches.addLast(CompletableFuture
+                        .supplyAsync(() -> deleteBatch(bucket, batch), transferExecutor)
+                        .whenComplete((deleted, e) -> permits.release()));
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+            while (!batches.isEmpty() && batches.peekFirst().isDone()) {
+                result.add(batches.pollFirst().join());
+            }
+        }
+
+        for (CompletableFuture<DeleteResult> batch : batches) {
+            result.add(batch.join());
+        }
+        return result;
+    }
+
+    /**
+     * Failed requests are retried by the rate controller. Keys the response reports as failed
+     * with a transient error such as {@code SlowDown} are retried in a smaller batch after a
+     * backoff; other per-key errors are final.
+     */
+    private DeleteResult deleteBatch(String bucket, List<String> keys) {
+        DeleteResult result = new DeleteResult();
+        List<String> pending = keys;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<String> batch = pending;
+            pending = List.of();
+            DeleteObjectsRequest request = new DeleteObjectsRequest(bucket)
+                    .withKeys(batch.toArray(new String[0]))
+                    .withQuiet(true);
+            try {
+                rateController.call(bucket, batch.get(0), () -> s3Client.deleteObjects(request));
+                result.deleted += batch.size();
+                log.info("Deleted {} file(s) from s3://{}", batch.size(), bucket);
+            } catch (MultiObjectDeleteException e) {
+                List<String> retry = new ArrayList<>();
+                for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                    if (attempt < rateController.maxAttempts()
+                            && S3RateController.isRetryableErrorCode(error.getCode())) {
+                        retry.add(error.getKey());
+                    } else {
+                        result.error(error.getKey() + ": " + error.getCode() + " " + error.getMessage());
+                        log.error("Failed to delete file {}: {}", error.getKey(), error.getMessage());
+                    }
+                }
+                result.deleted += batch.size() - e.getErrors().size();
+                if (!retry.isEmpty()) {
+                    if (rateController.backoff(attempt)) {
+                        pending = retry;
+                    } else {
+                        retry.forEach(key -> result.error(key + ": interrupted before retry"));
+                    }
+                }
+            } catch (Exception e) {
+                for (String key : batch) {
+                    result.error(key + ": " + e.getMessage());
+                }
+                log.error("Failed to delete batch of {} file(s) from s3://{}: {}", batch.size(), bucket,
+                        e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts every failed key, with the messages of the first
+     * {@link StorageBackend.DeleteResult#MAX_ERRORS} of them.
+     */
+    public static class DeleteResult {
+        public int deleted;
+        public int failed;
+        public final List<String> errors = new ArrayList<>();
+
+        void error(String message) {
+            failed++;
+            if (errors.size() < StorageBackend.DeleteResult.MAX_ERRORS) {
+                errors.add(message);
+            }
+        }
+
+        void add(DeleteResult other) {
+            deleted += other.deleted;
+            failed += other.failed;
+            errors.addAll(other.errors.subList(0,
+                    Math.min(other.errors.size(), StorageBackend.DeleteResult.MAX_ERRORS - errors.size())));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs server-side S3 copies on the shared transfer executor, with at most
+ * {@code concurrency} copies of a single job in flight at any time. Tasks are pulled
+ * from the iterator only as permits free up, so a lazily listed source is never
+ * materialised in full. Requests go through {@link S3RateController}, so a throttled or
+ * transiently failing copy is retried before the file counts as failed.
+ *
+ * <p>A verified copy happens only while the source still has the ETag it was listed with, so a
+ * source replaced in the meantime fails the file instead of being copied unseen. S3 copies
+ * server-side and the copy's ETag is checked against the source's: a source whose ETag is its
+ * content MD5 is copied in one request, up to 5 GiB, and a source written in parts is copied
+ * in parts of the same sizes. A copy whose ETag cannot be compared, such as one of a source
+ * written in parts of varying sizes, is recorded without a checksum, so a move keeps its
+ * source. Nothing is read back.
+ */
+@Component
+@Slf4j
+public class S3CopyEngine {
+
+    private final AmazonS3 s3Client;
+    private final Executor transferExecutor;
+    private final MultipartCopier multipartCopier;
+    private final S3RateController rateController;
+
+    public S3CopyEngine(AmazonS3 s3Client,
+                        @Qualifier("transferExecutor") Executor transferExecutor,
+                        MultipartCopier multipartCopier,
+                        S3RateController rateController) {
+        this.s3Client = s3Client;
+        this.transferExecutor = transferExecutor;
+        this.multipartCopier = multipartCopier;
+        this.rateController = rateController;
+    }
+
+    /**
+     * Stops taking new tasks once cancellation is requested; copies already in flight finish
+     * and are recorded. Each copied or failed object goes to {@code manifest} as it completes.
+     */
+    public CopyResult copy(String sourceBucket, String targetBucket, Iterator<CopyTask> tasks, int concurrency,
+                           JobProgress progress, ManifestSink manifest) {
+        return copy(sourceBucket, targetBucket, tasks, concurrency, progress, manifest, false);
+    }
+
+    public CopyResult copy(String sourceBucket, String targetBucket, Iterator<CopyTask> tasks, int concurrency,
+                           JobProgress progress, ManifestSink manifest, boolean verify) {
+        CopyResult result = new CopyResult();
+        OrderedTaskWindow<CopyTask> window = new OrderedTaskWindow<>(transferExecutor, concurrency, task -> {
+            manifest.add(task.sourceKey, task.targetKey, task.checksum);
+            result.filesCopied++;
+        }, task -> manifest.failed(task.sourceKey));
+        while (!progress.isCancelRequested() && tasks.hasNext()) {
+            CopyTask task = tasks.next();
+            progress.fileListed(task.size == null ? 0 : task.size);
+            window.submit(task, () -> copyObject(sourceBucket, targetBucket, task, verify, progress));
+        }
+        if (!progress.isCancelRequested()) {
+            progress.listingComplete();
+        }
+        window.finish();
+        return result;
+    }
+
+    private boolean copyObject(String sourceBucket, String targetBucket, CopyTask task, boolean verify,
+                               JobProgress progress) {
+        try {
+            Long size = task.size;
+            String eTag = task.eTag;
+            ObjectMetadata metadata = null;
+            if (size == null || verify && eTag == null) {
+                metadata = headObject(sourceBucket, task.sourceKey);
+                size = metadata.getContentLength();
+                eTag = metadata.getETag();
+            }
+            boolean singleVerified = verify && Checksums.isPlainMd5(eTag)
+                    && size <= MultipartCopier.MAX_COPY_OBJECT_SIZE;
+            if (verify && !singleVerified || !verify && multipartCopier.shouldUseMultipart(size)) {
+                if (metadata == null) {
+                    metadata = headObject(sourceBucket, task.sourceKey);
+                }
+                String copied = multipartCopier.copy(sourceBucket, task.sourceKey, targetBucket, task.targetKey,
+                        metadata, verify);
+                if (copied != null && verify) {
+                    task.checksum = Checksums.etag(copied);
+                }
+            } else if (verify) {
+                task.checksum = Checksums.etag(copyVerified(sourceBucket, targetBucket, task, eTag));
+            } else {
+                rateController.call(targetBucket, task.targetKey,
+                        () -> s3Client.copyObject(sourceBucket, task.sourceKey, targetBucket, task.targetKey));
+            }
+            progress.fileDone(size);
+            log.info("Copied file: {}", task.sourceKey);
+            return true;
+        } catch (Exception e) {
+            progress.fileFailed();
+            log.error("Failed to copy file {}: {}", task.sourceKey, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return the ETag of the copy
+     */
+    private String copyVerified(String sourceBucket, String targetBucket, CopyTask task, String sourceETag) {
+        CopyObjectRequest request = new CopyObjectRequest(sourceBucket, task.sourceKey, targetBucket, task.targetKey)
+                .withMatchingETagConstraint(sourceETag);
+        CopyObjectResult result = rateController.call(targetBucket, task.targetKey, () -> s3Client.copyObject(request));
+        if (result == null) {
+            // The SDK returns no result when the constraint stopped the copy.
+            throw new IllegalStateException("Verification failed, " + task.sourceKey + " changed before it was copied");
+        }
+        if (!sourceETag.equals(result.getETag())) {
+            throw new IllegalStateException("Verification failed, " + task.targetKey + " has ETag " + result.getETag()
+                    + " instead of " + sourceETag);
+        }
+        return result.getETag();
+    }
+
+    private ObjectMetadata headObject(String bucket, String key) {
+        return rateController.call(bucket, key, () -> s3Client.getObjectMetadata(bucket, key));
+    }
+
+    public static class CopyTask {
+        final String sourceKey;
+        final String targetKey;
+        final Long size;
+        final String eTag;
+        /** Set by a verified copy before the file is recorded. */
+        volatile String checksum;
+
+        public CopyTask(String sourceKey, String targetKey) {
+            this(sourceKey, targetKey, null);
+        }
+
+        public CopyTask(String sourceKey, String targetKey, Long size) {
+            this(sourceKey, targetKey, size, null);
+        }
+
+        /**
+         * @param eTag the source ETag from the listing, which a verified copy pins the source to
+         */
+        public CopyTask(String sourceKey, String targetKey, Long size, String eTag) {
+            this.sourceKey = sourceKey;
+            this.targetKey = targetKey;
+            this.size = size;
+            this.eTag = eTag;
+        }
+    }
+
+    public static class CopyResult {
+        public int filesCopied;
+    }
+}
@@ -0,0 +1,414 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lists a prefix lazily, one {@code ListObjectsV2} page at a time, so downstream stages start
+ * working after the first response. A sequential listing requests the next page only once
+ * every key of the current one has been consumed, so it holds a single page in memory; a
+ * partitioned listing holds up to {@value #PAGES_PER_PARTITION} pages per partition listed at
+ * the same time.
+ */
+@Component
+@Slf4j
+public class S3KeyLister {
+
+    private static final String DELIMITER = "/";
+    /**
+     * Pages each partition listing may hold ahead of the consumer.
+     */
+    private static final int PAGES_PER_PARTITION = 2;
+    /**
+     * Past this many subprefixes and keys directly below the prefix, splitting costs more than
+     * it saves.
+     */
+    private static final int MAX_PARTITION_ENTRIES = 20_000;
+
+    private final AmazonS3 s3Client;
+    private final S3RateController rateController;
+    private final Executor listExecutor;
+
+    /**
+     * A lister without an executor lists every prefix sequentially.
+     */
+    public S3KeyLister(AmazonS3 s3Client, S3RateController rateController) {
+        this(s3Client, rateController, null);
+    }
+
+    @Autowired
+    public S3KeyLister(AmazonS3 s3Client, S3RateController rateController,
+                       @Qualifier("listExecutor") Executor listExecutor) {
+        this.s3Client = s3Client;
+        this.rateController = rateController;
+        this.listExecutor = listExecutor;
+    }
+
+    public Stream<S3ObjectSummary> list(String bucket, String prefix) {
+        return list(bucket, prefix, null);
+    }
+
+    /**
+     * @param startAfter key to list after, or {@code null} to list from the start of the prefix
+     */
+    public Stream<S3ObjectSummary> list(String bucket, String prefix, String startAfter) {
+        return list(bucket, prefix, startAfter, null);
+    }
+
+    /**
+     * Lists the keys after {@code startAfter} up to and including {@code lastKey}; no page past
+     * {@code lastKey} is requested.
+     */
+    public Stream<S3ObjectSummary> list(String bucket, String prefix, String startAfter, String lastKey) {
+        return stream(new PageIterator(bucket, prefix, startAfter, lastKey)).flatMap(List::stream);
+    }
+
+    private static <T> Stream<T> stream(Iterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Lists like {@link #list(String, String, String, String)}, in partitions, without keeping
+     * key order across them; see {@link #listPages}.
+     */
+    public Stream<S3ObjectSummary> listPartitioned(String bucket, String prefix, String startAfter, String lastKey,
+                                                   int parallelism) {
+        return listPages(bucket, prefix, startAfter, lastKey, parallelism)
+                .flatMap(page -> page.summaries.stream());
+    }
+
+    /**
+     * Lists the keys after {@code startAfter} up to and including {@code lastKey} in partitions:
+     * every common prefix one level below {@code prefix} is its own partition, and up to
+     * {@code parallelism} partitions are listed at the same time on the list executor. Pages
+     * come out as soon as any partition has listed them, so a slow consumer of one partition
+     * never holds up the others; within a partition they keep key order. A prefix with fewer
+     * than two subprefixes, or too many entries directly below it, is listed sequentially as
+     * partition 0. Close the stream to stop listing ahead when it is not consumed to the end.
+     */
+    public Stream<Page> listPages(String bucket, String prefix, String startAfter, String lastKey, int parallelism) {
+        List<Partition> partitions = parallelism > 1 && listExecutor != null
+                ? partition(bucket, prefix, startAfter, lastKey) : null;
+        if (partitions == null || partitions.stream().filter(partition -> partition.prefix != null).count() < 2) {
+            return stream(new PageIterator(bucket, prefix, startAfter, lastKey))
+                    .filter(summaries -> !summaries.isEmpty())
+                    .map(summaries -> new Page(0, summaries));
+        }
+        log.info("Listing s3://{}/{} in {} partition(s), {} at a time", bucket, prefix, partitions.size(), parallelism);
+        PartitionIterator iterator = new PartitionIterator(bucket, partitions, startAfter, lastKey, parallelism);
+        return stream(iterator).onClose(iterator::close);
+    }
+
+    /**
+     * Consecutive keys of one partition, in key order. Partitions are numbered in key order,
+     * and the keys of partitions with adjacent numbers are adjacent in the listing as well.
+     */
+    public static class Page {
+        public final int partition;
+        public final List<S3ObjectSummary> summaries;
+
+        Page(int partition, List<S3ObjectSummary> summaries) {
+            this.partition = partition;
+            this.summaries = summaries;
+        }
+    }
+
+    /**
+     * Splits the prefix at the delimiter, in key order. Keys directly below the prefix come
+     * back with the split and form partitions of their own, already listed.
+     *
+     * @return the partitions overlapping the key range, or {@code null} when there are too many
+     */
+    private List<Partition> partition(String bucket, String prefix, String startAfter, String lastKey) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucket)
+                .withPrefix(prefix)
+                .withDelimiter(DELIMITER);
+        List<Partition> partitions = new ArrayList<>();
+        int entries = 0;
+        ListObjectsV2Result listing;
+        do {
+            listing = rateController.call(bucket, prefix, () -> s3Client.listObjectsV2(request));
+            entries += listing.getObjectSummaries().size() + listing.getCommonPrefixes().size();
+            if (entries > MAX_PARTITION_ENTRIES) {
+                return null;
+            }
+            Iterator<S3ObjectSummary> keys = listing.getObjectSummaries().iterator();
+            Iterator<String> prefixes = listing.getCommonPrefixes().iterator();
+            S3ObjectSummary key = keys.hasNext() ? keys.next() : null;
+            String subprefix = prefixes.hasNext() ? prefixes.next() : null;
+            while (key != null || subprefix != null) {
+                if (subprefix == null || key != null && S3Keys.compare(key.getKey(), subprefix) < 0) {
+                    if (inRange(key.getKey(), startAfter, lastKey)) {
+                        Partition last = partitions.isEmpty() ? null : partitions.get(partitions.size() - 1);
+                        if (last == null || last.prefix != null) {
+                            last = new Partition(null);
+                            partitions.add(last);
+                        }
+                        last.listed.add(key);
+                    }
+                    key = keys.hasNext() ? keys.next() : null;
+                } else {
+                    if (overlaps(subprefix, startAfter, lastKey)) {
+                        partitions.add(new Partition(subprefix));
+                    }
+                    subprefix = prefixes.hasNext() ? prefixes.next() : null;
+                }
+            }
+            request.setContinuationToken(listing.getNextContinuationToken());
+        } while (listing.isTruncated());
+        return partitions;
+    }
+
+    private static boolean inRange(String key, String startAfter, String lastKey) {
+        return (startAfter == null || S3Keys.compare(key, startAfter) > 0)
+                && (lastKey == null || S3Keys.compare(key, lastKey) <= 0);
+    }
+
+    /**
+     * Every key below {@code subprefix} sorts after it, and before {@code startAfter} unless
+     * {@code startAfter} is itself below it.
+     */
+    private static boolean overlaps(String subprefix, String startAfter, String lastKey) {
+        boolean afterStart = startAfter == null || startAfter.startsWith(subprefix)
+                || S3Keys.compare(subprefix, startAfter) > 0;
+        return afterStart && (lastKey == null || S3Keys.compare(subprefix, lastKey) <= 0);
+    }
+
+    private static class Partition {
+        /** The subprefix to list, or {@code null} for keys the split already returned. */
+        final String prefix;
+        final List<S3ObjectSummary> listed = new ArrayList<>();
+
+        Partition(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Hands on pages as the partition listings produce them. Each partition is listed by one
+     * task on the list executor, at most {@code parallelism} at a time, and all of them share
+     * a small buffer, so listing only waits when the consumer falls behind all partitions.
+     */
+    private class PartitionIterator implements Iterator<Page> {
+        private final String bucket;
+        private final List<Partition> partitions;
+        private final String startAfter;
+        private final String lastKey;
+        private final int parallelism;
+        private final BlockingQueue<Object> pages;
+        private volatile boolean closed;
+        private int started;
+        private int running;
+        private Page next;
+
+        PartitionIterator(String bucket, List<Partition> partitions, String startAfter, String lastKey,
+                          int parallelism) {
+            this.bucket = bucket;
+            this.partitions = partitions;
+            this.startAfter = startAfter;
+            this.lastKey = lastKey;
+            this.parallelism = parallelism;
+            this.pages = new LinkedBlockingQueue<>(parallelism * PAGES_PER_PARTITION);
+            startPartitions();
+        }
+
+        /**
+         * Starts partition listings up to the parallelism; keys the split returned are pages
+         * already.
+         */
+        private boolean startPartitions() {
+            while (started < partitions.size() && running < parallelism) {
+                int index = started++;
+                Partition partition = partitions.get(index);
+                if (partition.prefix == null) {
+                    next = new Page(index, partition.listed);
+                    return true;
+                }
+                running++;
+                listExecutor.execute(() -> fill(index, partition));
+            }
+            return false;
+        }
+
+        /**
+         * Always ends with a completion marker, or the failure, so the consumer never waits for
+         * a partition whose listing has stopped.
+         */
+        private void fill(int index, Partition partition) {
+            Object done = Boolean.TRUE;
+            try {
+                // Only the partition holding startAfter starts inside it; the others start at their beginning.
+                String after = startAfter != null && startAfter.startsWith(partition.prefix) ? startAfter : null;
+                Iterator<List<S3ObjectSummary>> listing = new PageIterator(bucket, partition.prefix, after, lastKey);
+                while (listing.hasNext() && !closed) {
+                    List<S3ObjectSummary> summaries = listing.next();
+                    if (!summaries.isEmpty()) {
+                        offer(new Page(index, summaries));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                done = new RuntimeException("Interrupted while listing s3://" + bucket + "/" + partition.prefix, e);
+            } catch (RuntimeException e) {
+                done = e;
+            } finally {
+                offerDone(done);
+            }
+        }
+
+        /**
+         * Waits for room in the buffer until the iterator is closed; the list threads are
+         * shared, so they are not interrupted.
+         */
+        private void offer(Object item) throws InterruptedException {
+            while (!closed && !pages.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                // The consumer is behind; check again whether it has gone.
+            }
+        }
+
+        /**
+         * Hands on the end of a partition listing even when its thread was interrupted, in
+         * which case the wait for room ignores the interrupt and restores it afterwards.
+         */
+        private void offerDone(Object done) {
+            boolean interrupted = Thread.interrupted();
+            try {
+                while (!closed) {
+                    try {
+                        if (pages.offer(done, 100, TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (startPartitions()) {
+                    return true;
+                }
+                if (running == 0) {
+                    return false;
+                }
+                Object item = take();
+                if (item instanceof Page) {
+                    next = (Page) item;
+                } else {
+                    running--;
+                    if (item instanceof RuntimeException) {
+                        close();
+                        throw (RuntimeException) item;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private Object take() {
+            try {
+                return pages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RuntimeException("Interrupted while listing s3://" + bucket, e);
+            }
+        }
+
+        @Override
+        public Page next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Page page = next;
+            next = null;
+            return page;
+        }
+
+        void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Iterates the pages of one listing, without pages or keys past {@code lastKey}.
+     */
+    private class PageIterator implements Iterator<List<S3ObjectSummary>> {
+        private final ListObjectsV2Request request;
+        private final String lastKey;
+        private boolean lastPage;
+        private int pages;
+
+        /**
+         * @param lastKey no page is requested once a page reaches it, or {@code null}
+         */
+        PageIterator(String bucket, String prefix, String startAfter, String lastKey) {
+            this.request = new ListObjectsV2Request()
+                    .withBucketName(bucket)
+                    .withPrefix(prefix)
+                    .withStartAfter(startAfter);
+            this.lastKey = lastKey;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !lastPage;
+        }
+
+        @Override
+        public List<S3ObjectSummary> next() {
+            if (lastPage) {
+                throw new NoSuchElementException();
+            }
+            ListObjectsV2Result listing = rateController.call(request.getBucketName(), request.getPrefix(),
+                    () -> s3Client.listObjectsV2(request));
+            List<S3ObjectSummary> summaries = listing.getObjectSummaries();
+            pages++;
+            if (listing.isTruncated() && !reachesLastKey(summaries)) {
+                request.setContinuationToken(listing.getNextContinuationToken());
+            } else {
+                lastPage = true;
+                log.debug("Listed s3://{}/{} in {} page(s)", request.getBucketName(), request.getPrefix(), pages);
+            }
+            if (lastKey == null || !reachesLastKey(summaries)) {
+                return summaries;
+            }
+            return summaries.stream()
+                    .takeWhile(summary -> S3Keys.compare(summary.getKey(), lastKey) <= 0)
+                    .toList();
+        }
+
+        private boolean reachesLastKey(List<S3ObjectSummary> summaries) {
+            return lastKey != null && !summaries.isEmpty() && S3Keys.compare(
+                    summaries.get(summaries.size() - 1).getKey(), lastKey) >= 0;
+        }
+    }
+}
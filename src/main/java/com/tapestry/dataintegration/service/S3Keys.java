@@ -0,0 +1,29 @@
+package com.tapestry.dataintegration.service;
+
+/**
+ * Key ordering shared by everything that merges, resumes or splits S3 listings.
+ */
+public final class S3Keys {
+
+    private S3Keys() {
+    }
+
+    /**
+     * S3 lists keys in UTF-8 byte order, which matches code point order but not
+     * {@link String#compareTo} once surrogate pairs are involved.
+     */
+    public static int compare(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+}
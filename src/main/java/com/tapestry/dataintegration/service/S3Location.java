@@ -0,0 +1,27 @@
+package com.tapestry.dataintegration.service;
+
+public class S3Location {
+    public final String bucket;
+    public final String key;
+
+    public S3Location(String bucket, String key) {
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    public static boolean isS3Path(String path) {
+        return path != null && path.startsWith("s3://");
+    }
+
+    public static S3Location parse(String path) {
+        if (!isS3Path(path)) {
+            return null;
+        }
+        String s3Path = path.substring(5); // Remove "s3://"
+        int slashIndex = s3Path.indexOf('/');
+        return new S3Location(
+                s3Path.substring(0, slashIndex),
+                s3Path.substring(slashIndex + 1)
+        );
+    }
+}
@@ -0,0 +1,206 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.tapestry.dataintegration.config.TransferProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Limits concurrent S3 requests per bucket and top-level prefix, the unit S3 scales request
+ * rates by, and retries transient failures. A scope's limit grows by about one request per
+ * round of successes while the scope is busy and halves on a throttling response, so it
+ * settles just below the highest rate S3 sustains without any tuning. Throttles, 5xx responses
+ * and connection errors are retried with full-jitter exponential backoff. The SDK's own retries
+ * are switched off so that every throttle reaches the controller.
+ */
+@Component
+@Slf4j
+public class S3RateController {
+
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final Set<String> TRANSIENT_ERROR_CODES =
+            Set.of("SlowDown", "InternalError", "ServiceUnavailable", "RequestTimeout");
+
+    private final TransferProperties transferProperties;
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    public S3RateController(TransferProperties transferProperties) {
+        this.transferProperties = transferProperties;
+    }
+
+    public <T> T call(String bucket, String key, Supplier<T> request) {
+        Limiter limiter = limiter(bucket, key);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return limiter.execute(request);
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts() || !isRetryable(e)) {
+                    throw e;
+                }
+                log.debug("Retrying S3 request on s3://{}/{} after attempt {}: {}", bucket, key, attempt,
+                        e.getMessage());
+                if (!backoff(attempt)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public void run(String bucket, String key, Runnable request) {
+        call(bucket, key, () -> {
+            request.run();
+            return null;
+        });
+    }
+
+    /**
+     * For requests with a streamed body that cannot be replayed: limited, but not retried.
+     */
+    public <T> T callOnce(String bucket, String key, Supplier<T> request) {
+        return limiter(bucket, key).execute(request);
+    }
+
+    public int maxAttempts() {
+        return Math.max(1, transferProperties.getRetryMaxAttempts());
+    }
+
+    /**
+     * Sleeps a random time up to the exponential backoff for {@code attempt}.
+     *
+     * @return false if interrupted, in which case the caller should stop retrying
+     */
+    public boolean backoff(int attempt) {
+        long base = transferProperties.getRetryBaseDelay().toMillis();
+        long cap = Math.min(transferProperties.getRetryMaxDelay().toMillis(),
+                base << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return the current concurrency limit of the scope {@code key} belongs to
+     */
+    public int limit(String bucket, String key) {
+        return limiter(bucket, key).currentLimit();
+    }
+
+    static boolean isRetryable(Exception e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) e;
+            return S3RequestMetrics.isThrottle(ase) || ase.getStatusCode() >= 500
+                    || isRetryableErrorCode(ase.getErrorCode());
+        }
+        return e instanceof AmazonClientException && ((AmazonClientException) e).isRetryable();
+    }
+
+    /**
+     * For per-key errors reported inside a successful response, such as DeleteObjects results.
+     */
+    public static boolean isRetryableErrorCode(String errorCode) {
+        return errorCode != null && TRANSIENT_ERROR_CODES.contains(errorCode);
+    }
+
+    /**
+     * More requests than threads that issue them can never be in flight, and a limit grown past
+     * that would take just as long to shrink once S3 starts throttling.
+     */
+    private int maxLimit() {
+        int threads = transferProperties.getMaxThreads() + transferProperties.getPartThreads();
+        return Math.max(1, Math.min(transferProperties.getS3MaxConcurrency(), threads));
+    }
+
+    private Limiter limiter(String bucket, String key) {
+        int slash = key == null ? -1 : key.indexOf('/');
+        String scope = bucket + "/" + (slash < 0 ? "" : key.substring(0, slash + 1));
+        return limiters.computeIfAbsent(scope, Limiter::new);
+    }
+
+    private class Limiter {
+        final String scope;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition available = lock.newCondition();
+        double limit = Math.min(transferProperties.getS3InitialConcurrency(), maxLimit());
+        int inFlight;
+        long issued;
+        /**
+         * Requests issued before the last decrease were sent under the old limit, so their
+         * throttles do not lower the limit again.
+         */
+        long decreaseMark;
+
+        Limiter(String scope) {
+            this.scope = scope;
+        }
+
+        <T> T execute(Supplier<T> request) {
+            long ticket = acquire();
+            boolean succeeded = false;
+            boolean throttled = false;
+            try {
+                T result = request.get();
+                succeeded = true;
+                return result;
+            } catch (RuntimeException e) {
+                throttled = S3RequestMetrics.isThrottle(e);
+                throw e;
+            } finally {
+                release(ticket, succeeded, throttled);
+            }
+        }
+
+        private long acquire() {
+            lock.lock();
+            try {
+                while (inFlight >= (int) limit) {
+                    available.awaitUninterruptibly();
+                }
+                inFlight++;
+                return issued++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(long ticket, boolean succeeded, boolean throttled) {
+            lock.lock();
+            try {
+                // Only a scope that actually uses its limit learns anything from a success.
+                boolean busy = inFlight * 2 >= limit;
+                inFlight--;
+                if (succeeded && busy) {
+                    limit = Math.min(maxLimit(), limit + 1 / limit);
+                } else if (throttled && ticket >= decreaseMark) {
+                    decreaseMark = issued;
+                    limit = Math.max(1, limit * DECREASE_FACTOR);
+                    log.info("S3 throttled requests on s3://{}, concurrency limit now {}", scope, (int) limit);
+                }
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int currentLimit() {
+            lock.lock();
+            try {
+                return (int) limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
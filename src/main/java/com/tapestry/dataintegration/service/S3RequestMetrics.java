@@ -0,0 +1,92 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times every S3 call made through the shared client, whichever component issued it. Requests
+ * are tagged with the SDK operation ({@code ListObjectsV2}, {@code CopyObject}, {@code CopyPart},
+ * {@code DeleteObjects}, ...) and an outcome of {@code success}, {@code error} or
+ * {@code throttled}. Retries are made by {@link S3RateController}, so each attempt is timed
+ * separately.
+ */
+@Component
+public class S3RequestMetrics extends RequestHandler2 {
+
+    private static final HandlerContextKey<Long> START_NANOS = new HandlerContextKey<>("metricsStartNanos");
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public S3RequestMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void beforeRequest(Request<?> request) {
+        request.addHandlerContext(START_NANOS, System.nanoTime());
+        inFlight(operation(request)).incrementAndGet();
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        record(request, "success");
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        record(request, isThrottle(e) ? "throttled" : "error");
+    }
+
+    static boolean isThrottle(Exception e) {
+        if (!(e instanceof AmazonServiceException)) {
+            return false;
+        }
+        AmazonServiceException ase = (AmazonServiceException) e;
+        return ase.getStatusCode() == 503 || ase.getStatusCode() == 429 || "SlowDown".equals(ase.getErrorCode());
+    }
+
+    private void record(Request<?> request, String outcome) {
+        Long start = request.getHandlerContext(START_NANOS);
+        if (start == null) {
+            return;
+        }
+        String operation = operation(request);
+        inFlight(operation).decrementAndGet();
+        Timer.builder("s3.requests")
+                .description("Latency of S3 calls")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private AtomicInteger inFlight(String operation) {
+        return inFlight.computeIfAbsent(operation, op -> {
+            AtomicInteger count = new AtomicInteger();
+            Gauge.builder("s3.requests.in.flight", count, AtomicInteger::get)
+                    .description("S3 calls currently in progress")
+                    .tag("operation", op)
+                    .register(registry);
+            return count;
+        });
+    }
+
+    private static String operation(Request<?> request) {
+        String name = request.getOriginalRequest().getClass().getSimpleName();
+        return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+    }
+}
@@ -0,0 +1,185 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * {@code s3://} locations. Reads are ranged GETs, so large objects can be fetched in parallel
+ * parts; large writes are multipart uploads; server-side copies reuse the copy engine's rules.
+ */
+@Component
+@Order(1)
+@Slf4j
+public class S3StorageBackend implements StorageBackend {
+
+    private final AmazonS3 s3Client;
+    private final S3KeyLister s3KeyLister;
+    private final MultipartCopier multipartCopier;
+    private final S3BatchDeleter s3BatchDeleter;
+    private final S3RateController rateController;
+
+    public S3StorageBackend(AmazonS3 s3Client, S3KeyLister s3KeyLister, MultipartCopier multipartCopier,
+                            S3BatchDeleter s3BatchDeleter, S3RateController rateController) {
+        this.s3Client = s3Client;
+        this.s3KeyLister = s3KeyLister;
+        this.multipartCopier = multipartCopier;
+        this.s3BatchDeleter = s3BatchDeleter;
+        this.rateController = rateController;
+    }
+
+    @Override
+    public boolean supports(String location) {
+        return S3Location.isS3Path(location);
+    }
+
+    @Override
+    public Stream<StorageObject> list(String location) {
+        S3Location root = S3Location.parse(location);
+        return s3KeyLister.list(root.bucket, root.key)
+                .map(summary -> new StorageObject("s3://" + root.bucket + "/" + summary.getKey(),
+                        summary.getKey().substring(root.key.length()), summary.getSize()));
+    }
+
+    @Override
+    public String resolve(String location, String relativePath) {
+        return join(location, relativePath);
+    }
+
+    @Override
+    public InputStream openRead(String location, long offset, long length) {
+        S3Location object = S3Location.parse(location);
+        GetObjectRequest request = new GetObjectRequest(object.bucket, object.key);
+        if (length > 0) {
+            request.setRange(offset, offset + length - 1);
+        }
+        return rateController.call(object.bucket, object.key, () -> s3Client.getObject(request)).getObjectContent();
+    }
+
+    @Override
+    public void write(String location, InputStream content, long size) {
+        S3Location object = S3Location.parse(location);
+        ObjectMetadata metadata = new ObjectMetadata();
+        // A known length lets the SDK stream the body instead of buffering it to count bytes.
+        metadata.setContentLength(size);
+        // The body is a stream that cannot be replayed, so a failed upload is not retried here.
+        rateController.callOnce(object.bucket, object.key,
+                () -> s3Client.putObject(new PutObjectRequest(object.bucket, object.key, content, metadata)));
+    }
+
+    @Override
+    public PartWriter openMultipartWrite(String location, long size) {
+        S3Location object = S3Location.parse(location);
+        String uploadId = rateController.call(object.bucket, object.key, () -> s3Client.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(object.bucket, object.key))).getUploadId();
+        Map<Integer, PartETag> parts = new ConcurrentHashMap<>();
+        return new PartWriter() {
+            @Override
+            public void writePart(int partNumber, long offset, InputStream content, long length) {
+                parts.put(partNumber, rateController.callOnce(object.bucket, object.key,
+                        () -> s3Client.uploadPart(new UploadPartRequest()
+                                .withBucketName(object.bucket)
+                                .withKey(object.key)
+                                .withUploadId(uploadId)
+                                .withPartNumber(partNumber)
+                                .withPartSize(length)
+                                .withInputStream(content))).getPartETag());
+            }
+
+            @Override
+            public void complete() {
+                List<PartETag> partETags = new ArrayList<>(parts.values());
+                partETags.sort((a, b) -> Integer.compare(a.getPartNumber(), b.getPartNumber()));
+                rateController.call(object.bucket, object.key, () -> s3Client.completeMultipartUpload(
+                        new CompleteMultipartUploadRequest(object.bucket, object.key, uploadId, partETags)));
+            }
+
+            @Override
+            public void abort() {
+                try {
+                    rateController.run(object.bucket, object.key, () -> s3Client.abortMultipartUpload(
+                            new AbortMultipartUploadRequest(object.bucket, object.key, uploadId)));
+                } catch (Exception e) {
+                    log.error("Failed to abort multipart upload {} for {}: {}", uploadId, location, e.getMessage());
+                }
+            }
+        };
+    }
+
+    @Override
+    public void copy(String sourceLocation, String targetLocation) {
+        S3Location source = S3Location.parse(sourceLocation);
+        S3Location target = S3Location.parse(targetLocation);
+        ObjectMetadata metadata = rateController.call(source.bucket, source.key,
+                () -> s3Client.getObjectMetadata(source.bucket, source.key));
+        if (multipartCopier.shouldUseMultipart(metadata.getContentLength())) {
+            multipartCopier.copy(source.bucket, source.key, target.bucket, target.key, metadata);
+        } else {
+            rateController.call(target.bucket, target.key,
+                    () -> s3Client.copyObject(source.bucket, source.key, target.bucket, target.key));
+        }
+    }
+
+    @Override
+    public DeleteResult delete(Iterator<String> locations, int concurrency) {
+        DeleteResult result = new DeleteResult();
+        if (!locations.hasNext()) {
+            return result;
+        }
+        S3Location first = S3Location.parse(locations.next());
+        Iterator<String> keys = new Iterator<>() {
+            private boolean firstPending = true;
+
+            @Override
+            public boolean hasNext() {
+                return firstPending || locations.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (firstPending) {
+                    firstPending = false;
+                    return first.key;
+                }
+                return keyInBucket(locations.next(), first.bucket);
+            }
+        };
+        S3BatchDeleter.DeleteResult deleted = s3BatchDeleter.delete(first.bucket, keys, concurrency);
+        result.deleted = deleted.deleted;
+        result.failed = deleted.failed;
+        result.errors.addAll(deleted.errors);
+        return result;
+    }
+
+    private static String keyInBucket(String location, String bucket) {
+        S3Location object = S3Location.parse(location);
+        if (!object.bucket.equals(bucket)) {
+            throw new IllegalArgumentException("Cannot delete " + location + " in the same batch as s3://" + bucket);
+        }
+        return object.key;
+    }
+
+    static String join(String location, String relativePath) {
+        if (relativePath.isEmpty() || location.endsWith("/") || relativePath.startsWith("/")) {
+            return location + relativePath;
+        }
+        return location + "/" + relativePath;
+    }
+}
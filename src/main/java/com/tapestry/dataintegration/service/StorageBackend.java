@@ -0,0 +1,71 @@
+package com.tapestry.dataintegration.service;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A place files can be transferred from or to, addressed by location strings such as
+ * {@code s3://bucket/key} or {@code /data/in/file.csv}. Transfers between two backends stream
+ * through {@link #openRead} and {@link #write} or {@link #openMultipartWrite}; transfers within
+ * one backend use its server-side {@link #copy}.
+ */
+public interface StorageBackend {
+
+    boolean supports(String location);
+
+    /**
+     * Lists the objects at or below {@code location} lazily. Close the stream when done.
+     */
+    Stream<StorageObject> list(String location);
+
+    /**
+     * Appends a path relative to a listed location, as returned in {@link StorageObject#relativePath}.
+     */
+    String resolve(String location, String relativePath);
+
+    InputStream openRead(String location, long offset, long length);
+
+    void write(String location, InputStream content, long size);
+
+    /**
+     * Starts a write whose parts may arrive concurrently and in any order.
+     */
+    PartWriter openMultipartWrite(String location, long size);
+
+    void copy(String sourceLocation, String targetLocation);
+
+    /**
+     * Locations that no longer exist are skipped rather than reported as errors, as S3 does.
+     */
+    DeleteResult delete(Iterator<String> locations, int concurrency);
+
+    interface PartWriter {
+        void writePart(int partNumber, long offset, InputStream content, long length);
+
+        void complete();
+
+        void abort();
+    }
+
+    /**
+     * Counts every failed delete but keeps the messages of only the first
+     * {@link #MAX_ERRORS}, so a source that cannot be deleted at all stays cheap to report.
+     */
+    class DeleteResult {
+        public static final int MAX_ERRORS = 100;
+
+        public int deleted;
+        public int failed;
+        public final List<String> errors = new ArrayList<>();
+
+        public void error(String message) {
+            failed++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(message);
+            }
+        }
+    }
+}
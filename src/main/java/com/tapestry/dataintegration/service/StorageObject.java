@@ -0,0 +1,14 @@
+package com.tapestry.dataintegration.service;
+
+public class StorageObject {
+    public final String location;
+    /** Path below the listed location, with {@code /} separators; empty when the location is the object. */
+    public final String relativePath;
+    public final long size;
+
+    public StorageObject(String location, String relativePath, long size) {
+        this.location = location;
+        this.relativePath = relativePath;
+        this.size = size;
+    }
+}
@@ -0,0 +1,182 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.config.TransferProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transfers files between any two storage backends. When both sides are the same backend the
+ * backend copies server-side. Otherwise each file is streamed from source to target without
+ * being held in memory; files at or above the multipart threshold are split into parts that
+ * are read with ranged reads and written as parallel parts on the part executor, which for
+ * S3 means ranged GETs on the way down and a multipart upload on the way up.
+ *
+ * <p>A verified transfer always streams, digesting the bytes on their way through: a file sent
+ * in one piece is recorded with its MD5, a file sent in parts with the ETag S3 gives it. A file
+ * counts only if every stream delivered exactly the bytes it was listed with.
+ */
+@Component
+@Slf4j
+public class StorageTransferEngine {
+
+    private final Executor transferExecutor;
+    private final Executor partExecutor;
+    private final TransferProperties transferProperties;
+
+    public StorageTransferEngine(@Qualifier("transferExecutor") Executor transferExecutor,
+                                 @Qualifier("partCopyExecutor") Executor partExecutor,
+                                 TransferProperties transferProperties) {
+        this.transferExecutor = transferExecutor;
+        this.partExecutor = partExecutor;
+        this.transferProperties = transferProperties;
+    }
+
+    /**
+     * Stops taking new tasks once cancellation is requested; transfers already in flight finish
+     * and are recorded.
+     */
+    public TransferResult transfer(StorageBackend source, StorageBackend target, Iterator<TransferTask> tasks,
+                                   int concurrency, JobProgress progress, ManifestSink manifest) {
+        return transfer(source, target, tasks, concurrency, progress, manifest, false);
+    }
+
+    public TransferResult transfer(StorageBackend source, StorageBackend target, Iterator<TransferTask> tasks,
+                                   int concurrency, JobProgress progress, ManifestSink manifest, boolean verify) {
+        TransferResult result = new TransferResult();
+        OrderedTaskWindow<TransferTask> window = new OrderedTaskWindow<>(transferExecutor, concurrency, task -> {
+            manifest.add(task.source.location, task.targetLocation, task.checksum);
+            result.filesTransferred++;
+        });
+        while (!progress.isCancelRequested() && tasks.hasNext()) {
+            TransferTask task = tasks.next();
+            progress.fileListed(task.source.size);
+            window.submit(task, () -> transferObject(source, target, task, verify, progress));
+        }
+        if (!progress.isCancelRequested()) {
+            progress.listingComplete();
+        }
+        window.finish();
+        return result;
+    }
+
+    private boolean transferObject(StorageBackend source, StorageBackend target, TransferTask task, boolean verify,
+                                   JobProgress progress) {
+        StorageObject object = task.source;
+        try {
+            if (source == target && !verify) {
+                source.copy(object.location, task.targetLocation);
+            } else if (object.size >= transferProperties.getMultipartThreshold()) {
+                List<byte[]> digests = transferInParts(source, target, object, task.targetLocation, verify);
+                if (verify) {
+                    task.checksum = Checksums.etag(Checksums.multipartETag(digests));
+                }
+            } else {
+                try (InputStream in = source.openRead(object.location, 0, object.size)) {
+                    if (verify) {
+                        Checksums.DigestingInputStream digesting = new Checksums.DigestingInputStream(in);
+                        target.write(task.targetLocation, digesting, object.size);
+                        checkLength(object, 0, object.size, digesting);
+                        task.checksum = Checksums.md5(digesting.digest());
+                    } else {
+                        target.write(task.targetLocation, in, object.size);
+                    }
+                }
+            }
+            progress.fileDone(object.size);
+            log.info("Transferred file: {} to {}", object.location, task.targetLocation);
+            return true;
+        } catch (Exception e) {
+            progress.fileFailed();
+            log.error("Failed to transfer file {}: {}", object.location, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return the MD5 of each part when verifying, otherwise {@code null}
+     */
+    private List<byte[]> transferInParts(StorageBackend source, StorageBackend target, StorageObject object,
+                                         String targetLocation, boolean verify) {
+        long partSize = MultipartCopier.partSize(transferProperties.getMultipartPartSize(), object.size);
+        StorageBackend.PartWriter writer = target.openMultipartWrite(targetLocation, object.size);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<CompletableFuture<byte[]>> parts = new ArrayList<>();
+        int partNumber = 1;
+        for (long offset = 0; offset < object.size; offset += partSize, partNumber++) {
+            int number = partNumber;
+            long start = offset;
+            long length = Math.min(partSize, object.size - offset);
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                if (failure.get() != null) {
+                    throw new CancellationException("Skipped after an earlier part failed");
+                }
+                try (InputStream in = source.openRead(object.location, start, length)) {
+                    if (!verify) {
+                        writer.writePart(number, start, in, length);
+                        return null;
+                    }
+                    Checksums.DigestingInputStream digesting = new Checksums.DigestingInputStream(in);
+                    writer.writePart(number, start, digesting, length);
+                    checkLength(object, start, length, digesting);
+                    return digesting.digest();
+                } catch (IOException e) {
+                    failure.compareAndSet(null, new UncheckedIOException(e));
+                    throw failure.get();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    throw e;
+                }
+            }, partExecutor));
+        }
+
+        try {
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).join();
+            writer.complete();
+            log.debug("Transferred {} in {} part(s)", object.location, parts.size());
+            return verify ? parts.stream().map(CompletableFuture::join).toList() : null;
+        } catch (CompletionException e) {
+            writer.abort();
+            throw failure.get() != null ? failure.get() : e;
+        } catch (RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+    }
+
+    private static void checkLength(StorageObject object, long offset, long length,
+                                    Checksums.DigestingInputStream digesting) {
+        if (digesting.getCount() != length) {
+            throw new IllegalStateException("Verification failed, read " + digesting.getCount() + " of " + length
+                    + " byte(s) of " + object.location + " at offset " + offset);
+        }
+    }
+
+    public static class TransferTask {
+        final StorageObject source;
+        final String targetLocation;
+        /** Set by a verified transfer before the file is recorded. */
+        volatile String checksum;
+
+        public TransferTask(StorageObject source, String targetLocation) {
+            this.source = source;
+            this.targetLocation = targetLocation;
+        }
+    }
+
+    public static class TransferResult {
+        public int filesTransferred;
+    }
+}
@@ -0,0 +1,108 @@
+package com.tapestry.dataintegration.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Pipeline-level meters. Files and bytes are counted as each file completes, so
+ * {@code rate(transfer_files_total)} gives live files per second per pipeline and operation.
+ */
+@Component
+public class TransferMetrics {
+
+    private final MeterRegistry registry;
+
+    public TransferMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public JobProgress.Listener transferListener(String pipeline, String operation) {
+        Counter succeeded = filesCounter(pipeline, operation, "success");
+        Counter failed = filesCounter(pipeline, operation, "failure");
+        Counter bytes = Counter.builder("transfer.bytes")
+                .description("Bytes transferred")
+                .baseUnit("bytes")
+                .tag("pipeline", pipeline)
+                .tag("operation", tagValue(operation))
+                .register(registry);
+        return new JobProgress.Listener() {
+            @Override
+            public void fileDone(long size) {
+                succeeded.increment();
+                bytes.increment(size);
+            }
+
+            @Override
+            public void fileFailed() {
+                failed.increment();
+            }
+        };
+    }
+
+    /**
+     * Times one phase of a run, such as {@code copy_s3}, {@code copy_local} or {@code delete_source}.
+     */
+    public Timer.Sample startPhase() {
+        return Timer.start(registry);
+    }
+
+    public void stopPhase(Timer.Sample sample, String pipeline, String phase) {
+        sample.stop(Timer.builder("transfer.phase")
+                .description("Time spent in each phase of a pipeline run")
+                .tag("pipeline", pipeline)
+                .tag("phase", phase)
+                .register(registry));
+    }
+
+    public void recordRun(String pipeline, String operation, String status, Duration duration) {
+        Timer.builder("pipeline.runs")
+                .description("Duration of pipeline runs")
+                .tag("pipeline", pipeline)
+                .tag("operation", tagValue(operation))
+                .tag("status", tagValue(status))
+                .register(registry)
+                .record(duration);
+    }
+
+    public void recordDeletes(String pipeline, int deleted, int failed) {
+        Counter.builder("transfer.deletes").tag("pipeline", pipeline).tag("outcome", "success")
+                .register(registry).increment(deleted);
+        Counter.builder("transfer.deletes").tag("pipeline", pipeline).tag("outcome", "failure")
+                .register(registry).increment(failed);
+    }
+
+    public void recordTrigger(String pipeline, boolean dispatched) {
+        Counter.builder("pipeline.triggers")
+                .description("Scheduled slots fired, by whether the overlap policy let them run")
+                .tag("pipeline", pipeline)
+                .tag("result", dispatched ? "dispatched" : "skipped")
+                .register(registry)
+                .increment();
+    }
+
+    public void pipelineGauge(String name, String pipeline, Supplier<Number> value) {
+        Gauge.builder(name, value)
+                .tag("pipeline", pipeline)
+                .strongReference(true)
+                .register(registry);
+    }
+
+    private Counter filesCounter(String pipeline, String operation, String outcome) {
+        return Counter.builder("transfer.files")
+                .description("Files transferred")
+                .tag("pipeline", pipeline)
+                .tag("operation", tagValue(operation))
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static String tagValue(String value) {
+        return value == null ? "none" : value;
+    }
+}
@@ -0,0 +1,148 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.ClusterProperties;
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.service.ClusterLeaseRepository;
+import com.tapestry.dataintegration.service.JobExecutionRepository;
+import com.tapestry.dataintegration.service.JobProgress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two coordinators on one database stand in for two nodes; every call commits on its own, as
+ * it would across processes.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ClusterCoordinatorTests {
+
+    @Autowired
+    private ClusterLeaseRepository leaseRepository;
+
+    @Autowired
+    private JobExecutionRepository jobExecutionRepository;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-03-01T02:00:00Z"));
+    private ClusterCoordinator nodeA;
+    private ClusterCoordinator nodeB;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = new ClusterCoordinator(properties("a"), leaseRepository, clock);
+        nodeB = new ClusterCoordinator(properties("b"), leaseRepository, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        leaseRepository.deleteAll();
+        jobExecutionRepository.deleteAll();
+    }
+
+    @Test
+    void oneNodeLeadsUntilItsLeaseExpires() {
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        assertThat(nodeA.isLeader()).isTrue();
+        assertThat(nodeB.isLeader()).isFalse();
+
+        clock.advance(Duration.ofSeconds(20));
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        assertThat(nodeA.isLeader()).isTrue();
+        assertThat(nodeB.isAlive("a")).isTrue();
+
+        // Node a stops heartbeating.
+        clock.advance(Duration.ofSeconds(31));
+        List<Boolean> elections = new ArrayList<>();
+        nodeB.start(elections::add);
+        nodeB.stop();
+        assertThat(nodeB.isLeader()).isTrue();
+        assertThat(elections).containsExactly(true);
+        assertThat(nodeB.isAlive("a")).isFalse();
+
+        nodeA.heartbeat();
+        assertThat(nodeA.isLeader()).isFalse();
+    }
+
+    @Test
+    void eachSlotFiresOnOneNode() {
+        ZonedDateTime slot = ZonedDateTime.parse("2024-03-01T02:00:00Z");
+
+        assertThat(nodeA.claimSlot("pl", slot)).isTrue();
+        assertThat(nodeB.claimSlot("pl", slot)).isFalse();
+        assertThat(nodeB.claimSlot("pl", slot.plusMinutes(1))).isTrue();
+        assertThat(nodeB.claimSlot("other", slot)).isTrue();
+    }
+
+    @Test
+    void eachShardRunsOnOneNode() {
+        JobExecution shard = new JobExecution();
+        shard.setPipelineName("pl");
+        shard.setParentId(1L);
+        shard.setStatus(ShardWorker.PENDING);
+        jobExecutionRepository.save(shard);
+        List<String> ran = new ArrayList<>();
+        ShardWorker workerA = new ShardWorker(jobExecutionRepository, "a", 1, Duration.ofSeconds(1),
+                claimed -> ran.add("a:" + claimed.getId()));
+        ShardWorker workerB = new ShardWorker(jobExecutionRepository, "b", 1, Duration.ofSeconds(1),
+                claimed -> ran.add("b:" + claimed.getId()));
+
+        assertThat(workerA.runNext()).isTrue();
+        assertThat(workerB.runNext()).isFalse();
+        assertThat(ran).containsExactly("a:" + shard.getId());
+        JobExecution claimed = jobExecutionRepository.findById(shard.getId()).orElseThrow();
+        assertThat(claimed.getStatus()).isEqualTo(JobProgress.RUNNING);
+        assertThat(claimed.getNodeId()).isEqualTo("a");
+    }
+
+    private static ClusterProperties properties(String nodeId) {
+        ClusterProperties properties = new ClusterProperties();
+        properties.setEnabled(true);
+        properties.setNodeId(nodeId);
+        properties.setLeaseDuration(Duration.ofSeconds(30));
+        return properties;
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            this.instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.tapestry.dataintegration;
+
+import com.amazonaws.AmazonServiceException;
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.service.InMemoryS3;
+import com.tapestry.dataintegration.service.JobExecutionRepository;
+import com.tapestry.dataintegration.service.JobProgress;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs pipelines end to end against an in-memory S3.
+ */
+@SpringBootTest
+class DataIntegrationTaskSchedulerTests {
+
+    @DynamicPropertySource
+    static void pipelines(DynamicPropertyRegistry registry) {
+        try {
+            Path file = Files.createTempFile("pipelines", ".yml");
+            file.toFile().deleteOnExit();
+            Files.writeString(file, """
+                    pipelines:
+                      - pl_name: "s3-copy"
+                        source:
+                          path: "s3://source/in/"
+                        target:
+                          path: "s3://target/out/"
+                        operation: "copy"
+                    """);
+            registry.add("scheduler.pipeline-file", file::toString);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @TestConfiguration
+    static class InMemoryS3Config {
+        @Bean(destroyMethod = "")
+        @Primary
+        InMemoryS3 inMemoryS3() {
+            return new InMemoryS3();
+        }
+    }
+
+    @Autowired
+    private DataIntegrationTaskScheduler scheduler;
+
+    @Autowired
+    private JobExecutionRepository jobExecutionRepository;
+
+    @Autowired
+    private InMemoryS3 s3;
+
+    @Test
+    void resumedRunRetriesKeysThatFailedBeforeTheLastRecordedOne() throws InterruptedException {
+        for (String name : new String[]{"a", "b", "c", "d", "e"}) {
+            s3.put("source", "in/" + name + ".csv", new byte[]{1});
+        }
+        AtomicBoolean failing = new AtomicBoolean(true);
+        s3.setInterceptor((operation, key) -> {
+            if (failing.get() && "copyObject".equals(operation) && "in/c.csv".equals(key)) {
+                throw new AmazonServiceException("Access Denied");
+            }
+        });
+        PipelineConfig.Pipeline pipeline = scheduler.findPipelineByName("s3-copy").orElseThrow();
+
+        JobProgress progress = new JobProgress("s3-copy");
+        assertThatThrownBy(() -> scheduler.runPipeline(pipeline, LocalDateTime.now(), progress))
+                .hasMessage("1 file(s) failed to transfer");
+        Long id = progress.snapshot().getJobExecutionId();
+        assertThat(jobExecutionRepository.findById(id)).get().extracting(JobExecution::getStatus).isEqualTo("FAILED");
+        assertThat(s3.keys("target")).containsExactly("out/a.csv", "out/b.csv", "out/d.csv", "out/e.csv");
+
+        failing.set(false);
+        JobProgress resumed = scheduler.resumeExecution(id);
+        for (int i = 0; i < 500 && !resumed.isFinished(); i++) {
+            Thread.sleep(20);
+        }
+
+        assertThat(resumed.snapshot().getStatus()).isEqualTo("SUCCESS");
+        assertThat(s3.keys("target")).contains("out/c.csv").hasSize(5);
+        // The other keys were not copied again.
+        assertThat(s3.requestCount("copyObject")).isEqualTo(6);
+        assertThat(jobExecutionRepository.findById(id)).get()
+                .extracting(JobExecution::getFilesProcessed).isEqualTo(5);
+    }
+}
@@ -0,0 +1,81 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.service.LocalStorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DirectoryWatchEventSourceTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final DirectoryWatchEventSource source = new DirectoryWatchEventSource(new LocalStorageBackend());
+
+    @AfterEach
+    void tearDown() {
+        source.stop();
+    }
+
+    @Test
+    void reportsFilesInExistingAndNewDirectories() throws Exception {
+        Path inbound = tempDir.resolve("inbound");
+        Files.createDirectories(inbound.resolve("existing"));
+        Set<String> changed = ConcurrentHashMap.newKeySet();
+        Set<String> removed = ConcurrentHashMap.newKeySet();
+        source.watch(pipeline(inbound), new PipelineEventSource.Sink() {
+            @Override
+            public void fileChanged(String relativePath) {
+                changed.add(relativePath);
+            }
+
+            @Override
+            public void fileRemoved(String relativePath) {
+                removed.add(relativePath);
+            }
+
+            @Override
+            public void rescan() {
+            }
+        });
+
+        write(inbound.resolve("a.csv"));
+        write(inbound.resolve("existing/b.csv"));
+        write(inbound.resolve("new/deeper/c.csv"));
+        awaitUntil(() -> changed.containsAll(Set.of("a.csv", "existing/b.csv", "new/deeper/c.csv")));
+
+        Files.delete(inbound.resolve("a.csv"));
+        awaitUntil(() -> removed.contains("a.csv"));
+    }
+
+    private static void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "data");
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met within 10s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static PipelineConfig.Pipeline pipeline(Path source) {
+        PipelineConfig.Pipeline pipeline = new PipelineConfig.Pipeline();
+        pipeline.setPlName("inbound");
+        pipeline.setSource(new PipelineConfig.Source());
+        pipeline.getSource().setPath(source.toString());
+        return pipeline;
+    }
+}
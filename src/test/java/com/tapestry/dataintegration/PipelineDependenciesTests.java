@@ -0,0 +1,150 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.service.JobExecutionRepository;
+import com.tapestry.dataintegration.service.PipelineTriggerStateRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Each {@code PipelineDependencies} stands in for a node; what they share is the database.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PipelineDependenciesTests {
+
+    private static final LocalDateTime SLOT = LocalDateTime.parse("2024-03-01T01:55:00");
+    private static final LocalDateTime WATCHED = LocalDateTime.parse("2024-03-01T03:00:00");
+
+    @Autowired
+    private JobExecutionRepository jobExecutionRepository;
+
+    @Autowired
+    private PipelineTriggerStateRepository triggerStateRepository;
+
+    private final List<String> released = new ArrayList<>();
+    /** Keys each upstream run produced, by job execution id; absent when unknown. */
+    private final Map<Long, List<String>> produced = new HashMap<>();
+    private LocalDateTime now = WATCHED;
+
+    @AfterEach
+    void tearDown() {
+        jobExecutionRepository.deleteAll();
+        triggerStateRepository.deleteAll();
+    }
+
+    @Test
+    void releasesOnceEveryUpstreamSucceededWithTheirKeys() {
+        PipelineDependencies dependencies = node();
+        PipelinePlan join = plan("join", "left", "right");
+        dependencies.watch(join);
+
+        succeeded("left", SLOT, List.of("a.csv"));
+        succeeded("left", SLOT, List.of("b.csv"));
+        assertThat(dependencies.check(join)).isFalse();
+
+        succeeded("right", SLOT.plusMinutes(5), List.of("a.csv", "c.csv"));
+        assertThat(dependencies.check(join)).isTrue();
+        assertThat(released).containsExactly("join@02:00:[a.csv, b.csv, c.csv]");
+
+        // The next release needs both upstream pipelines again.
+        succeeded("right", SLOT, List.of("d.csv"));
+        assertThat(dependencies.check(join)).isFalse();
+        assertThat(released).hasSize(1);
+    }
+
+    @Test
+    void upstreamSuccessesSurviveARestartAndReleaseOnce() {
+        PipelinePlan join = plan("join", "left", "right");
+        node().watch(join);
+        succeeded("left", SLOT, List.of("a.csv"));
+        assertThat(node().check(join)).isFalse();
+
+        // Another node, or this one after a restart, sees the earlier success.
+        PipelineDependencies restarted = node();
+        restarted.watch(join);
+        succeeded("right", SLOT, List.of("b.csv"));
+        PipelineDependencies other = node();
+
+        assertThat(restarted.check(join)).isTrue();
+        assertThat(other.check(join)).isFalse();
+        assertThat(released).containsExactly("join@01:55:[a.csv, b.csv]");
+    }
+
+    @Test
+    void runsTheWholeSourceWhenAnUpstreamCannotNameItsKeys() {
+        PipelineDependencies dependencies = node();
+        PipelinePlan join = plan("join", "left", "right");
+        PipelinePlan single = plan("single", "left");
+        dependencies.watch(join);
+        dependencies.watch(single);
+
+        succeeded("left", SLOT, List.of("a.csv"));
+        assertThat(dependencies.check(single)).isTrue();
+        succeeded("right", SLOT, null);
+        assertThat(dependencies.check(join)).isTrue();
+
+        assertThat(released).containsExactly("single@01:55:[a.csv]", "join@01:55:*");
+    }
+
+    @Test
+    void successesBeforeThePipelineWasWatchedDoNotCount() {
+        PipelineDependencies dependencies = node();
+        PipelinePlan single = plan("single", "left");
+        now = WATCHED.minusHours(1);
+        succeeded("left", SLOT, List.of("a.csv"));
+
+        dependencies.watch(single);
+
+        assertThat(dependencies.check(single)).isFalse();
+        assertThat(released).isEmpty();
+    }
+
+    private PipelineDependencies node() {
+        return new PipelineDependencies(jobExecutionRepository, triggerStateRepository,
+                Clock.fixed(WATCHED.toInstant(ZoneOffset.UTC), ZoneOffset.UTC),
+                (upstream, downstream, slot) -> produced.get(upstream.getId()),
+                (pipeline, slot, keys) -> released.add(pipeline.getPlName() + "@" + slot.toLocalTime() + ":"
+                        + (keys == null ? "*" : keys)));
+    }
+
+    private void succeeded(String pipelineName, LocalDateTime slot, List<String> keys) {
+        now = now.plusSeconds(1);
+        JobExecution jobExecution = new JobExecution();
+        jobExecution.setPipelineName(pipelineName);
+        jobExecution.setSlot(slot);
+        jobExecution.setStartTime(now);
+        jobExecution.setEndTime(now);
+        jobExecution.setStatus("SUCCESS");
+        jobExecutionRepository.save(jobExecution);
+        if (keys != null) {
+            produced.put(jobExecution.getId(), keys);
+        }
+    }
+
+    private static PipelinePlan plan(String name, String... dependsOn) {
+        PipelineConfig.Pipeline pipeline = new PipelineConfig.Pipeline();
+        pipeline.setPlName(name);
+        pipeline.setSource(new PipelineConfig.Source());
+        pipeline.getSource().setPath("s3://in/" + name + "/");
+        pipeline.setTarget(new PipelineConfig.Target());
+        pipeline.getTarget().setPath("s3://out/" + name + "/");
+        pipeline.setDependsOn(List.of(dependsOn));
+        return PipelinePlan.compile(pipeline);
+    }
+}
@@ -0,0 +1,156 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.service.JobProgress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineDispatcherTests {
+
+    private static final ZonedDateTime SLOT = ZonedDateTime.of(2024, 3, 1, 2, 0, 0, 0, ZoneOffset.UTC);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final PipelineDispatcher dispatcher = new PipelineDispatcher(executor, Clock.systemUTC(), "skip",
+            (pipeline, slot, progress) -> {
+                started.add(pipeline.getPlName() + "@" + slot.toLocalTime());
+                await(release);
+            });
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void skipsRunWhilePreviousIsInProgress() throws Exception {
+        PipelineConfig.Pipeline pipeline = pipeline("p", "skip", null);
+
+        assertThat(dispatcher.dispatch(pipeline, SLOT, new JobProgress("p"))).isTrue();
+        waitFor(1);
+        JobProgress skipped = new JobProgress("p");
+        assertThat(dispatcher.dispatch(pipeline, SLOT.plusMinutes(1), skipped)).isFalse();
+        assertThat(skipped.snapshot().getStatus()).isEqualTo(JobProgress.SKIPPED);
+        assertThat(skipped.isFinished()).isTrue();
+
+        assertThat(dispatcher.statuses()).singleElement()
+                .satisfies(status -> {
+                    assertThat(status.getRunning()).isEqualTo(1);
+                    assertThat(status.getSkippedRuns()).isEqualTo(1);
+                });
+    }
+
+    @Test
+    void queuedRunStartsWhenPreviousFinishes() throws Exception {
+        PipelineConfig.Pipeline pipeline = pipeline("p", "queue", null);
+
+        dispatcher.dispatch(pipeline, SLOT, new JobProgress("p"));
+        dispatcher.dispatch(pipeline, SLOT.plusMinutes(1), new JobProgress("p"));
+        waitFor(1);
+        assertThat(dispatcher.statuses().get(0).getWaiting()).isEqualTo(1);
+        assertThat(dispatcher.statuses().get(0).getCurrentLagMillis()).isPositive();
+
+        release.countDown();
+        waitFor(2);
+        assertThat(started).containsExactly("p@02:00", "p@02:01");
+    }
+
+    @Test
+    void concurrentPolicyIsBoundedPerPipeline() throws Exception {
+        PipelineConfig.Pipeline pipeline = pipeline("p", "concurrent", 2);
+        PipelineConfig.Pipeline other = pipeline("other", null, null);
+
+        dispatcher.dispatch(pipeline, SLOT, new JobProgress("p"));
+        dispatcher.dispatch(pipeline, SLOT.plusMinutes(1), new JobProgress("p"));
+        dispatcher.dispatch(pipeline, SLOT.plusMinutes(2), new JobProgress("p"));
+        dispatcher.dispatch(other, SLOT, new JobProgress("other"));
+        waitFor(3);
+
+        assertThat(started).containsExactlyInAnyOrder("p@02:00", "p@02:01", "other@02:00");
+        assertThat(dispatcher.statuses()).filteredOn(status -> status.getPipelineName().equals("p"))
+                .singleElement()
+                .satisfies(status -> assertThat(status.getWaiting()).isEqualTo(1));
+    }
+
+    @Test
+    void detachedRunHoldsItsSlotUntilItFinishes() throws Exception {
+        PipelineDispatcher detaching = new PipelineDispatcher(executor, Clock.systemUTC(), "skip",
+                (pipeline, slot, progress) -> {
+                    started.add(pipeline.getPlName() + "@" + slot.toLocalTime());
+                    progress.detach();
+                });
+        PipelineConfig.Pipeline pipeline = pipeline("p", "skip", null);
+        JobProgress first = new JobProgress("p");
+
+        detaching.dispatch(pipeline, SLOT, first);
+        waitFor(1);
+        Thread.sleep(50);
+        assertThat(detaching.dispatch(pipeline, SLOT.plusMinutes(1), new JobProgress("p"))).isFalse();
+
+        first.finished("SUCCESS", null, null);
+        assertThat(detaching.status("p").getRunning()).isZero();
+        assertThat(detaching.dispatch(pipeline, SLOT.plusMinutes(2), new JobProgress("p"))).isTrue();
+        waitFor(2);
+        assertThat(started).containsExactly("p@02:00", "p@02:02");
+    }
+
+    @Test
+    void runFailingBeforeItsJobExecutionStartsIsFinishedAsFailed() throws Exception {
+        PipelineDispatcher failing = new PipelineDispatcher(executor, Clock.systemUTC(), "skip",
+                (pipeline, slot, progress) -> {
+                    throw new IllegalArgumentException("Unknown placeholder {nope}");
+                });
+        JobProgress progress = new JobProgress("p");
+        CountDownLatch finished = new CountDownLatch(1);
+        progress.whenFinished(finished::countDown);
+
+        failing.dispatch(pipeline("p", "skip", null), SLOT, progress);
+
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(progress.snapshot().getStatus()).isEqualTo("FAILED");
+        assertThat(progress.snapshot().getErrorMessage()).isEqualTo("Unknown placeholder {nope}");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (failing.status("p").getRunning() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(failing.dispatch(pipeline("p", "skip", null), SLOT.plusMinutes(1), new JobProgress("p"))).isTrue();
+    }
+
+    private void waitFor(int runs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (started.size() < runs && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(started).hasSizeGreaterThanOrEqualTo(runs);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static PipelineConfig.Pipeline pipeline(String name, String overlapPolicy, Integer maxConcurrentRuns) {
+        PipelineConfig.Pipeline pipeline = new PipelineConfig.Pipeline();
+        pipeline.setPlName(name);
+        pipeline.setOverlapPolicy(overlapPolicy);
+        pipeline.setMaxConcurrentRuns(maxConcurrentRuns);
+        return pipeline;
+    }
+}
@@ -0,0 +1,179 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PipelineEventTriggerTests {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-03-01T01:00:00Z"));
+    private final List<String> fired = new ArrayList<>();
+    private boolean accepting = true;
+    private final PipelineEventTrigger trigger = new PipelineEventTrigger(clock, Duration.ofSeconds(5),
+            Duration.ofSeconds(30), (pipeline, files) -> {
+                if (accepting) {
+                    fired.add(pipeline.getPlName() + ":" + (files == null ? "*" : String.join(",", files)));
+                }
+                return accepting;
+            });
+    private final StubEventSource events = new StubEventSource();
+
+    @Test
+    void coalescesABurstIntoOneBatchOnceQuiet() {
+        events.watch(pipeline("inbound"), trigger.register(pipeline("inbound")));
+
+        events.changed("inbound", "a.csv");
+        clock.advance(Duration.ofSeconds(3));
+        events.changed("inbound", "b/c.csv");
+        events.changed("inbound", "a.csv");
+        clock.advance(Duration.ofSeconds(4));
+        trigger.fireDue();
+        assertThat(fired).isEmpty();
+
+        clock.advance(Duration.ofSeconds(1));
+        trigger.fireDue();
+        trigger.fireDue();
+        assertThat(fired).containsExactly("inbound:a.csv,b/c.csv");
+    }
+
+    @Test
+    void firesAtTheMaxDelayUnderASteadyStream() {
+        events.watch(pipeline("inbound"), trigger.register(pipeline("inbound")));
+
+        for (int second = 0; second < 30; second += 2) {
+            events.changed("inbound", "file" + second + ".csv");
+            clock.advance(Duration.ofSeconds(2));
+            trigger.fireDue();
+        }
+
+        assertThat(fired).hasSize(1);
+        assertThat(fired.get(0)).startsWith("inbound:file0.csv,").endsWith(",file28.csv");
+    }
+
+    @Test
+    void keepsRefusedBatchesAndDropsRemovedFiles() {
+        events.watch(pipeline("inbound"), trigger.register(pipeline("inbound")));
+        events.changed("inbound", "a.csv");
+        events.changed("inbound", "a.csv.tmp");
+        events.removed("inbound", "a.csv.tmp");
+
+        accepting = false;
+        clock.advance(Duration.ofSeconds(5));
+        trigger.fireDue();
+        events.changed("inbound", "b.csv");
+        accepting = true;
+        clock.advance(Duration.ofSeconds(5));
+        trigger.fireDue();
+
+        assertThat(fired).containsExactly("inbound:a.csv,b.csv");
+    }
+
+    @Test
+    void rescansTheWholeSourceAfterLostEvents() {
+        PipelineConfig.Pipeline pipeline = pipeline("inbound");
+        pipeline.setDebounce(Duration.ofSeconds(1));
+        events.watch(pipeline, trigger.register(pipeline));
+
+        events.changed("inbound", "a.csv");
+        events.rescan("inbound");
+        events.changed("inbound", "b.csv");
+        clock.advance(Duration.ofSeconds(1));
+        trigger.fireDue();
+
+        assertThat(fired).containsExactly("inbound:*");
+    }
+
+    @Test
+    void rejectsUnknownTriggersAndTemplatedSources() {
+        PipelineConfig.Pipeline pipeline = pipeline("inbound");
+        pipeline.setTrigger("inotify");
+        assertThatThrownBy(() -> PipelineEventTrigger.isWatched(pipeline))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        pipeline.getSource().setPath("/data/in/{date_folder}");
+        assertThatThrownBy(() -> trigger.register(pipeline)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static PipelineConfig.Pipeline pipeline(String name) {
+        PipelineConfig.Pipeline pipeline = new PipelineConfig.Pipeline();
+        pipeline.setPlName(name);
+        pipeline.setTrigger(PipelineEventTrigger.WATCH);
+        PipelineConfig.Source source = new PipelineConfig.Source();
+        source.setPath("/data/in");
+        pipeline.setSource(source);
+        return pipeline;
+    }
+
+    /**
+     * Stands in for a notification channel such as an S3 event queue.
+     */
+    private static class StubEventSource implements PipelineEventSource {
+        private final Map<String, Sink> sinks = new HashMap<>();
+
+        @Override
+        public boolean supports(PipelineConfig.Pipeline pipeline) {
+            return true;
+        }
+
+        @Override
+        public void watch(PipelineConfig.Pipeline pipeline, Sink sink) {
+            sinks.put(pipeline.getPlName(), sink);
+        }
+
+        @Override
+        public void stop() {
+            sinks.clear();
+        }
+
+        void changed(String pipelineName, String path) {
+            sinks.get(pipelineName).fileChanged(path);
+        }
+
+        void removed(String pipelineName, String path) {
+            sinks.get(pipelineName).fileRemoved(path);
+        }
+
+        void rescan(String pipelineName) {
+            sinks.get(pipelineName).rescan();
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            this.instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import com.tapestry.dataintegration.config.SchedulerProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PipelinePlansTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rendersPathTemplates() {
+        LocalDateTime slot = LocalDateTime.of(2024, 3, 1, 2, 5);
+
+        assertThat(PathTemplate.compile("s3://in/{date_folder}/").render(slot, "pl")).isEqualTo("s3://in/20240301/");
+        assertThat(PathTemplate.compile("/out/{pipeline}/{year}/{month}/{day}/{hour}{minute}").render(slot, "pl"))
+                .isEqualTo("/out/pl/2024/03/01/0205");
+        assertThat(PathTemplate.compile("/out/{date:yyyy-MM-dd'T'HH}.csv").render(slot, "pl"))
+                .isEqualTo("/out/2024-03-01T02.csv");
+        assertThatThrownBy(() -> PathTemplate.compile("/out/{week}")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PathTemplate.compile("/out/{year")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void reloadsChangedPipelinesAndKeepsThemWhenTheFileIsInvalid() throws IOException {
+        Path file = dir.resolve("pipelines.yml");
+        write(file, pipeline("daily", "0 2 * * *"));
+        SchedulerProperties properties = new SchedulerProperties();
+        properties.setPipelineFile(file.toString());
+        PipelinePlans plans = new PipelinePlans(new PipelineConfig(), properties);
+        List<String> reloads = new ArrayList<>();
+        plans.start((previous, current) -> reloads.add(previous.keySet() + "->" + current.keySet()));
+        plans.stop();
+
+        PipelinePlan daily = plans.find("daily").orElseThrow();
+        assertThat(daily.getCron().toString()).isEqualTo("0 0 2 * * *");
+        assertThat(plans.planFor(daily.getPipeline())).isSameAs(daily);
+        assertThat(plans.reload()).isFalse();
+
+        write(file, pipeline("daily", "0 3 * * *") + pipeline("hourly", "0 * * * *"));
+        assertThat(plans.reload()).isTrue();
+        assertThat(plans.find("daily").orElseThrow().getCron().toString()).isEqualTo("0 0 3 * * *");
+        assertThat(plans.all()).extracting(PipelinePlan::getName).containsExactly("daily", "hourly");
+        // The plan a run started with is untouched.
+        assertThat(daily.getPipeline().getSchedule()).isEqualTo("0 2 * * *");
+
+        write(file, pipeline("daily", "not a cron"));
+        assertThat(plans.reload()).isFalse();
+        assertThat(plans.all()).extracting(PipelinePlan::getName).containsExactly("daily", "hourly");
+        assertThat(reloads).containsExactly("[daily]->[daily, hourly]");
+    }
+
+    @Test
+    void rejectsUnknownAndCyclicDependencies() throws IOException {
+        Path file = dir.resolve("pipelines.yml");
+        SchedulerProperties properties = new SchedulerProperties();
+        properties.setPipelineFile(file.toString());
+
+        write(file, pipeline("a", "0 2 * * *") + pipeline("b", "0 2 * * *") + "    depends_on: [\"a\"]\n");
+        PipelinePlans plans = new PipelinePlans(new PipelineConfig(), properties);
+        assertThat(plans.downstreamOf("a")).extracting(PipelinePlan::getName).containsExactly("b");
+
+        write(file, pipeline("a", "0 2 * * *") + "    depends_on: [\"c\"]\n");
+        assertThatThrownBy(() -> new PipelinePlans(new PipelineConfig(), properties))
+                .hasMessageContaining("unknown pipeline c");
+
+        write(file, pipeline("a", "0 2 * * *") + "    depends_on: [\"b\"]\n"
+                + pipeline("b", "0 2 * * *") + "    depends_on: [\"a\"]\n");
+        assertThatThrownBy(() -> new PipelinePlans(new PipelineConfig(), properties))
+                .hasMessageContaining("cycle");
+    }
+
+    @Test
+    void rejectsIncrementalMoves() throws IOException {
+        Path file = dir.resolve("pipelines.yml");
+        SchedulerProperties properties = new SchedulerProperties();
+        properties.setPipelineFile(file.toString());
+
+        write(file, pipeline("a", "0 2 * * *") + "    incremental: true\n");
+        assertThat(new PipelinePlans(new PipelineConfig(), properties).all()).hasSize(1);
+
+        write(file, pipeline("a", "0 2 * * *").replace("\"copy\"", "\"move\"") + "    incremental: true\n");
+        assertThatThrownBy(() -> new PipelinePlans(new PipelineConfig(), properties))
+                .hasMessageContaining("cannot be incremental");
+    }
+
+    @Test
+    void rejectsUnknownOverlapPolicies() throws IOException {
+        Path file = dir.resolve("pipelines.yml");
+        SchedulerProperties properties = new SchedulerProperties();
+        properties.setPipelineFile(file.toString());
+
+        write(file, pipeline("a", "0 2 * * *") + "    overlap_policy: \"queue\"\n");
+        assertThat(new PipelinePlans(new PipelineConfig(), properties).all()).hasSize(1);
+
+        write(file, pipeline("a", "0 2 * * *") + "    overlap_policy: \"queued\"\n");
+        assertThatThrownBy(() -> new PipelinePlans(new PipelineConfig(), properties))
+                .hasMessageContaining("Unknown overlap policy 'queued' for pipeline a");
+    }
+
+    private static void write(Path file, String pipelines) throws IOException {
+        Files.writeString(file, "pipelines:\n" + pipelines);
+    }
+
+    private static String pipeline(String name, String schedule) {
+        return "  - pl_name: \"" + name + "\"\n"
+                + "    schedule: \"" + schedule + "\"\n"
+                + "    source:\n"
+                + "      path: \"s3://in/" + name + "/{date_folder}/\"\n"
+                + "    target:\n"
+                + "      path: \"/out/" + name + "\"\n"
+                + "    operation: \"copy\"\n";
+    }
+}
@@ -0,0 +1,134 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.PipelineConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineTriggerQueueTests {
+
+    private static final ZonedDateTime START = ZonedDateTime.of(2024, 3, 1, 1, 54, 30, 0, ZoneOffset.UTC);
+
+    private final MutableClock clock = new MutableClock(START.toInstant());
+    private final List<String> fired = new ArrayList<>();
+    private final PipelineTriggerQueue queue = new PipelineTriggerQueue(clock, Duration.ofSeconds(60), "fire_once",
+            (pipeline, slot) -> fired.add(pipeline.getPlName() + "@" + slot.toLocalTime()));
+
+    @Test
+    void firesEachSlotExactlyOnce() {
+        queue.schedule(pipeline("every-minute", "* * * * *", null));
+        queue.schedule(pipeline("daily", "55 1 * * *", null));
+
+        queue.fireDue();
+        assertThat(fired).isEmpty();
+
+        clock.set(START.plusSeconds(30));
+        queue.fireDue();
+        queue.fireDue();
+        assertThat(fired).containsExactlyInAnyOrder("every-minute@01:55", "daily@01:55");
+
+        clock.set(START.plusSeconds(95));
+        queue.fireDue();
+        assertThat(fired).hasSize(3).last().isEqualTo("every-minute@01:56");
+    }
+
+    @Test
+    void appliesMisfirePolicies() {
+        queue.schedule(pipeline("once", "* * * * *", "fire_once"));
+        queue.schedule(pipeline("all", "* * * * *", "fire_all"));
+        queue.schedule(pipeline("skip", "* * * * *", "skip"));
+
+        clock.set(START.plusMinutes(4).plusSeconds(30));
+        queue.fireDue();
+
+        assertThat(fired).containsExactlyInAnyOrder(
+                "once@01:59",
+                "all@01:55", "all@01:56", "all@01:57", "all@01:58", "all@01:59",
+                "skip@01:59");
+
+        fired.clear();
+        clock.set(START.plusMinutes(9).plusSeconds(30));
+        queue.fireDue();
+        assertThat(fired).filteredOn(name -> name.startsWith("skip")).containsExactly("skip@02:04");
+    }
+
+    @Test
+    void catchesUpOnSlotsMissedSinceTheLastFiredSlot() {
+        // Last fired at 01:51 before a restart; the queue starts again at 01:54:30.
+        ZonedDateTime lastSlot = START.withMinute(51).withSecond(0);
+        queue.schedule(pipeline("once", "* * * * *", "fire_once"), CronExpression.parse("0 * * * * *"), lastSlot);
+        queue.schedule(pipeline("all", "* * * * *", "fire_all"), CronExpression.parse("0 * * * * *"), lastSlot);
+        queue.schedule(pipeline("skip", "* * * * *", "skip"), CronExpression.parse("0 * * * * *"), lastSlot);
+        queue.schedule(pipeline("new", "* * * * *", "fire_all"), CronExpression.parse("0 * * * * *"), null);
+
+        queue.fireDue();
+
+        assertThat(fired).containsExactlyInAnyOrder(
+                "once@01:54", "all@01:52", "all@01:53", "all@01:54", "skip@01:54");
+    }
+
+    @Test
+    void longOutageFiresOncePerPipelineAndCapsCatchUp() {
+        // Down for two days, far more slots than fire_all catches up on.
+        ZonedDateTime lastSlot = START.minusDays(2).withSecond(0);
+        queue.schedule(pipeline("once", "* * * * *", "fire_once"), CronExpression.parse("0 * * * * *"), lastSlot);
+        queue.schedule(pipeline("all", "* * * * *", "fire_all"), CronExpression.parse("0 * * * * *"), lastSlot);
+        queue.schedule(pipeline("skip", "* * * * *", "skip"), CronExpression.parse("0 * * * * *"), lastSlot);
+
+        queue.fireDue();
+
+        assertThat(fired).filteredOn(name -> name.startsWith("once")).containsExactly("once@01:54");
+        assertThat(fired).filteredOn(name -> name.startsWith("skip")).containsExactly("skip@01:54");
+        assertThat(fired).filteredOn(name -> name.startsWith("all")).hasSize(1000)
+                .endsWith("all@01:54");
+
+        fired.clear();
+        queue.fireDue();
+        assertThat(fired).isEmpty();
+    }
+
+    private static PipelineConfig.Pipeline pipeline(String name, String schedule, String misfirePolicy) {
+        PipelineConfig.Pipeline pipeline = new PipelineConfig.Pipeline();
+        pipeline.setPlName(name);
+        pipeline.setSchedule(schedule);
+        pipeline.setMisfirePolicy(misfirePolicy);
+        return pipeline;
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void set(ZonedDateTime time) {
+            this.instant = time.toInstant();
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
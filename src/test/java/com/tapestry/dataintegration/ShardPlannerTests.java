@@ -0,0 +1,171 @@
+package com.tapestry.dataintegration;
+
+import com.tapestry.dataintegration.config.ClusterProperties;
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.config.TransferProperties;
+import com.tapestry.dataintegration.service.InMemoryS3;
+import com.tapestry.dataintegration.service.JobExecutionRepository;
+import com.tapestry.dataintegration.service.JobProgress;
+import com.tapestry.dataintegration.service.S3KeyLister;
+import com.tapestry.dataintegration.service.S3Location;
+import com.tapestry.dataintegration.service.S3RateController;
+import com.tapestry.dataintegration.service.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ShardPlannerTests {
+
+    @Autowired
+    private JobExecutionRepository jobExecutionRepository;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private ShardPlanner planner;
+
+    @BeforeEach
+    void setUp() {
+        TransferProperties transferProperties = new TransferProperties();
+        ClusterProperties clusterProperties = new ClusterProperties();
+        clusterProperties.setShardSize(10);
+        planner = new ShardPlanner(jobExecutionRepository,
+                new S3KeyLister(s3, new S3RateController(transferProperties)), transferProperties,
+                clusterProperties, new TransferMetrics(new SimpleMeterRegistry()));
+        for (int i = 0; i < 25; i++) {
+            s3.put("source", String.format("in/%02d.csv", i), new byte[]{1});
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutionRepository.deleteAll();
+    }
+
+    @Test
+    void runFinishesWithTheTotalsOfItsShardsOnceTheLastIsDone() {
+        JobProgress progress = new JobProgress("p");
+        progress.started();
+        JobExecution parent = parent();
+
+        assertThat(planner.plan(S3Location.parse("s3://source/in/"), parent, progress)).isTrue();
+        assertThat(progress.isDetached()).isTrue();
+        List<JobExecution> shards = jobExecutionRepository.findByParentId(parent.getId());
+        assertThat(shards).extracting(JobExecution::getShardEndKey)
+                .containsExactly("in/09.csv", "in/19.csv", "in/24.csv");
+        assertThat(shards.get(1).getShardFirstKey()).isEqualTo("in/10.csv");
+
+        finish(shards.get(0), "SUCCESS", 10);
+        finish(shards.get(1), "SUCCESS", 10);
+        planner.completeFinished();
+        assertThat(progress.isFinished()).isFalse();
+
+        finish(shards.get(2), "SUCCESS", 5);
+        planner.completeFinished();
+        assertThat(progress.isFinished()).isTrue();
+        assertThat(progress.snapshot().getStatus()).isEqualTo("SUCCESS");
+        JobExecution finished = jobExecutionRepository.findById(parent.getId()).orElseThrow();
+        assertThat(finished.getStatus()).isEqualTo("SUCCESS");
+        assertThat(finished.getFilesProcessed()).isEqualTo(25);
+        assertThat(finished.getEndTime()).isNotNull();
+    }
+
+    @Test
+    void failedShardFailsTheRunAndCancellingCancelsPendingShards() {
+        JobProgress progress = new JobProgress("p");
+        progress.started();
+        JobExecution parent = parent();
+        planner.plan(S3Location.parse("s3://source/in/"), parent, progress);
+        List<JobExecution> shards = jobExecutionRepository.findByParentId(parent.getId());
+
+        finish(shards.get(0), "FAILED", 3);
+        progress.cancel();
+        planner.completeFinished();
+
+        assertThat(jobExecutionRepository.findByParentId(parent.getId())).extracting(JobExecution::getStatus)
+                .containsExactly("FAILED", JobProgress.CANCELLED, JobProgress.CANCELLED);
+        assertThat(progress.snapshot().getStatus()).isEqualTo("FAILED");
+        assertThat(progress.snapshot().getErrorMessage()).isEqualTo("1 of 3 shard(s) failed");
+    }
+
+    @Test
+    void cutsShardsWithinPartitionsAndResumedPlanningOnlyShardsNewKeys() {
+        ExecutorService listExecutor = Executors.newFixedThreadPool(4);
+        try {
+            TransferProperties transferProperties = new TransferProperties();
+            ClusterProperties clusterProperties = new ClusterProperties();
+            clusterProperties.setShardSize(10);
+            ShardPlanner partitioned = new ShardPlanner(jobExecutionRepository,
+                    new S3KeyLister(s3, new S3RateController(transferProperties), listExecutor), transferProperties,
+                    clusterProperties, new TransferMetrics(new SimpleMeterRegistry()));
+            putKeys("a/", 15);
+            putKeys("b/", 3);
+            putKeys("c/", 4);
+            JobExecution parent = parent();
+
+            assertThat(partitioned.plan(S3Location.parse("s3://folders/in/"), parent, new JobProgress("p"))).isTrue();
+            // The rest of a/ and all of b/ are adjacent, so they share a shard.
+            assertThat(jobExecutionRepository.findByParentId(parent.getId()))
+                    .extracting(shard -> shard.getShardFirstKey() + ".." + shard.getShardEndKey())
+                    .containsExactlyInAnyOrder("in/a/00.csv..in/a/09.csv", "in/a/10.csv..in/b/02.csv",
+                            "in/c/00.csv..in/c/03.csv");
+
+            putKeys("d/", 2);
+            assertThat(partitioned.plan(S3Location.parse("s3://folders/in/"), parent, new JobProgress("p"))).isTrue();
+            assertThat(jobExecutionRepository.findByParentId(parent.getId())).hasSize(4)
+                    .extracting(JobExecution::getShardFirstKey).contains("in/d/00.csv");
+        } finally {
+            listExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void listingThatFitsInOneShardIsNotSharded() {
+        ClusterProperties clusterProperties = new ClusterProperties();
+        clusterProperties.setShardSize(100);
+        TransferProperties transferProperties = new TransferProperties();
+        ShardPlanner large = new ShardPlanner(jobExecutionRepository,
+                new S3KeyLister(s3, new S3RateController(transferProperties)), transferProperties,
+                clusterProperties, new TransferMetrics(new SimpleMeterRegistry()));
+        JobProgress progress = new JobProgress("p");
+
+        assertThat(large.plan(S3Location.parse("s3://source/in/"), parent(), progress)).isFalse();
+        assertThat(progress.isDetached()).isFalse();
+    }
+
+    private void putKeys(String folder, int count) {
+        for (int i = 0; i < count; i++) {
+            s3.put("folders", String.format("in/%s%02d.csv", folder, i), new byte[]{1});
+        }
+    }
+
+    private JobExecution parent() {
+        JobExecution parent = new JobExecution();
+        parent.setPipelineName("p");
+        parent.setSourcePath("s3://source/in/");
+        parent.setTargetPath("s3://target/out/");
+        parent.setOperation("copy");
+        parent.setStartTime(LocalDateTime.now());
+        parent.setStatus(JobProgress.RUNNING);
+        return jobExecutionRepository.save(parent);
+    }
+
+    private void finish(JobExecution shard, String status, int files) {
+        shard.setStatus(status);
+        shard.setFilesProcessed(files);
+        shard.setEndTime(LocalDateTime.now());
+        jobExecutionRepository.save(shard);
+    }
+}
@@ -0,0 +1,401 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Minimal thread-safe S3 stand-in for tests. Only the calls the transfer engines make are
+ * implemented; everything else falls through to {@link AbstractAmazonS3} and throws.
+ */
+public class InMemoryS3 extends AbstractAmazonS3 {
+
+    private final Map<String, NavigableMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private volatile BiConsumer<String, String> interceptor = (operation, key) -> { };
+
+    /**
+     * Called with the operation name and key before every request; throw from it to inject
+     * failures, or sleep in it to simulate latency.
+     */
+    public void setInterceptor(BiConsumer<String, String> interceptor) {
+        this.interceptor = interceptor;
+    }
+
+    public void put(String bucket, String key, byte[] content) {
+        bucket(bucket).put(key, new StoredObject(content));
+    }
+
+    /**
+     * Stores an object as a multipart upload of the given parts would, with the ETag S3 computes
+     * from their MD5s.
+     */
+    public void putInParts(String bucket, String key, byte[]... parts) {
+        bucket(bucket).put(key, StoredObject.assemble(Arrays.asList(parts)));
+    }
+
+    public byte[] content(String bucket, String key) {
+        StoredObject object = bucket(bucket).get(key);
+        return object == null ? null : object.content;
+    }
+
+    public Set<String> keys(String bucket) {
+        return bucket(bucket).keySet();
+    }
+
+    public int requestCount(String operation) {
+        AtomicInteger count = requestCounts.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    public int openUploads() {
+        return uploads.size();
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+        intercept("listObjectsV2", request.getPrefix());
+        String prefix = request.getPrefix() == null ? "" : request.getPrefix();
+        String after = request.getContinuationToken() != null ? request.getContinuationToken() : request.getStartAfter();
+        int maxKeys = request.getMaxKeys() == null ? 1000 : request.getMaxKeys();
+        NavigableMap<String, StoredObject> candidates = bucket(request.getBucketName()).tailMap(prefix, true);
+        if (after != null && after.compareTo(prefix) >= 0) {
+            candidates = candidates.tailMap(after, false);
+        }
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(request.getBucketName());
+        result.setPrefix(request.getPrefix());
+        result.setDelimiter(request.getDelimiter());
+        String lastKey = null;
+        int returned = 0;
+        for (Map.Entry<String, StoredObject> entry : candidates.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            if (returned == maxKeys) {
+                result.setTruncated(true);
+                result.setNextContinuationToken(lastKey);
+                break;
+            }
+            String delimiter = request.getDelimiter();
+            int delimiterIndex = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            if (delimiterIndex >= 0) {
+                String commonPrefix = key.substring(0, delimiterIndex + delimiter.length());
+                if (!result.getCommonPrefixes().contains(commonPrefix)) {
+                    result.getCommonPrefixes().add(commonPrefix);
+                    returned++;
+                }
+                lastKey = commonPrefix + Character.MAX_VALUE;
+                continue;
+            }
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(key);
+            summary.setSize(entry.getValue().content.length);
+            summary.setETag(entry.getValue().eTag);
+            summary.setLastModified(entry.getValue().lastModified);
+            result.getObjectSummaries().add(summary);
+            lastKey = key;
+            returned++;
+        }
+        result.setKeyCount(returned);
+        return result;
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+        return getObjectMetadata(new GetObjectMetadataRequest(bucketName, key));
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+        intercept("getObjectMetadata", request.getKey());
+        StoredObject object = require(request.getBucketName(), request.getKey());
+        ObjectMetadata metadata = new ObjectMetadata();
+        Integer partNumber = request.getPartNumber();
+        if (partNumber == null) {
+            metadata.setContentLength(object.content.length);
+        } else if (object.partLengths == null) {
+            // S3 treats an object written in one request as a single part.
+            metadata.setContentLength(partNumber == 1 ? object.content.length : 0);
+        } else {
+            metadata.setContentLength(partNumber <= object.partLengths.length
+                    ? object.partLengths[partNumber - 1] : 0);
+        }
+        metadata.setHeader("ETag", object.eTag);
+        metadata.setLastModified(object.lastModified);
+        return metadata;
+    }
+
+    @Override
+    public CopyObjectResult copyObject(String sourceBucketName, String sourceKey,
+                                       String destinationBucketName, String destinationKey) {
+        intercept("copyObject", sourceKey);
+        StoredObject source = require(sourceBucketName, sourceKey);
+        StoredObject copy = new StoredObject(source.content);
+        bucket(destinationBucketName).put(destinationKey, copy);
+        CopyObjectResult result = new CopyObjectResult();
+        result.setETag(copy.eTag);
+        result.setLastModifiedDate(copy.lastModified);
+        return result;
+    }
+
+    @Override
+    public CopyObjectResult copyObject(CopyObjectRequest request) {
+        if (!matches(request.getSourceBucketName(), request.getSourceKey(), request.getMatchingETagConstraints())) {
+            return null;
+        }
+        return copyObject(request.getSourceBucketName(), request.getSourceKey(),
+                request.getDestinationBucketName(), request.getDestinationKey());
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        intercept("deleteObject", key);
+        bucket(bucketName).remove(key);
+    }
+
+    /**
+     * Per-key failures are injected through the interceptor with the {@code deleteKey} operation
+     * and surface as a {@link MultiObjectDeleteException}, as they would from S3.
+     */
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+        intercept("deleteObjects", request.getBucketName());
+        List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+        List<MultiObjectDeleteException.DeleteError> errors = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion keyVersion : request.getKeys()) {
+            try {
+                intercept("deleteKey", keyVersion.getKey());
+                bucket(request.getBucketName()).remove(keyVersion.getKey());
+                DeleteObjectsResult.DeletedObject deletedObject = new DeleteObjectsResult.DeletedObject();
+                deletedObject.setKey(keyVersion.getKey());
+                deleted.add(deletedObject);
+            } catch (AmazonServiceException e) {
+                MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+                error.setKey(keyVersion.getKey());
+                error.setCode(e.getErrorCode());
+                error.setMessage(e.getErrorMessage());
+                errors.add(error);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new MultiObjectDeleteException(errors, request.getQuiet() ? List.of() : deleted);
+        }
+        return new DeleteObjectsResult(request.getQuiet() ? List.of() : deleted);
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        intercept("getObject", request.getKey());
+        StoredObject stored = require(request.getBucketName(), request.getKey());
+        byte[] content = stored.content;
+        long[] range = request.getRange();
+        if (range != null) {
+            content = Arrays.copyOfRange(content, (int) range[0],
+                    (int) Math.min(range[1] + 1, stored.content.length));
+        }
+        S3Object object = new S3Object();
+        object.setBucketName(request.getBucketName());
+        object.setKey(request.getKey());
+        object.setObjectContent(new ByteArrayInputStream(content));
+        object.getObjectMetadata().setContentLength(content.length);
+        return object;
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        intercept("putObject", request.getKey());
+        StoredObject object = new StoredObject(readAll(request.getInputStream()));
+        bucket(request.getBucketName()).put(request.getKey(), object);
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(object.eTag);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        intercept("uploadPart", request.getKey() + "#" + request.getPartNumber());
+        Map<Integer, byte[]> parts = requireUpload(request.getUploadId());
+        byte[] part = readAll(request.getInputStream());
+        parts.put(request.getPartNumber(), part);
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(DigestUtils.md5DigestAsHex(part));
+        return result;
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        intercept("initiateMultipartUpload", request.getKey());
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentHashMap<>());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public CopyPartResult copyPart(CopyPartRequest request) {
+        intercept("copyPart", request.getSourceKey() + "#" + request.getPartNumber());
+        StoredObject source = require(request.getSourceBucketName(), request.getSourceKey());
+        if (!matches(request.getSourceBucketName(), request.getSourceKey(), request.getMatchingETagConstraints())) {
+            return null;
+        }
+        Map<Integer, byte[]> parts = requireUpload(request.getUploadId());
+        byte[] part = Arrays.copyOfRange(source.content,
+                request.getFirstByte().intValue(), request.getLastByte().intValue() + 1);
+        parts.put(request.getPartNumber(), part);
+        CopyPartResult result = new CopyPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(DigestUtils.md5DigestAsHex(part));
+        return result;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        intercept("completeMultipartUpload", request.getKey());
+        Map<Integer, byte[]> parts = requireUpload(request.getUploadId());
+        if (request.getPartETags().size() > 10_000) {
+            throw new AmazonServiceException("Part number must be an integer between 1 and 10000");
+        }
+        List<PartETag> partETags = new ArrayList<>(request.getPartETags());
+        partETags.sort((a, b) -> Integer.compare(a.getPartNumber(), b.getPartNumber()));
+        uploads.remove(request.getUploadId());
+        StoredObject object = StoredObject.assemble(partETags.stream()
+                .map(partETag -> parts.get(partETag.getPartNumber()))
+                .toList());
+        bucket(request.getBucketName()).put(request.getKey(), object);
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setETag(object.eTag);
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        intercept("abortMultipartUpload", request.getKey());
+        uploads.remove(request.getUploadId());
+    }
+
+    private void intercept(String operation, String key) {
+        requestCounts.computeIfAbsent(operation, k -> new AtomicInteger()).incrementAndGet();
+        interceptor.accept(operation, key);
+    }
+
+    private boolean matches(String bucket, String key, List<String> eTags) {
+        return eTags.isEmpty() || eTags.contains(require(bucket, key).eTag);
+    }
+
+    private NavigableMap<String, StoredObject> bucket(String bucket) {
+        return buckets.computeIfAbsent(bucket, b -> new ConcurrentSkipListMap<>());
+    }
+
+    private StoredObject require(String bucket, String key) {
+        StoredObject object = bucket(bucket).get(key);
+        if (object == null) {
+            throw notFound("NoSuchKey", "The specified key does not exist: " + key);
+        }
+        return object;
+    }
+
+    private Map<Integer, byte[]> requireUpload(String uploadId) {
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            throw notFound("NoSuchUpload", "The specified upload does not exist: " + uploadId);
+        }
+        return parts;
+    }
+
+    private static byte[] readAll(InputStream in) {
+        try (in) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static AmazonServiceException notFound(String errorCode, String message) {
+        AmazonServiceException e = new AmazonServiceException(message);
+        e.setStatusCode(404);
+        e.setErrorCode(errorCode);
+        return e;
+    }
+
+    private static class StoredObject {
+        final byte[] content;
+        final String eTag;
+        final int[] partLengths;
+        final Date lastModified = new Date();
+
+        StoredObject(byte[] content) {
+            this(content, DigestUtils.md5DigestAsHex(content), null);
+        }
+
+        StoredObject(byte[] content, String eTag, int[] partLengths) {
+            this.content = content;
+            this.eTag = eTag;
+            this.partLengths = partLengths;
+        }
+
+        static StoredObject assemble(List<byte[]> parts) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            ByteArrayOutputStream partDigests = new ByteArrayOutputStream();
+            for (byte[] part : parts) {
+                content.writeBytes(part);
+                partDigests.writeBytes(DigestUtils.md5Digest(part));
+            }
+            return new StoredObject(content.toByteArray(),
+                    DigestUtils.md5DigestAsHex(partDigests.toByteArray()) + "-" + parts.size(),
+                    parts.stream().mapToInt(part -> part.length).toArray());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.tapestry.dataintegration.config.TransferProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalCopyFilterTests {
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final S3RateController rateController = new S3RateController(new TransferProperties());
+    private final S3KeyLister lister = new S3KeyLister(s3, rateController);
+    private final IncrementalCopyFilter filter = new IncrementalCopyFilter(s3, lister, rateController);
+
+    @Test
+    void keepsOnlyNewAndChangedObjects() {
+        s3.put("source", "in/a.csv", new byte[]{1});
+        s3.put("source", "in/b.csv", new byte[]{1, 2});
+        s3.put("source", "in/c.csv", new byte[]{1});
+        s3.put("target", "out/a.csv", new byte[]{1});
+        s3.put("target", "out/b.csv", new byte[]{1});
+        s3.put("target", "out/z.csv", new byte[]{1});
+        LongAdder skipped = new LongAdder();
+
+        assertThat(filter.changedOnly(lister.list("source", "in/"), "in/", "target", "out/", skipped)
+                .map(S3ObjectSummary::getKey)
+                .collect(Collectors.toList()))
+                .containsExactly("in/b.csv", "in/c.csv");
+        assertThat(skipped.intValue()).isEqualTo(1);
+    }
+
+    @Test
+    void comparesSingleKeysWithHeadRequests() {
+        s3.put("source", "in/a.csv", new byte[]{1});
+        s3.put("target", "out/a.csv", new byte[]{1});
+
+        assertThat(filter.isUnchanged("source", "in/a.csv", "target", "out/a.csv")).isTrue();
+        assertThat(filter.isUnchanged("source", "in/a.csv", "target", "out/missing.csv")).isFalse();
+    }
+}
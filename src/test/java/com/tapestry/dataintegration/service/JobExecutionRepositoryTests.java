@@ -0,0 +1,73 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.config.JobExecution;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+class JobExecutionRepositoryTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 2, 0);
+
+    @Autowired
+    private JobExecutionRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 5; i++) {
+            save(i % 2 == 0 ? "even" : "odd", START.plusHours(i));
+        }
+        // Same start time as the newest run, so the id breaks the tie.
+        save("even", START.plusHours(4));
+    }
+
+    @Test
+    void scrollsAllJobsNewestFirstWithoutGapsOrRepeats() {
+        List<LocalDateTime> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            CursorPage<JobExecutionSummary> page = JobHistoryCursor.page(repository
+                    .findByOrderByStartTimeDescIdDesc(JobHistoryCursor.decode(cursor), Limit.of(2)));
+            page.getItems().forEach(job -> seen.add(job.getStartTime()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(seen).containsExactly(START.plusHours(4), START.plusHours(4), START.plusHours(3),
+                START.plusHours(2), START.plusHours(1), START);
+    }
+
+    @Test
+    void filtersByPipeline() {
+        CursorPage<JobExecutionSummary> first = JobHistoryCursor.page(repository
+                .findByPipelineNameOrderByStartTimeDescIdDesc("odd", JobHistoryCursor.decode(null), Limit.of(1)));
+        CursorPage<JobExecutionSummary> second = JobHistoryCursor.page(repository
+                .findByPipelineNameOrderByStartTimeDescIdDesc("odd", JobHistoryCursor.decode(first.getNextCursor()),
+                        Limit.of(1)));
+
+        assertThat(first.getItems()).extracting(JobExecutionSummary::getStartTime)
+                .containsExactly(START.plusHours(3));
+        assertThat(second.getItems()).extracting(JobExecutionSummary::getStartTime)
+                .containsExactly(START.plusHours(1));
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    private void save(String pipelineName, LocalDateTime startTime) {
+        JobExecution job = new JobExecution();
+        job.setPipelineName(pipelineName);
+        job.setStartTime(startTime);
+        job.setStatus("SUCCESS");
+        repository.save(job);
+    }
+}
@@ -0,0 +1,160 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.ClusterCoordinator;
+import com.tapestry.dataintegration.config.ClusterProperties;
+import com.tapestry.dataintegration.config.JobExecution;
+import com.tapestry.dataintegration.config.JobExecutionRollup;
+import com.tapestry.dataintegration.config.RetentionProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(ManifestStore.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JobHistoryRetentionTests {
+
+    private static final LocalDate OLD_DAY = LocalDate.of(2024, 3, 1);
+
+    @TempDir
+    Path archive;
+
+    @Autowired
+    private JobExecutionRepository jobExecutionRepository;
+
+    @Autowired
+    private JobExecutionRollupRepository rollupRepository;
+
+    @Autowired
+    private ManifestChunkRepository chunkRepository;
+
+    @Autowired
+    private ManifestStore manifestStore;
+
+    @Autowired
+    private ClusterLeaseRepository leaseRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JobHistoryRetention retention;
+
+    @BeforeEach
+    void setUp() {
+        RetentionProperties properties = new RetentionProperties();
+        properties.setArchiveDirectory(archive.toString());
+        properties.setBatchSize(2);
+        retention = new JobHistoryRetention(properties, jobExecutionRepository, rollupRepository, chunkRepository,
+                manifestStore, new ClusterCoordinator(new ClusterProperties(), leaseRepository), transactionManager,
+                Clock.fixed(Instant.parse("2024-04-15T03:00:00Z"), ZoneOffset.UTC));
+    }
+
+    @AfterEach
+    void tearDown() {
+        chunkRepository.deleteAll();
+        jobExecutionRepository.deleteAll();
+        rollupRepository.deleteAll();
+    }
+
+    @Test
+    void rollsUpDaysThenArchivesAndDeletesExpiredExecutions() throws IOException {
+        JobExecution withManifest = save("minutely", OLD_DAY.atTime(2, 0), 60, "SUCCESS", null);
+        ManifestStore.Writer writer = manifestStore.open(withManifest.getId());
+        writer.add("in/a.csv", "out/a.csv", "crc32c:0a1b2c3d");
+        writer.add("in/b.csv", "out/b.csv");
+        writer.flush();
+        JobExecution failed = save("minutely", OLD_DAY.atTime(2, 1), 600, "FAILED", null);
+        failed.setDeleteErrors(List.of("in/c.csv: access denied"));
+        jobExecutionRepository.save(failed);
+        save("minutely", OLD_DAY.atTime(2, 2), 120, "SUCCESS", null);
+        save("minutely", OLD_DAY.atTime(2, 2), 30, "SUCCESS", withManifest.getId());
+        JobExecution running = save("minutely", LocalDateTime.of(2024, 4, 13, 23, 59), 0, "RUNNING", null);
+        running.setEndTime(null);
+        jobExecutionRepository.save(running);
+        save("minutely", LocalDateTime.of(2024, 4, 14, 1, 0), 60, "SUCCESS", null);
+
+        assertThat(retention.apply()).isEqualTo(4);
+
+        JobExecutionRollup rollup = rollupRepository.findByPipelineNameAndDay("minutely", OLD_DAY).orElseThrow();
+        assertThat(rollup.getRuns()).isEqualTo(3);
+        assertThat(rollup.getFailures()).isEqualTo(1);
+        assertThat(rollup.getFilesProcessed()).isEqualTo(6);
+        assertThat(rollup.getBytesTransferred()).isEqualTo(300);
+        assertThat(rollup.getP50DurationMillis()).isEqualTo(120_000);
+        assertThat(rollup.getP95DurationMillis()).isEqualTo(600_000);
+        // The day with a run still going waits, and so do the days after it.
+        assertThat(rollupRepository.count()).isEqualTo(1);
+        assertThat(jobExecutionRepository.count()).isEqualTo(2);
+        assertThat(chunkRepository.count()).isZero();
+
+        Path file = archive.resolve("minutely/2024-03-01.tsv.gz");
+        String archived;
+        try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            archived = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertThat(archived).startsWith("# " + withManifest.getId() + "\tSUCCESS\t2024-03-01T02:00\t"
+                + "2024-03-01T02:01\nin/a.csv\tout/a.csv\tcrc32c:0a1b2c3d\nin/b.csv\tout/b.csv\n");
+        assertThat(archived.lines().filter(line -> line.startsWith("# "))).hasSize(4);
+
+        running.setEndTime(running.getStartTime().plusMinutes(5));
+        running.setStatus("SUCCESS");
+        jobExecutionRepository.save(running);
+        assertThat(retention.apply()).isZero();
+        assertThat(rollupRepository.findByPipelineNameAndDayBetweenOrderByDayAsc("minutely", OLD_DAY,
+                LocalDate.of(2024, 4, 15))).extracting(JobExecutionRollup::getDay)
+                .containsExactly(OLD_DAY, LocalDate.of(2024, 4, 13), LocalDate.of(2024, 4, 14));
+    }
+
+    @Test
+    void expiredDayWaitsForItsUnfinishedExecutions() {
+        save("minutely", OLD_DAY.atTime(2, 0), 60, "SUCCESS", null);
+        JobExecution running = save("minutely", OLD_DAY.atTime(23, 0), 0, "RUNNING", null);
+        running.setEndTime(null);
+        jobExecutionRepository.save(running);
+
+        assertThat(retention.apply()).isZero();
+        assertThat(rollupRepository.count()).isZero();
+        assertThat(jobExecutionRepository.count()).isEqualTo(2);
+
+        running.setEndTime(running.getStartTime().plusHours(2));
+        running.setStatus("SUCCESS");
+        jobExecutionRepository.save(running);
+        assertThat(retention.apply()).isEqualTo(2);
+        assertThat(rollupRepository.findByPipelineNameAndDay("minutely", OLD_DAY).orElseThrow().getRuns())
+                .isEqualTo(2);
+    }
+
+    private JobExecution save(String pipeline, LocalDateTime start, int seconds, String status, Long parentId) {
+        JobExecution execution = new JobExecution();
+        execution.setPipelineName(pipeline);
+        execution.setOperation("copy");
+        execution.setStartTime(start);
+        execution.setEndTime(start.plusSeconds(seconds));
+        execution.setStatus(status);
+        execution.setFilesProcessed(2);
+        execution.setBytesTransferred(100L);
+        execution.setParentId(parentId);
+        return jobExecutionRepository.save(execution);
+    }
+}
@@ -0,0 +1,136 @@
+package com.tapestry.dataintegration.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalTransferEngineTests {
+
+    private static final ManifestSink NO_MANIFEST = (source, target) -> { };
+
+    @TempDir
+    Path tempDir;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final LocalTransferEngine engine = new LocalTransferEngine(executor);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void copiesWholeTree() throws IOException {
+        Path source = tempDir.resolve("source");
+        Path target = tempDir.resolve("target");
+        write(source.resolve("a.csv"), "a");
+        write(source.resolve("nested/deeper/b.csv"), "b".repeat(100_000));
+        Files.createDirectories(source.resolve("empty"));
+
+        JobProgress progress = new JobProgress("p");
+        LocalTransferEngine.TransferResult result = engine.copy(
+                List.of(new LocalTransferEngine.TreeMapping(source, target, false)), 3, progress, NO_MANIFEST);
+
+        assertThat(result.filesTransferred).isEqualTo(2);
+        assertThat(progress.snapshot().getFilesDone()).isEqualTo(2);
+        assertThat(progress.snapshot().getBytesDone()).isEqualTo(100_001);
+        assertThat(progress.snapshot().isListingComplete()).isTrue();
+        assertThat(Files.readString(target.resolve("a.csv"))).isEqualTo("a");
+        assertThat(Files.readString(target.resolve("nested/deeper/b.csv"))).isEqualTo("b".repeat(100_000));
+        assertThat(target.resolve("empty")).isDirectory();
+        assertThat(source.resolve("a.csv")).exists();
+    }
+
+    @Test
+    void movesByRenameOnTheSameFilesystem() throws IOException {
+        Path source = tempDir.resolve("source");
+        Path target = tempDir.resolve("target");
+        write(source.resolve("nested/b.csv"), "b");
+        Object fileKey = Files.readAttributes(source.resolve("nested/b.csv"), BasicFileAttributes.class).fileKey();
+
+        List<String> moved = new ArrayList<>();
+        engine.move(List.of(new LocalTransferEngine.TreeMapping(source, target, false)), 2, new JobProgress("p"),
+                (from, to) -> moved.add(to));
+
+        assertThat(moved).containsExactly(target.resolve("nested/b.csv").toString());
+        assertThat(Files.readAttributes(target.resolve("nested/b.csv"), BasicFileAttributes.class).fileKey())
+                .isEqualTo(fileKey);
+        assertThat(source).isEmptyDirectory();
+    }
+
+    @Test
+    void removesSourceKeyDirectoryOnceMoved() throws IOException {
+        Path source = tempDir.resolve("source");
+        write(source.resolve("batch1/a.csv"), "a");
+        write(source.resolve("other.csv"), "o");
+
+        engine.move(List.of(new LocalTransferEngine.TreeMapping(
+                source.resolve("batch1"), tempDir.resolve("target/batch1"), true)), 2, new JobProgress("p"), NO_MANIFEST);
+
+        assertThat(source.resolve("batch1")).doesNotExist();
+        assertThat(source.resolve("other.csv")).exists();
+        assertThat(tempDir.resolve("target/batch1/a.csv")).hasContent("a");
+    }
+
+    @Test
+    void stopsSubmittingOnceCancelled() throws IOException {
+        Path source = tempDir.resolve("source");
+        write(source.resolve("a.csv"), "a");
+        write(source.resolve("b.csv"), "b");
+        JobProgress progress = new JobProgress("p");
+        progress.cancel();
+
+        LocalTransferEngine.TransferResult result = engine.copy(
+                List.of(new LocalTransferEngine.TreeMapping(source, tempDir.resolve("target"), false)), 2, progress, NO_MANIFEST);
+
+        assertThat(result.filesTransferred).isZero();
+        assertThat(progress.snapshot().isListingComplete()).isFalse();
+    }
+
+    @Test
+    void verifiedCopyRecordsTheChecksumOfTheBytesWritten() throws IOException {
+        Path source = tempDir.resolve("source");
+        Path target = tempDir.resolve("target");
+        String content = "b".repeat(3_000_000);
+        write(source.resolve("b.csv"), content);
+
+        Map<String, String> checksums = new HashMap<>();
+        engine.copy(List.of(new LocalTransferEngine.TreeMapping(source, target, false)), 2, new JobProgress("p"),
+                new ManifestSink() {
+                    @Override
+                    public void add(String from, String to) {
+                        add(from, to, null);
+                    }
+
+                    @Override
+                    public void add(String from, String to, String checksum) {
+                        checksums.put(to, checksum);
+                    }
+                }, file -> false, true);
+
+        CRC32C crc = new CRC32C();
+        crc.update(Files.readAllBytes(target.resolve("b.csv")));
+        assertThat(Files.readString(target.resolve("b.csv"))).isEqualTo(content);
+        assertThat(checksums).containsExactly(
+                Map.entry(target.resolve("b.csv").toString(), Checksums.crc32c(crc.getValue())));
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
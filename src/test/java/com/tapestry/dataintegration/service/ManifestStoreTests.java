@@ -0,0 +1,160 @@
+package com.tapestry.dataintegration.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(ManifestStore.class)
+class ManifestStoreTests {
+
+    @Autowired
+    private ManifestStore manifestStore;
+
+    @Autowired
+    private ManifestChunkRepository chunkRepository;
+
+    @Test
+    void writesEntriesInChunksAndReadsThemBackInOrder() {
+        int files = ManifestStore.CHUNK_SIZE * 2 + 17;
+        ManifestStore.Writer writer = manifestStore.open(42L);
+        for (int i = 0; i < files; i++) {
+            writer.add("in/file-" + i + ".csv", "out/file-" + i + ".csv");
+        }
+        writer.flush();
+
+        assertThat(writer.getTotal()).isEqualTo(files);
+        assertThat(chunkRepository.count()).isEqualTo(3);
+        try (Stream<ManifestStore.Entry> entries = manifestStore.read(42L)) {
+            List<ManifestStore.Entry> read = entries.collect(Collectors.toList());
+            assertThat(read).hasSize(files);
+            assertThat(read.get(files - 1).source).isEqualTo("in/file-" + (files - 1) + ".csv");
+            assertThat(read.get(files - 1).target).isEqualTo("out/file-" + (files - 1) + ".csv");
+        }
+    }
+
+    @Test
+    void pagesAcrossChunkBoundaries() {
+        int files = ManifestStore.CHUNK_SIZE + 10;
+        ManifestStore.Writer writer = manifestStore.open(43L);
+        for (int i = 0; i < files; i++) {
+            writer.add("in/" + i, "out/" + i);
+        }
+        writer.flush();
+
+        CursorPage<ManifestStore.Entry> page = manifestStore.page(43L, ManifestStore.CHUNK_SIZE - 5, 10);
+        CursorPage<ManifestStore.Entry> last = manifestStore.page(43L, Integer.parseInt(page.getNextCursor()), 10);
+
+        assertThat(page.getItems()).extracting(entry -> entry.source)
+                .startsWith("in/" + (ManifestStore.CHUNK_SIZE - 5))
+                .endsWith("in/" + (ManifestStore.CHUNK_SIZE + 4));
+        assertThat(last.getItems()).hasSize(5);
+        assertThat(last.getNextCursor()).isNull();
+    }
+
+    @Test
+    void resumesAfterTheLastCheckpoint() {
+        int checkpointed = ManifestStore.CHUNK_SIZE + ManifestStore.CHECKPOINT_SIZE;
+        ManifestStore.Writer interrupted = manifestStore.open(44L);
+        for (int i = 0; i < checkpointed + 200; i++) {
+            interrupted.add("in/" + i, "out/" + i);
+        }
+        // No final flush: the last 200 entries are lost with the process.
+
+        ManifestStore.ResumePoint resumePoint = manifestStore.resumePoint(44L);
+        assertThat(manifestStore.count(44L)).isEqualTo(checkpointed);
+        assertThat(resumePoint.isEmpty()).isFalse();
+        assertThat(resumePoint.isDone("in/0")).isTrue();
+        assertThat(resumePoint.isDone("in/" + checkpointed)).isFalse();
+
+        ManifestStore.Writer resumed = manifestStore.resume(44L);
+        for (int i = checkpointed; i < ManifestStore.CHUNK_SIZE * 2 + 10; i++) {
+            resumed.add("in/" + i, "out/" + i);
+        }
+        resumed.flush();
+
+        assertThat(resumed.getTotal()).isEqualTo(ManifestStore.CHUNK_SIZE * 2 + 10);
+        assertThat(chunkRepository.count()).isEqualTo(3);
+        CursorPage<ManifestStore.Entry> page = manifestStore.page(44L, ManifestStore.CHUNK_SIZE * 2, 20);
+        assertThat(page.getItems()).extracting(entry -> entry.source)
+                .startsWith("in/" + ManifestStore.CHUNK_SIZE * 2)
+                .hasSize(10);
+        assertThat(ManifestStore.ResumePoint.NONE.isDone("in/0")).isFalse();
+    }
+
+    @Test
+    void resumedListingSkipsKeysUpToTheLastOneOfTheirFolderThatDidNotFail() {
+        ManifestStore.Writer writer = manifestStore.open(46L);
+        // Folders listed in parallel interleave, each in key order.
+        writer.add("in/b/1", "out/b/1");
+        writer.add("in/a/1", "out/a/1");
+        writer.failed("in/a/2");
+        writer.add("in/b/2", "out/b/2");
+        writer.add("in/a/3", "out/a/3");
+        writer.add("in/top", "out/top");
+        writer.flush();
+
+        Predicate<String> done = manifestStore.resumePoint(46L).listedDone("in/");
+
+        assertThat(Stream.of("in/a/1", "in/a/2", "in/a/3", "in/a/4", "in/b/2", "in/b/3", "in/c/1", "in/top",
+                "in/zz")).filteredOn(done).containsExactly("in/a/1", "in/a/3", "in/b/2", "in/top");
+        try (Stream<ManifestStore.Entry> entries = manifestStore.read(46L)) {
+            assertThat(entries).hasSize(5);
+        }
+
+        ManifestStore.Writer resumed = manifestStore.resume(46L);
+        resumed.add("in/a/2", "out/a/2");
+        resumed.flush();
+        assertThat(manifestStore.resumePoint(46L).listedDone("in/").test("in/a/2")).isTrue();
+        assertThat(manifestStore.count(46L)).isEqualTo(6);
+    }
+
+    @Test
+    void pagesSkipFailedFiles() {
+        int files = ManifestStore.CHUNK_SIZE;
+        ManifestStore.Writer writer = manifestStore.open(47L);
+        for (int i = 0; i < files; i++) {
+            writer.add("in/" + i, "out/" + i);
+            if (i % 2 == 0) {
+                writer.failed("in/failed-" + i);
+            }
+        }
+        writer.flush();
+
+        assertThat(chunkRepository.count()).isEqualTo(2);
+        assertThat(manifestStore.count(47L)).isEqualTo(files);
+        CursorPage<ManifestStore.Entry> page = manifestStore.page(47L, files - 5, 10);
+        assertThat(page.getItems()).extracting(entry -> entry.source)
+                .containsExactly("in/" + (files - 5), "in/" + (files - 4), "in/" + (files - 3), "in/" + (files - 2),
+                        "in/" + (files - 1));
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void keepsChecksumsWithTheirEntries() {
+        ManifestStore.Writer writer = manifestStore.open(45L);
+        writer.add("in/a", "out/a", "crc32c:0a1b2c3d");
+        writer.add("in/b", "out/b");
+        writer.flush();
+
+        try (Stream<ManifestStore.Entry> entries = manifestStore.read(45L)) {
+            assertThat(entries).extracting(entry -> entry.source + "=" + entry.checksum)
+                    .containsExactly("in/a=crc32c:0a1b2c3d", "in/b=null");
+        }
+    }
+
+    @Test
+    void readsNothingForUnknownJob() {
+        try (Stream<ManifestStore.Entry> entries = manifestStore.read(7L)) {
+            assertThat(entries).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.tapestry.dataintegration.config.TransferConfig;
+import com.tapestry.dataintegration.config.TransferProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultipartCopierTests {
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final TransferProperties transferProperties = new TransferProperties();
+    private ExecutorService executor;
+    private MultipartCopier multipartCopier;
+
+    @BeforeEach
+    void setUp() {
+        transferProperties.setMultipartThreshold(1024);
+        transferProperties.setMultipartPartSize(100);
+        executor = Executors.newFixedThreadPool(4);
+        multipartCopier = new MultipartCopier(s3, executor, transferProperties,
+                new S3RateController(transferProperties));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void copiesLargeObjectInParallelParts() {
+        byte[] content = randomBytes(1050);
+        s3.put("source", "in/big.csv", content);
+
+        multipartCopier.copy("source", "in/big.csv", "target", "out/big.csv",
+                s3.getObjectMetadata("source", "in/big.csv"));
+
+        assertThat(s3.content("target", "out/big.csv")).isEqualTo(content);
+        assertThat(s3.requestCount("copyPart")).isEqualTo(11);
+        assertThat(s3.openUploads()).isZero();
+    }
+
+    @Test
+    void raisesThePartSizeToStayWithinTheS3PartLimit() {
+        transferProperties.setMultipartPartSize(1);
+        byte[] content = randomBytes(25_001);
+        s3.put("source", "in/big.csv", content);
+
+        multipartCopier.copy("source", "in/big.csv", "target", "out/big.csv",
+                s3.getObjectMetadata("source", "in/big.csv"));
+
+        assertThat(s3.content("target", "out/big.csv")).isEqualTo(content);
+        assertThat(s3.requestCount("copyPart")).isEqualTo(8334);
+        assertThat(MultipartCopier.partSize(64L << 20, 5L << 40)).isEqualTo(549_755_814L);
+        assertThat(MultipartCopier.partSize(64L << 20, 1L << 30)).isEqualTo(64L << 20);
+    }
+
+    @Test
+    void rejectsPartSizesBelowTheS3MinimumAtStartup() {
+        TransferProperties properties = new TransferProperties();
+        properties.setMultipartPartSize(MultipartCopier.MIN_PART_SIZE - 1);
+
+        assertThatThrownBy(() -> new TransferConfig(properties))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("transfer.multipart-part-size");
+        properties.setMultipartPartSize(MultipartCopier.MIN_PART_SIZE);
+        new TransferConfig(properties);
+    }
+
+    @Test
+    void abortsUploadWhenAPartFails() {
+        s3.put("source", "in/big.csv", randomBytes(1050));
+        s3.setInterceptor((operation, key) -> {
+            if (key.endsWith("#7")) {
+                throw new AmazonServiceException("InternalError");
+            }
+        });
+
+        assertThatThrownBy(() -> multipartCopier.copy("source", "in/big.csv", "target", "out/big.csv",
+                s3.getObjectMetadata("source", "in/big.csv")))
+                .isInstanceOf(AmazonServiceException.class);
+
+        assertThat(s3.requestCount("abortMultipartUpload")).isEqualTo(1);
+        assertThat(s3.openUploads()).isZero();
+        assertThat(s3.keys("target")).isEmpty();
+    }
+
+    @Test
+    void copyEngineUsesMultipartOnlyAboveThreshold() {
+        byte[] small = randomBytes(10);
+        byte[] large = randomBytes(2048);
+        s3.put("source", "in/small.csv", small);
+        s3.put("source", "in/large.csv", large);
+        S3CopyEngine copyEngine = new S3CopyEngine(s3, executor, multipartCopier,
+                new S3RateController(transferProperties));
+
+        List<String> copied = new ArrayList<>();
+        S3CopyEngine.CopyResult result = copyEngine.copy("source", "target", List.of(
+                new S3CopyEngine.CopyTask("in/small.csv", "out/small.csv", 10L),
+                new S3CopyEngine.CopyTask("in/large.csv", "out/large.csv")).iterator(), 2, new JobProgress("p"),
+                (source, target) -> copied.add(source));
+
+        assertThat(result.filesCopied).isEqualTo(2);
+        assertThat(copied).containsExactly("in/small.csv", "in/large.csv");
+        assertThat(s3.content("target", "out/small.csv")).isEqualTo(small);
+        assertThat(s3.content("target", "out/large.csv")).isEqualTo(large);
+        assertThat(s3.requestCount("copyObject")).isEqualTo(1);
+        assertThat(s3.requestCount("copyPart")).isEqualTo(21);
+    }
+
+    @Test
+    void verifiedCopyRecordsETagsAndFailsFilesChangedSinceTheListing() {
+        s3.put("source", "in/small.csv", randomBytes(10));
+        s3.put("source", "in/large.csv", randomBytes(2048));
+        s3.putInParts("source", "in/parts.csv", parts(2048, 100));
+        String listedETag = s3.getObjectMetadata("source", "in/small.csv").getETag();
+        // Replaced after the listing saw it with the ETag of in/small.csv.
+        s3.put("source", "in/changed.csv", randomBytes(20));
+
+        Map<String, String> checksums = verifiedCopy(List.of(
+                new S3CopyEngine.CopyTask("in/small.csv", "out/small.csv", 10L, listedETag),
+                new S3CopyEngine.CopyTask("in/large.csv", "out/large.csv"),
+                new S3CopyEngine.CopyTask("in/parts.csv", "out/parts.csv"),
+                new S3CopyEngine.CopyTask("in/changed.csv", "out/changed.csv", 20L, listedETag)));
+
+        assertThat(checksums).containsExactly(
+                Map.entry("in/small.csv", "etag:" + listedETag),
+                Map.entry("in/large.csv", "etag:" + s3.getObjectMetadata("source", "in/large.csv").getETag()),
+                Map.entry("in/parts.csv", "etag:" + s3.getObjectMetadata("source", "in/parts.csv").getETag()));
+        assertThat(checksums.get("in/parts.csv")).endsWith("-21");
+        assertThat(s3.getObjectMetadata("target", "out/parts.csv").getETag())
+                .isEqualTo(s3.getObjectMetadata("source", "in/parts.csv").getETag());
+        assertThat(s3.requestCount("copyPart")).isEqualTo(21);
+        assertThat(s3.keys("target")).doesNotContain("out/changed.csv");
+    }
+
+    @Test
+    void verifiedCopyOfPartsOfVaryingSizesIsRecordedWithoutAChecksum() {
+        byte[][] parts = {randomBytes(300), randomBytes(100), randomBytes(50)};
+        s3.putInParts("source", "in/parts.csv", parts);
+
+        Map<String, String> checksums = verifiedCopy(List.of(
+                new S3CopyEngine.CopyTask("in/parts.csv", "out/parts.csv")));
+
+        assertThat(checksums).containsEntry("in/parts.csv", null);
+        assertThat(s3.content("target", "out/parts.csv")).isEqualTo(s3.content("source", "in/parts.csv"));
+    }
+
+    private Map<String, String> verifiedCopy(List<S3CopyEngine.CopyTask> tasks) {
+        S3CopyEngine copyEngine = new S3CopyEngine(s3, executor, multipartCopier,
+                new S3RateController(transferProperties));
+        Map<String, String> checksums = new LinkedHashMap<>();
+        copyEngine.copy("source", "target", tasks.iterator(), 2, new JobProgress("p"), new ManifestSink() {
+            @Override
+            public void add(String source, String target) {
+                add(source, target, null);
+            }
+
+            @Override
+            public void add(String source, String target, String checksum) {
+                checksums.put(source, checksum);
+            }
+        }, true);
+        return checksums;
+    }
+
+    private static byte[][] parts(int size, int partSize) {
+        byte[] content = randomBytes(size);
+        byte[][] parts = new byte[(size + partSize - 1) / partSize][];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = Arrays.copyOfRange(content, i * partSize, Math.min(size, (i + 1) * partSize));
+        }
+        return parts;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
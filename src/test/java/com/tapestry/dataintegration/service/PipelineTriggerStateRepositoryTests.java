@@ -0,0 +1,31 @@
+package com.tapestry.dataintegration.service;
+
+import com.tapestry.dataintegration.config.PipelineTriggerState;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+class PipelineTriggerStateRepositoryTests {
+
+    private static final LocalDateTime SLOT = LocalDateTime.of(2024, 3, 1, 2, 0);
+
+    @Autowired
+    private PipelineTriggerStateRepository repository;
+
+    @Test
+    void recordsTheLatestSlotOnly() {
+        repository.recordSlot("daily", SLOT);
+        repository.recordSlot("daily", SLOT.plusDays(1));
+        // A node that fired an earlier slot late must not move it back.
+        repository.recordSlot("daily", SLOT);
+
+        assertThat(repository.findById("daily")).get()
+                .extracting(PipelineTriggerState::getLastSlot).isEqualTo(SLOT.plusDays(1));
+        assertThat(repository.findById("hourly")).isEmpty();
+    }
+}
@@ -0,0 +1,87 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.tapestry.dataintegration.config.TransferProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class S3BatchDeleterTests {
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final S3BatchDeleter deleter = new S3BatchDeleter(s3, executor,
+            new S3RateController(new TransferProperties()));
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void deletesOnlyGivenKeysInBatchesOfAThousand() {
+        List<String> copied = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            String key = String.format("in/file-%05d.csv", i);
+            s3.put("source", key, new byte[]{1});
+            copied.add(key);
+        }
+        s3.put("source", "in/late-arrival.csv", new byte[]{1});
+
+        S3BatchDeleter.DeleteResult result = deleter.delete("source", copied, 3);
+
+        assertThat(result.deleted).isEqualTo(2500);
+        assertThat(result.errors).isEmpty();
+        assertThat(s3.requestCount("deleteObjects")).isEqualTo(3);
+        assertThat(s3.keys("source")).containsExactly("in/late-arrival.csv");
+    }
+
+    @Test
+    void reportsPerKeyErrors() {
+        s3.put("source", "in/a.csv", new byte[]{1});
+        s3.put("source", "in/b.csv", new byte[]{1});
+        s3.setInterceptor((operation, key) -> {
+            if ("deleteKey".equals(operation) && key.equals("in/b.csv")) {
+                AmazonServiceException e = new AmazonServiceException("Access Denied");
+                e.setErrorCode("AccessDenied");
+                throw e;
+            }
+        });
+
+        S3BatchDeleter.DeleteResult result = deleter.delete("source", List.of("in/a.csv", "in/b.csv"), 1);
+
+        assertThat(result.deleted).isEqualTo(1);
+        assertThat(result.failed).isEqualTo(1);
+        assertThat(result.errors).singleElement().asString().startsWith("in/b.csv: AccessDenied");
+        assertThat(s3.keys("source")).containsExactly("in/b.csv");
+    }
+
+    @Test
+    void countsEveryFailureButKeepsOnlyASampleOfMessages() {
+        List<String> copied = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            String key = String.format("in/file-%05d.csv", i);
+            s3.put("source", key, new byte[]{1});
+            copied.add(key);
+        }
+        s3.setInterceptor((operation, key) -> {
+            if ("deleteKey".equals(operation) && !key.endsWith("0.csv")) {
+                AmazonServiceException e = new AmazonServiceException("Access Denied");
+                e.setErrorCode("AccessDenied");
+                throw e;
+            }
+        });
+
+        S3BatchDeleter.DeleteResult result = deleter.delete("source", copied, 3);
+
+        assertThat(result.deleted).isEqualTo(250);
+        assertThat(result.failed).isEqualTo(2250);
+        assertThat(result.errors).hasSize(StorageBackend.DeleteResult.MAX_ERRORS);
+    }
+}
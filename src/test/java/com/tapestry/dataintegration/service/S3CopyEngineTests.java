@@ -0,0 +1,122 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.tapestry.dataintegration.config.TransferProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class S3CopyEngineTests {
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final TransferProperties transferProperties = new TransferProperties();
+    private ExecutorService executor;
+    private S3CopyEngine copyEngine;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+        S3RateController rateController = new S3RateController(transferProperties);
+        copyEngine = new S3CopyEngine(s3, executor,
+                new MultipartCopier(s3, executor, transferProperties, rateController), rateController);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void copiesConcurrentlyAndRecordsInListingOrder() {
+        List<String> keys = putKeys(200);
+        // Copies take varying times, so recording in completion order would shuffle the manifest.
+        s3.setInterceptor((operation, key) -> {
+            if ("copyObject".equals(operation)) {
+                sleep(key.hashCode() % 3);
+            }
+        });
+
+        List<String> copied = new ArrayList<>();
+        JobProgress progress = new JobProgress("p");
+        S3CopyEngine.CopyResult result = copyEngine.copy("source", "target", tasks(keys), 8, progress,
+                (source, target) -> copied.add(source));
+
+        assertThat(result.filesCopied).isEqualTo(200);
+        assertThat(copied).isEqualTo(keys);
+        assertThat(s3.keys("target")).hasSize(200).contains("out/000.csv", "out/199.csv");
+        assertThat(progress.snapshot().getFilesDone()).isEqualTo(200);
+        assertThat(progress.snapshot().isListingComplete()).isTrue();
+    }
+
+    @Test
+    void failedKeyIsCountedAndLeftOutOfTheManifest() {
+        List<String> keys = putKeys(20);
+        s3.setInterceptor((operation, key) -> {
+            if ("copyObject".equals(operation) && "in/007.csv".equals(key)) {
+                throw new AmazonServiceException("Access Denied");
+            }
+        });
+
+        List<String> copied = new ArrayList<>();
+        JobProgress progress = new JobProgress("p");
+        S3CopyEngine.CopyResult result = copyEngine.copy("source", "target", tasks(keys), 4, progress,
+                (source, target) -> copied.add(source));
+
+        assertThat(result.filesCopied).isEqualTo(19);
+        assertThat(copied).hasSize(19).doesNotContain("in/007.csv").contains("in/006.csv", "in/008.csv");
+        assertThat(s3.keys("target")).doesNotContain("out/007.csv");
+        assertThat(progress.snapshot().getFilesFailed()).isEqualTo(1);
+        assertThat(progress.snapshot().getFilesDone()).isEqualTo(19);
+    }
+
+    @Test
+    void keepsAtMostConcurrencyCopiesInFlight() {
+        List<String> keys = putKeys(40);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        s3.setInterceptor((operation, key) -> {
+            if ("copyObject".equals(operation)) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                sleep(10);
+                inFlight.decrementAndGet();
+            }
+        });
+
+        S3CopyEngine.CopyResult result = copyEngine.copy("source", "target", tasks(keys), 3, new JobProgress("p"),
+                (source, target) -> { });
+
+        assertThat(result.filesCopied).isEqualTo(40);
+        // The executor has eight threads; the job may only use three of them.
+        assertThat(maxInFlight.get()).isBetween(2, 3);
+    }
+
+    private List<String> putKeys(int count) {
+        List<String> keys = IntStream.range(0, count).mapToObj(i -> String.format("in/%03d.csv", i)).toList();
+        keys.forEach(key -> s3.put("source", key, new byte[]{1, 2, 3}));
+        return keys;
+    }
+
+    private static Iterator<S3CopyEngine.CopyTask> tasks(List<String> keys) {
+        return keys.stream()
+                .map(key -> new S3CopyEngine.CopyTask(key, key.replace("in/", "out/"), 3L))
+                .iterator();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(Math.abs(millis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
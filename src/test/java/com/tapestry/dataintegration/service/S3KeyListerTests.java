@@ -0,0 +1,155 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.tapestry.dataintegration.config.TransferProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class S3KeyListerTests {
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final S3KeyLister lister = new S3KeyLister(s3, new S3RateController(new TransferProperties()));
+    private final ExecutorService listExecutor = Executors.newFixedThreadPool(4);
+    private final S3KeyLister partitioned = new S3KeyLister(s3, new S3RateController(new TransferProperties()),
+            listExecutor);
+
+    @AfterEach
+    void tearDown() {
+        listExecutor.shutdownNow();
+    }
+
+    @Test
+    void ordersKeysByCodePointLikeS3() {
+        assertThat(S3Keys.compare("a\uD83D\uDE00", "a\uFFFD")).isPositive();
+        assertThat(S3Keys.compare("a", "ab")).isNegative();
+        assertThat(S3Keys.compare("ab", "ab")).isZero();
+    }
+
+    @Test
+    void listsEveryKeyOnceAcrossPageBoundaries() {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            String key = String.format("in/%05d.csv", i);
+            s3.put("source", key, new byte[]{1});
+            expected.add(key);
+        }
+        s3.put("source", "other/00000.csv", new byte[]{1});
+
+        assertThat(keys(lister.list("source", "in/"))).isEqualTo(expected);
+        assertThat(s3.requestCount("listObjectsV2")).isEqualTo(3);
+        // Starts right after the first page and ends with the second, without asking for a third.
+        assertThat(keys(lister.list("source", "in/", "in/00999.csv", "in/01999.csv")))
+                .isEqualTo(expected.subList(1000, 2000));
+        assertThat(s3.requestCount("listObjectsV2")).isEqualTo(4);
+    }
+
+    @Test
+    void partitionedListingListsEveryKeyOnce() {
+        s3.put("source", "in/a.csv", new byte[]{1});
+        for (String folder : List.of("20240301/", "20240302/", "20240303/", "20240304/")) {
+            for (int i = 0; i < 2500; i++) {
+                s3.put("source", "in/" + folder + String.format("%05d.csv", i), new byte[]{1});
+            }
+        }
+        s3.put("source", "in/z.csv", new byte[]{1});
+        s3.put("source", "in/20240302.csv", new byte[]{1});
+
+        assertThat(keys(partitioned.listPartitioned("source", "in/", null, null, 3)))
+                .hasSize(10_003)
+                .containsExactlyInAnyOrderElementsOf(keys(lister.list("source", "in/")));
+        assertThat(keys(partitioned.listPartitioned("source", "in/", "in/20240302/01000.csv", "in/20240304/00010.csv",
+                3)))
+                .containsExactlyInAnyOrderElementsOf(keys(lister.list("source", "in/", "in/20240302/01000.csv",
+                        "in/20240304/00010.csv")))
+                .contains("in/20240302/01001.csv", "in/20240304/00010.csv")
+                .doesNotContain("in/20240302/01000.csv", "in/20240304/00011.csv");
+        // One listing per page of each partition, and one for the split.
+        assertThat(s3.requestCount("listObjectsV2")).isLessThan(60);
+    }
+
+    @Test
+    void slowPartitionDoesNotHoldUpTheOthers() {
+        for (String folder : List.of("a/", "b/", "c/")) {
+            for (int i = 0; i < 3000; i++) {
+                s3.put("source", "in/" + folder + String.format("%05d.csv", i), new byte[]{1});
+            }
+        }
+        CountDownLatch lastPartitionSeen = new CountDownLatch(1);
+        s3.setInterceptor((operation, prefix) -> {
+            if ("listObjectsV2".equals(operation) && "in/a/".equals(prefix)) {
+                try {
+                    lastPartitionSeen.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        List<String> keys = new ArrayList<>();
+        try (Stream<S3ObjectSummary> summaries = partitioned.listPartitioned("source", "in/", null, null, 3)) {
+            summaries.forEach(summary -> {
+                if (summary.getKey().startsWith("in/c/")) {
+                    lastPartitionSeen.countDown();
+                }
+                keys.add(summary.getKey());
+            });
+        }
+
+        assertThat(keys).hasSize(9000).doesNotHaveDuplicates();
+        // c/ was consumed while a/ was still waiting for its first page.
+        assertThat(keys.indexOf("in/c/00000.csv")).isLessThan(keys.indexOf("in/a/00000.csv"));
+    }
+
+    @Test
+    void partitionFailuresReachTheConsumer() {
+        for (String folder : List.of("a/", "b/", "c/")) {
+            s3.put("source", "in/" + folder + "1.csv", new byte[]{1});
+        }
+        s3.setInterceptor((operation, prefix) -> {
+            if ("in/b/".equals(prefix)) {
+                throw new IllegalStateException("listing failed");
+            }
+        });
+
+        try (Stream<S3ObjectSummary> summaries = partitioned.listPartitioned("source", "in/", null, null, 2)) {
+            assertThatThrownBy(() -> summaries.forEach(summary -> { }))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("listing failed");
+        }
+    }
+
+    @Test
+    void interruptedPartitionEndsTheListingInsteadOfHangingIt() {
+        for (String folder : List.of("a/", "b/", "c/")) {
+            s3.put("source", "in/" + folder + "1.csv", new byte[]{1});
+        }
+        s3.setInterceptor((operation, prefix) -> {
+            if ("in/b/".equals(prefix)) {
+                // As when the list executor is shut down now while the page is being listed.
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try (Stream<S3ObjectSummary> summaries = partitioned.listPartitioned("source", "in/", null, null, 2)) {
+            assertThatThrownBy(() -> summaries.forEach(summary -> { }))
+                    .hasMessage("Interrupted while listing s3://source/in/b/");
+        }
+    }
+
+    private static List<String> keys(Stream<S3ObjectSummary> summaries) {
+        try (summaries) {
+            return summaries.map(S3ObjectSummary::getKey).toList();
+        }
+    }
+}
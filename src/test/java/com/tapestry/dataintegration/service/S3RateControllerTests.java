@@ -0,0 +1,145 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.tapestry.dataintegration.config.TransferProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class S3RateControllerTests {
+
+    private static final int CAPACITY = 6;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final TransferProperties transferProperties = new TransferProperties();
+    private ExecutorService executor;
+    private S3RateController rateController;
+
+    @BeforeEach
+    void setUp() {
+        transferProperties.setS3InitialConcurrency(32);
+        transferProperties.setRetryMaxAttempts(20);
+        transferProperties.setRetryBaseDelay(Duration.ofMillis(1));
+        transferProperties.setRetryMaxDelay(Duration.ofMillis(20));
+        executor = Executors.newFixedThreadPool(32);
+        rateController = new S3RateController(transferProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void backsOffUnderThrottlingAndStillCopiesEverything() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger throttled = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        // Answers SlowDown whenever more than CAPACITY copies are in flight, like a hot prefix.
+        s3.setInterceptor((operation, key) -> {
+            if (!"copyObject".equals(operation)) {
+                return;
+            }
+            int current = inFlight.incrementAndGet();
+            try {
+                if (current > CAPACITY) {
+                    throttled.incrementAndGet();
+                    AmazonServiceException e = new AmazonServiceException("Please reduce your request rate.");
+                    e.setStatusCode(503);
+                    e.setErrorCode("SlowDown");
+                    throw e;
+                }
+                peak.accumulateAndGet(current, Math::max);
+                sleep(2);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        List<S3CopyEngine.CopyTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String key = String.format("in/file-%03d.csv", i);
+            s3.put("source", key, new byte[]{1});
+            tasks.add(new S3CopyEngine.CopyTask(key, "out/" + key, 1L));
+        }
+        S3CopyEngine copyEngine = new S3CopyEngine(s3, executor,
+                new MultipartCopier(s3, executor, transferProperties, rateController), rateController);
+
+        JobProgress progress = new JobProgress("p");
+        S3CopyEngine.CopyResult result = copyEngine.copy("source", "target", tasks.iterator(), 32, progress,
+                (source, target) -> { });
+
+        assertThat(result.filesCopied).isEqualTo(300);
+        assertThat(progress.snapshot().getFilesFailed()).isZero();
+        assertThat(throttled.get()).isPositive();
+        assertThat(rateController.limit("target", "out/in/file-000.csv")).isBetween(1, 2 * CAPACITY);
+        // Other prefixes keep their own limit.
+        assertThat(rateController.limit("target", "elsewhere/file.csv")).isEqualTo(32);
+    }
+
+    @Test
+    void retriesTransientFailuresButNotClientErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+        String result = rateController.call("bucket", "in/a.csv", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                AmazonServiceException e = new AmazonServiceException("We encountered an internal error.");
+                e.setStatusCode(500);
+                e.setErrorCode("InternalError");
+                throw e;
+            }
+            return "done";
+        });
+        assertThat(result).isEqualTo("done");
+        assertThat(attempts.get()).isEqualTo(3);
+
+        AtomicInteger denied = new AtomicInteger();
+        assertThatThrownBy(() -> rateController.call("bucket", "in/b.csv", () -> {
+            denied.incrementAndGet();
+            AmazonServiceException e = new AmazonServiceException("Access Denied");
+            e.setStatusCode(403);
+            e.setErrorCode("AccessDenied");
+            throw e;
+        })).isInstanceOf(AmazonServiceException.class);
+        assertThat(denied.get()).isEqualTo(1);
+    }
+
+    @Test
+    void limitStaysWithinTheThreadsThatIssueRequests() throws InterruptedException {
+        transferProperties.setMaxThreads(4);
+        transferProperties.setPartThreads(2);
+        transferProperties.setS3MaxConcurrency(512);
+        S3RateController controller = new S3RateController(transferProperties);
+
+        assertThat(controller.limit("bucket", "in/a.csv")).isEqualTo(6);
+        // Six busy requests at a time only ever succeed, which would keep raising an unbounded limit.
+        List<Callable<Object>> requests = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            requests.add(() -> controller.call("bucket", "in/a.csv", () -> {
+                sleep(1);
+                return null;
+            }));
+        }
+        for (int round = 0; round < 50; round++) {
+            executor.invokeAll(requests);
+        }
+        assertThat(controller.limit("bucket", "in/a.csv")).isEqualTo(6);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
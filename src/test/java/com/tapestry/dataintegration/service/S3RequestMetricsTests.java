@@ -0,0 +1,47 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class S3RequestMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final S3RequestMetrics metrics = new S3RequestMetrics(registry);
+
+    @Test
+    void timesRequestsByOperationAndTracksInFlight() {
+        Request<?> copy = new DefaultRequest<>(new CopyObjectRequest("a", "k", "b", "k"), "Amazon S3");
+
+        metrics.beforeRequest(copy);
+        assertThat(registry.get("s3.requests.in.flight").tag("operation", "CopyObject").gauge().value())
+                .isEqualTo(1);
+        metrics.afterResponse(copy, new Response<>(null, null));
+
+        assertThat(registry.get("s3.requests.in.flight").tag("operation", "CopyObject").gauge().value())
+                .isZero();
+        assertThat(registry.get("s3.requests").tags("operation", "CopyObject", "outcome", "success")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void countsSlowDownAsThrottled() {
+        Request<?> delete = new DefaultRequest<>(new DeleteObjectsRequest("a"), "Amazon S3");
+        AmazonServiceException slowDown = new AmazonServiceException("Please reduce your request rate");
+        slowDown.setStatusCode(503);
+        slowDown.setErrorCode("SlowDown");
+
+        metrics.beforeRequest(delete);
+        metrics.afterError(delete, null, slowDown);
+
+        assertThat(registry.get("s3.requests").tags("operation", "DeleteObjects", "outcome", "throttled")
+                .timer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,184 @@
+package com.tapestry.dataintegration.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.tapestry.dataintegration.config.TransferProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageTransferEngineTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final TransferProperties transferProperties = new TransferProperties();
+    private ExecutorService executor;
+    private ExecutorService partExecutor;
+    private StorageTransferEngine engine;
+    private S3StorageBackend s3Backend;
+    private final LocalStorageBackend localBackend = new LocalStorageBackend();
+
+    @BeforeEach
+    void setUp() {
+        transferProperties.setMultipartThreshold(1024);
+        transferProperties.setMultipartPartSize(100);
+        executor = Executors.newFixedThreadPool(4);
+        partExecutor = Executors.newFixedThreadPool(4);
+        engine = new StorageTransferEngine(executor, partExecutor, transferProperties);
+        S3RateController rateController = new S3RateController(transferProperties);
+        s3Backend = new S3StorageBackend(s3, new S3KeyLister(s3, rateController),
+                new MultipartCopier(s3, partExecutor, transferProperties, rateController),
+                new S3BatchDeleter(s3, executor, rateController), rateController);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        partExecutor.shutdownNow();
+    }
+
+    @Test
+    void uploadsLocalTreeToS3WithMultipartForLargeFiles() throws IOException {
+        Path source = tempDir.resolve("source");
+        byte[] large = randomBytes(1050);
+        Files.createDirectories(source.resolve("nested"));
+        Files.write(source.resolve("small.csv"), "small".getBytes());
+        Files.write(source.resolve("nested/large.csv"), large);
+
+        List<String> manifest = new ArrayList<>();
+        JobProgress progress = new JobProgress("p");
+        StorageTransferEngine.TransferResult result = transfer(localBackend, s3Backend, source.toString(),
+                "s3://target/out/", progress, manifest);
+
+        assertThat(result.filesTransferred).isEqualTo(2);
+        assertThat(s3.content("target", "out/small.csv")).isEqualTo("small".getBytes());
+        assertThat(s3.content("target", "out/nested/large.csv")).isEqualTo(large);
+        assertThat(s3.requestCount("uploadPart")).isEqualTo(11);
+        assertThat(s3.requestCount("putObject")).isEqualTo(1);
+        assertThat(s3.openUploads()).isZero();
+        assertThat(manifest).contains(source.resolve("small.csv") + " -> s3://target/out/small.csv");
+        assertThat(progress.snapshot().getBytesDone()).isEqualTo(1055);
+    }
+
+    @Test
+    void downloadsS3ObjectsToLocalWithRangedReads() throws IOException {
+        byte[] large = randomBytes(1050);
+        s3.put("source", "in/large.csv", large);
+        s3.put("source", "in/deep/small.csv", "small".getBytes());
+        Path target = tempDir.resolve("target");
+
+        StorageTransferEngine.TransferResult result = transfer(s3Backend, localBackend, "s3://source/in/",
+                target.toString(), new JobProgress("p"), new ArrayList<>());
+
+        assertThat(result.filesTransferred).isEqualTo(2);
+        assertThat(Files.readAllBytes(target.resolve("large.csv"))).isEqualTo(large);
+        assertThat(Files.readString(target.resolve("deep/small.csv"))).isEqualTo("small");
+        assertThat(s3.requestCount("getObject")).isEqualTo(12);
+    }
+
+    @Test
+    void copiesServerSideWithinOneBackend() {
+        InMemoryStorageBackend memory = new InMemoryStorageBackend();
+        memory.put("mem://source/a.csv", "a".getBytes());
+        memory.put("mem://source/b/c.csv", "c".getBytes());
+
+        StorageTransferEngine.TransferResult result = transfer(memory, memory, "mem://source/",
+                "mem://target/", new JobProgress("p"), new ArrayList<>());
+
+        assertThat(result.filesTransferred).isEqualTo(2);
+        assertThat(memory.get("mem://target/a.csv")).isEqualTo("a".getBytes());
+        assertThat(memory.get("mem://target/b/c.csv")).isEqualTo("c".getBytes());
+    }
+
+    @Test
+    void abortsUploadAndRecordsFailureWhenAPartFails() throws IOException {
+        Path source = tempDir.resolve("source");
+        Files.createDirectories(source);
+        Files.write(source.resolve("large.csv"), randomBytes(1050));
+        s3.setInterceptor((operation, key) -> {
+            if (key.endsWith("#7")) {
+                throw new AmazonServiceException("InternalError");
+            }
+        });
+
+        List<String> manifest = new ArrayList<>();
+        JobProgress progress = new JobProgress("p");
+        StorageTransferEngine.TransferResult result = transfer(localBackend, s3Backend, source.toString(),
+                "s3://target/out/", progress, manifest);
+
+        assertThat(result.filesTransferred).isZero();
+        assertThat(manifest).isEmpty();
+        assertThat(progress.snapshot().getFilesFailed()).isEqualTo(1);
+        assertThat(s3.requestCount("abortMultipartUpload")).isEqualTo(1);
+        assertThat(s3.openUploads()).isZero();
+        assertThat(s3.keys("target")).isEmpty();
+    }
+
+    @Test
+    void verifiedUploadRecordsTheETagsS3Computes() throws IOException {
+        Path source = tempDir.resolve("source");
+        Files.createDirectories(source);
+        Files.write(source.resolve("small.csv"), "small".getBytes());
+        Files.write(source.resolve("large.csv"), randomBytes(1050));
+
+        Map<String, String> checksums = new HashMap<>();
+        try (Stream<StorageObject> objects = localBackend.list(source.toString())) {
+            engine.transfer(localBackend, s3Backend, objects
+                    .map(object -> new StorageTransferEngine.TransferTask(object,
+                            s3Backend.resolve("s3://target/out/", object.relativePath)))
+                    .iterator(), 2, new JobProgress("p"), new ManifestSink() {
+                        @Override
+                        public void add(String from, String to) {
+                            add(from, to, null);
+                        }
+
+                        @Override
+                        public void add(String from, String to, String checksum) {
+                            checksums.put(to, checksum);
+                        }
+                    }, true);
+        }
+
+        assertThat(checksums).containsOnly(
+                Map.entry("s3://target/out/small.csv",
+                        "md5:" + s3.getObjectMetadata("target", "out/small.csv").getETag()),
+                Map.entry("s3://target/out/large.csv",
+                        "etag:" + s3.getObjectMetadata("target", "out/large.csv").getETag()));
+    }
+
+    private StorageTransferEngine.TransferResult transfer(StorageBackend source, StorageBackend target,
+                                                          String sourceLocation, String targetLocation,
+                                                          JobProgress progress, List<String> manifest) {
+        try (Stream<StorageObject> objects = source.list(sourceLocation)) {
+            Iterator<StorageTransferEngine.TransferTask> tasks = objects
+                    .map(object -> new StorageTransferEngine.TransferTask(object,
+                            target.resolve(targetLocation, object.relativePath)))
+                    .iterator();
+            return engine.transfer(source, target, tasks, 2, progress,
+                    (from, to) -> manifest.add(from + " -> " + to));
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}